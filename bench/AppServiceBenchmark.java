@@ -0,0 +1,84 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of AppService.saveJoke with the network replaced by an in-memory
+ * fetcher, so that it measures encoding, dedup and storage only.
+ *
+ * @author rachelcurci
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppServiceBenchmark {
+
+    @Param({ "1000", "10000" })
+    private int storeSize;
+
+    @Param({ "fixed", "packed" })
+    private String layout;
+
+    private File file;
+    private AppService service;
+    private Random random;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = File.createTempFile("bench", ".dat");
+        file.delete();
+        service = new AppService(file.getPath(), new StoreConfig()
+                .setPacked(layout.equals("packed")));
+
+        random = new Random(42);
+        for (int i = 0; i < storeSize; i++) {
+            service.write(i, service.encode(BenchmarkData.joke(random, i)));
+        }
+        next = storeSize;
+
+        // A prefetcher without queues hands every request to the fetcher.
+        service.enablePrefetch(new JokePrefetcher(new String[0], 1, 0,
+                60_000, this::fetch));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.close();
+        BenchmarkData.delete(file);
+    }
+
+    private List<FetchResult> fetch(String category, int count) {
+        List<FetchResult> jokes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            jokes.add(FetchResult.success(
+                    BenchmarkData.joke(random, next++).getContent(), 1));
+        }
+        return jokes;
+    }
+
+    @Benchmark
+    public int saveJoke() throws Exception {
+        service.saveJoke("Misc");
+        return service.size();
+    }
+}
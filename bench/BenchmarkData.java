@@ -0,0 +1,89 @@
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Deterministic test data shared by the benchmarks, so that runs on different
+ * days measure the same work.
+ *
+ * @author rachelcurci
+ */
+public final class BenchmarkData {
+
+    private static final String[] WORDS = { "why", "did", "the", "programmer",
+            "quit", "his", "job", "because", "he", "didn't", "get", "arrays",
+            "a", "SQL", "query", "walks", "into", "bar", "and", "asks", "two",
+            "tables", "can", "I", "join", "you", "knock", "who's", "there",
+            "debugging", "is", "like", "being", "detective", "in", "crime",
+            "movie", "where", "you", "are", "also", "murderer" };
+
+    private static final String[] CATEGORIES = { "Misc", "Programming",
+            "Pun", "Spooky", "Christmas" };
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Builds a joke of 8 to 60 words; the number keeps jokes distinct.
+     *
+     * @param random source of randomness, seeded by the caller.
+     * @param number number of the joke.
+     * @return the joke.
+     */
+    public static Joke joke(Random random, int number) {
+        int words = 8 + random.nextInt(53);
+        StringBuilder text = new StringBuilder("#").append(number);
+        for (int i = 0; i < words; i++) {
+            text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        text.append('.');
+        return new Joke(CATEGORIES[number % CATEGORIES.length],
+                text.toString());
+    }
+
+    /**
+     * Builds a JokeAPI response like the ones JokeFetcher receives.
+     *
+     * @param joke    joke to put in the response.
+     * @param twoPart true for a two-part joke.
+     * @return the response body.
+     */
+    public static String response(Joke joke, boolean twoPart) {
+        String text = joke.getContent().replace("\"", "\\\"");
+        String body;
+        if (twoPart) {
+            int half = text.indexOf(' ', text.length() / 2);
+            body = "    \"type\": \"twopart\",\n    \"setup\": \""
+                    + text.substring(0, half) + "\",\n    \"delivery\": \""
+                    + text.substring(half + 1) + "\",\n";
+        } else {
+            body = "    \"type\": \"single\",\n    \"joke\": \"" + text
+                    + "\",\n";
+        }
+        return "{\n    \"error\": false,\n    \"category\": \""
+                + joke.getCategory() + "\",\n" + body
+                + "    \"flags\": {\n        \"nsfw\": false,\n"
+                + "        \"religious\": false,\n"
+                + "        \"political\": false,\n"
+                + "        \"racist\": false,\n"
+                + "        \"sexist\": false,\n"
+                + "        \"explicit\": false\n    },\n"
+                + "    \"id\": 42,\n    \"safe\": true,\n"
+                + "    \"lang\": \"en\"\n}";
+    }
+
+    /**
+     * Deletes a store file together with its sidecar files.
+     *
+     * @param file data file of the store.
+     */
+    public static void delete(File file) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File[] related = dir.listFiles(
+                (d, name) -> name.startsWith(file.getName()));
+        if (related != null) {
+            for (File f : related) {
+                f.delete();
+            }
+        }
+    }
+}
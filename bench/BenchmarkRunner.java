@@ -0,0 +1,34 @@
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON to
+ * bench-results/&lt;timestamp&gt;.json, so runs can be compared over time. An
+ * optional argument is a regular expression selecting the benchmarks to run.
+ *
+ * @author rachelcurci
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 ? args[0] : ".*Benchmark.*";
+        File results = new File("bench-results");
+        results.mkdirs();
+        String stamp = LocalDateTime.now()
+                .format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(results, stamp + ".json").getPath())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,100 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of encoding, decoding and comparing jokes, and of extracting a
+ * joke from canned JokeAPI responses.
+ *
+ * @author rachelcurci
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JokeBenchmark {
+
+    @Param({ "600", "4096" })
+    private int sectionSize;
+
+    private Joke joke;
+    private Joke other;
+    private byte[] section;
+    private byte[] record;
+    private String singleResponse;
+    private JokeView view = new JokeView();
+    private ByteBuffer recordBuffer;
+    private String twoPartResponse;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        joke = BenchmarkData.joke(random, 1);
+        other = BenchmarkData.joke(random, 2);
+        section = joke.getBytes(sectionSize);
+        record = joke.toRecord();
+        recordBuffer = ByteBuffer.wrap(record);
+        singleResponse = BenchmarkData.response(joke, false);
+        twoPartResponse = BenchmarkData.response(joke, true);
+    }
+
+    @Benchmark
+    public byte[] getBytes() {
+        return joke.getBytes(sectionSize);
+    }
+
+    @Benchmark
+    public byte[] toRecord() {
+        return joke.toRecord();
+    }
+
+    @Benchmark
+    public Joke fromSection() {
+        return Joke.fromBytes(section);
+    }
+
+    @Benchmark
+    public Joke fromRecord() {
+        return Joke.fromBytes(record);
+    }
+
+    @Benchmark
+    public boolean viewContains() {
+        return view.wrap(recordBuffer).contains("joke");
+    }
+
+    @Benchmark
+    public boolean fromRecordContains() {
+        return Joke.fromBytes(record).contains("joke");
+    }
+
+    @Benchmark
+    public int compareTo() {
+        return joke.compareTo(other);
+    }
+
+    @Benchmark
+    public String extractSingle() throws Exception {
+        return JokeFetcher.extractJoke(singleResponse);
+    }
+
+    @Benchmark
+    public String extractTwoPart() throws Exception {
+        return JokeFetcher.extractJoke(twoPartResponse);
+    }
+}
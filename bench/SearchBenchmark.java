@@ -0,0 +1,67 @@
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of searching the content of a single joke: the boxed
+ * Content.indexOf, the int[] buffer variant and a precompiled KeyPattern.
+ *
+ * @author rachelcurci
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    private int contentLength;
+
+    @Param({ "the", "programmer" })
+    private String key;
+
+    private Content content;
+    private KeyPattern pattern;
+    private int[] buffer = new int[64];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < contentLength; i++) {
+            text.append(BenchmarkData.joke(random, i).getContent())
+                    .append(' ');
+        }
+        content = new Content(text.substring(0, contentLength));
+        pattern = KeyPattern.compile(key);
+    }
+
+    @Benchmark
+    public Integer[] indexOfBoxed() {
+        return content.indexOf(key);
+    }
+
+    @Benchmark
+    public int indexOfBuffer() {
+        return content.indexOf(key, buffer);
+    }
+
+    @Benchmark
+    public int indexOfPattern() {
+        return content.indexOf(pattern, buffer);
+    }
+}
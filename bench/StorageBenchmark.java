@@ -0,0 +1,120 @@
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the FileManager hot paths: read, write, writeBatch, swap and
+ * indexOf, over stores of different sizes, section sizes, access modes and
+ * layouts.
+ *
+ * @author rachelcurci
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+    private static final int BATCH = 16;
+
+    @Param({ "1000", "10000" })
+    private int storeSize;
+
+    @Param({ "600", "4096" })
+    private int sectionSize;
+
+    @Param({ "RANDOM_ACCESS", "MAPPED" })
+    private String mode;
+
+    @Param({ "fixed", "packed" })
+    private String layout;
+
+    private File file;
+    private AppService store;
+    private byte[][] sections;
+    private byte[] missing;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = File.createTempFile("bench", ".dat");
+        file.delete();
+        store = new AppService(file.getPath(), new StoreConfig()
+                .setSecSize(sectionSize)
+                .setMode(FileManager.Mode.valueOf(mode))
+                .setPacked(layout.equals("packed")));
+
+        random = new Random(42);
+        sections = new byte[storeSize][];
+        for (int i = 0; i < storeSize; i++) {
+            sections[i] = store.encode(BenchmarkData.joke(random, i));
+            store.write(i, sections[i]);
+        }
+        missing = store.encode(BenchmarkData.joke(random, storeSize));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        store.close();
+        BenchmarkData.delete(file);
+    }
+
+    @Benchmark
+    public byte[] read() throws Exception {
+        return store.read(random.nextInt(storeSize));
+    }
+
+    @Benchmark
+    public int write() throws Exception {
+        int i = random.nextInt(storeSize);
+        store.write(i, sections[i]);
+        return i;
+    }
+
+    @Benchmark
+    public int writeBatch() throws Exception {
+        int first = random.nextInt(storeSize - BATCH);
+        int[] indices = new int[BATCH];
+        byte[][] data = new byte[BATCH][];
+        for (int k = 0; k < BATCH; k++) {
+            indices[k] = first + k;
+            data[k] = sections[first + k];
+        }
+        store.writeBatch(indices, data);
+        return first;
+    }
+
+    @Benchmark
+    public int swap() throws Exception {
+        int i = random.nextInt(storeSize);
+        int j = random.nextInt(storeSize);
+        store.swap(i, j);
+        return i + j;
+    }
+
+    @Benchmark
+    public int indexOfHit() throws Exception {
+        return store.indexOf(store.read(random.nextInt(storeSize)));
+    }
+
+    @Benchmark
+    public int indexOfMiss() throws Exception {
+        return store.indexOf(missing);
+    }
+}
@@ -0,0 +1,19 @@
+#!/bin/sh
+# Compiles the application and the benchmarks and runs them.
+#
+# JMH_CLASSPATH must list the JMH jars: jmh-core, jmh-generator-annprocess,
+# jopt-simple and commons-math3. An optional argument selects benchmarks by
+# regular expression, for example: bench/run.sh StorageBenchmark
+set -e
+
+if [ -z "$JMH_CLASSPATH" ]; then
+    echo "Set JMH_CLASSPATH to the JMH jars." >&2
+    exit 1
+fi
+
+cd "$(dirname "$0")/.."
+rm -rf bench-classes
+mkdir -p bench-classes
+javac -d bench-classes -cp "$JMH_CLASSPATH" \
+    $(ls src/*.java | grep -v Tester) bench/*.java
+java -cp "bench-classes:$JMH_CLASSPATH" BenchmarkRunner "$@"
@@ -0,0 +1,174 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limit on the number of requests in flight that adapts to the upstream
+ * with additive increase and multiplicative decrease (AIMD). Every success
+ * raises the limit by 1 / limit, about one more request per round of
+ * requests, and every sign of overload (a timeout, a 429 or a 5xx) halves
+ * it, down to the minimum.
+ *
+ * @author rachelcurci
+ */
+public class AdaptiveLimiter {
+
+    private static final double DECREASE = 0.5;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final int minLimit;
+    private int maxLimit;
+    private double limit;
+    private int inFlight;
+
+    /**
+     * Constructor.
+     *
+     * @param initial  limit to start from.
+     * @param minLimit lowest limit, at least 1.
+     * @param maxLimit highest limit.
+     */
+    public AdaptiveLimiter(int initial, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(
+                    "Need 1 <= minLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = clamp(initial);
+    }
+
+    /**
+     * Waits until fewer requests than the limit are in flight and counts one
+     * more. Every acquire must be followed by exactly one of onSuccess,
+     * onOverload and onIgnore.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                available.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends a request that succeeded and raises the limit.
+     */
+    public void onSuccess() {
+        release(limit + 1 / limit);
+    }
+
+    /**
+     * Ends a request that showed the upstream is overloaded and halves the
+     * limit.
+     */
+    public void onOverload() {
+        release(limit * DECREASE);
+    }
+
+    /**
+     * Ends a request without changing the limit, for failures that say
+     * nothing about the load of the upstream.
+     */
+    public void onIgnore() {
+        release(limit);
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return current limit.
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return highest limit.
+     */
+    public int getMaxLimit() {
+        lock.lock();
+        try {
+            return maxLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the highest limit, lowering the current limit if needed.
+     *
+     * @param max highest limit, at least the minimum.
+     */
+    public void setMaxLimit(int max) {
+        if (max < minLimit) {
+            throw new IllegalArgumentException("Need max >= " + minLimit);
+        }
+        lock.lock();
+        try {
+            maxLimit = max;
+            limit = clamp(limit);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the current limit, within the minimum and the maximum, for example
+     * to start over once the upstream has recovered.
+     *
+     * @param newLimit the limit.
+     */
+    public void setLimit(int newLimit) {
+        lock.lock();
+        try {
+            limit = clamp(newLimit);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of requests in flight.
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(double newLimit) {
+        lock.lock();
+        try {
+            inFlight--;
+            limit = clamp(newLimit);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
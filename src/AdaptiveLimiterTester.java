@@ -0,0 +1,80 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveLimiterTester {
+
+    @Test
+    public void testIncreasesOnSuccess() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 8);
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire();
+            limiter.onSuccess();
+        }
+        // 4 + 1/4 + 1/4.25 + ... only crosses 5 on the fifth success
+        assertEquals(4, limiter.getLimit());
+        limiter.acquire();
+        limiter.onSuccess();
+        assertEquals(5, limiter.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.onSuccess();
+        }
+        assertEquals(8, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testHalvesOnOverload() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(8, 1, 8);
+        limiter.acquire();
+        limiter.onOverload();
+        assertEquals(4, limiter.getLimit());
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.onOverload();
+        }
+        assertEquals(1, limiter.getLimit());
+
+        limiter.acquire();
+        limiter.onIgnore();
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    public void testBlocksAtLimit() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 4);
+        limiter.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+        limiter.onIgnore();
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        limiter.onSuccess();
+        waiter.join();
+    }
+
+    @Test
+    public void testSetMaxLimitLowersLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 1, 32);
+        limiter.setMaxLimit(3);
+        assertEquals(3, limiter.getLimit());
+        assertEquals(3, limiter.getMaxLimit());
+        limiter.setLimit(10);
+        assertEquals(3, limiter.getLimit());
+    }
+}
@@ -1,3 +1,6 @@
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * AppService class acts as the central coordinator, managing the retrieval,
  * serialization, and storage of jokes into files, ensuring content is
@@ -6,9 +9,14 @@
  * 
  * @author rachelcurci
  */
-public class AppService extends FileManager {
+public final class AppService extends FileManager {
     private static final long serialVersionUID = 1L;
-    public static int index = 0;
+    private static final long PREFETCH_WAIT_MILLIS = 50;
+    private static final int MAX_REFETCHES = 10;
+    private transient SearchIndex searchIndex;
+    private transient CategoryIndex categoryIndex;
+    private transient NearDuplicateIndex nearDuplicates;
+    private transient JokePrefetcher prefetcher;
 
     /**
      * Constructor, extends FileManager. Sets up the environment for managing
@@ -19,45 +27,369 @@ public class AppService extends FileManager {
      * @throws Exception for IOException and FileNotFoundException.
      */
     public AppService(String path, int size) throws Exception {
-        super(path, size);
+        this(path, size, Mode.RANDOM_ACCESS);
+    }
+
+    /**
+     * Constructor, extends FileManager. Sets up the environment for managing
+     * jokes in a file accessed as given by the mode, with a search index over
+     * the jokes kept in path + ".tri".
+     * 
+     * @param path file path.
+     * @param size size of the section for the jokes.
+     * @param mode how the file is accessed.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public AppService(String path, int size, Mode mode) throws Exception {
+        this(path, new StoreConfig().setSecSize(size).setMode(mode));
+    }
+
+    /**
+     * Constructor, extends FileManager. Sets up the environment for managing
+     * jokes in a file set up as given by the config, with a search index over
+     * the jokes kept in path + ".tri", a category index kept in path +
+     * ".cat", and a near-duplicate index kept in
+     * path + ".sim" if the config asks for one. Jokes in a packed file are
+     * stored as variable-length records.
+     * 
+     * @param path   file path.
+     * @param config settings of the file.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public AppService(String path, StoreConfig config) throws Exception {
+        super(path, config);
+        searchIndex = new SearchIndex(path + ".tri", this);
+        addIndex(searchIndex);
+        categoryIndex = new CategoryIndex(path + ".cat");
+        addIndex(categoryIndex);
+        if (config.getNearDuplicateDistance() >= 0) {
+            nearDuplicates = new NearDuplicateIndex(path + ".sim",
+                    config.getNearDuplicateDistance());
+            addIndex(nearDuplicates);
+        }
+    }
+
+    /**
+     * Getter method.
+     * 
+     * @return the search index over all stored jokes.
+     */
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Getter method.
+     * 
+     * @return the index of the stored jokes by category.
+     */
+    public CategoryIndex getCategoryIndex() {
+        return categoryIndex;
+    }
+
+    /**
+     * Creates a cursor that walks through the stored jokes of a category in
+     * store order, starting over after the last.
+     * 
+     * @param category category to walk through.
+     * @return the cursor, before the first joke of the category.
+     */
+    public CategoryIndex.Cursor cursor(String category) {
+        return categoryIndex.cursor(category);
+    }
+
+    /**
+     * Returns the number of stored jokes of a category.
+     * 
+     * @param category category to count.
+     * @return number of jokes.
+     */
+    public int countJokes(String category) {
+        return categoryIndex.count(category);
+    }
+
+    /**
+     * Getter method.
+     * 
+     * @return the near-duplicate index, or null if only exact duplicates are
+     *         rejected.
+     */
+    public NearDuplicateIndex getNearDuplicateIndex() {
+        return nearDuplicates;
+    }
+
+    /**
+     * Checks if a joke nearly the same as the given one is stored. Always
+     * false unless the store was opened with a near-duplicate distance.
+     * 
+     * @param joke Joke to look for.
+     * @return true if a near-duplicate is stored.
+     */
+    public boolean isNearDuplicate(Joke joke) {
+        return nearDuplicates != null && nearDuplicates.nearest(joke) >= 0;
+    }
+
+    /**
+     * Finds every stored joke containing the given key, ignoring case.
+     * 
+     * @param key text to find.
+     * @return sections of the matching jokes with the offsets of the key.
+     */
+    public List<SearchIndex.Match> search(String key) {
+        return searchIndex.search(key);
+    }
+
+    /**
+     * Starts keeping a queue of prefetched jokes for each of the given
+     * categories, so that getJoke, saveJoke and saveJokes take jokes from
+     * memory instead of waiting on the network.
+     * 
+     * @param categories   categories to prefetch.
+     * @param capacity     maximum number of jokes queued per category.
+     * @param lowWater     queue size below which a category is refilled.
+     * @param refillMillis how often the queues are checked, in milliseconds.
+     */
+    public void enablePrefetch(String[] categories, int capacity,
+            int lowWater, long refillMillis) {
+        enablePrefetch(new JokePrefetcher(categories, capacity, lowWater,
+                refillMillis));
+    }
+
+    /**
+     * Starts taking jokes from the given prefetcher, replacing any previous
+     * one.
+     * 
+     * @param jokePrefetcher prefetcher to take jokes from.
+     */
+    public void enablePrefetch(JokePrefetcher jokePrefetcher) {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+        prefetcher = jokePrefetcher;
     }
 
     /**
      * Fetches a single joke from the given category and uses that to create a
-     * Joke object with and returns it.
+     * Joke object with and returns it. The joke is taken from the prefetch
+     * queue when prefetching is enabled.
      * 
      * @param category category of joke that will be selected.
-     * @return
+     * @return the Joke.
+     * @throws FetchException if the joke could not be fetched.
      */
-    public Joke getJoke(String category) {
-        String jokeText = JokeFetcher.fetchJoke(category);
+    public Joke getJoke(String category) throws FetchException {
+        FetchResult result;
+        if (prefetcher != null) {
+            result = prefetcher.take(category, PREFETCH_WAIT_MILLIS);
+        } else {
+            result = JokeFetcher.fetch(category);
+        }
 
-        return new Joke(category, jokeText);
+        return new Joke(category, result.orThrow());
     }
 
     /**
-     * Gets a joke and stores in file while avoiding duplicate jokes.
+     * Gets a joke and stores it after the last section while avoiding
+     * duplicate jokes. A duplicate is replaced by another joke, up to
+     * MAX_REFETCHES times, after which the category is taken to have no new
+     * jokes and nothing is stored.
      * 
      * @param category category of joke that will be stored.
+     * @return true if a joke was stored.
      * @throws Exception for IOException and FileNotFoundException.
      */
-    public void saveJoke(String category) throws Exception {
-        Joke joke;
-        byte[] jokeBytes;
+    public boolean saveJoke(String category) throws Exception {
+        for (int tries = 0; tries <= MAX_REFETCHES; tries++) {
+            if (tries > 0) {
+                Metrics.dedupRetried();
+            }
+            if (saveJoke(getJoke(category))) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        while (true) {
-            joke = getJoke(category);
-            jokeBytes = joke.getBytes(getSecSize());
+    /**
+     * Stores an already fetched joke after the last section unless it is a
+     * duplicate, or a near-duplicate when the store looks for those. The
+     * check and the write happen as one step, so threads saving the same
+     * joke store it once.
+     * 
+     * @param joke Joke to store.
+     * @return true if the joke was stored, false if it is already in the file.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public synchronized boolean saveJoke(Joke joke) throws Exception {
+        byte[] jokeBytes = encode(joke);
 
-            if (!contains(jokeBytes)) {
-                break;
-            }
+        if (contains(jokeBytes) || isNearDuplicate(joke)) {
+            return false;
         }
-        write(index, jokeBytes);
-        if (index == 10) {
-            index = 0;
+        store(jokeBytes);
+        return true;
+    }
+
+    /**
+     * Fetches several jokes from the given category concurrently, one round
+     * trip for the whole batch, or takes them from the prefetch queue, and
+     * stores them after the last section while avoiding duplicates.
+     * Duplicates in the batch are replaced by jokes fetched one at a time,
+     * up to MAX_REFETCHES times for each, after which the duplicate is left
+     * out. Jokes that could not be fetched are left out too, so a batch can
+     * store fewer than count jokes; if none could be fetched the first
+     * failure is thrown.
+     * The jokes are fetched without holding the lock of the store, so other
+     * threads can save jokes meanwhile, and are then written by appendJokes,
+     * which checks them again and writes them with a single writeBatch; with
+     * a write-ahead log they are stored all together or not at all.
+     * 
+     * @param category category of jokes that will be stored.
+     * @param count    number of jokes to store.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public void saveJokes(String category, int count)
+            throws Exception {
+        List<FetchResult> results;
+        if (prefetcher != null) {
+            results = prefetcher.takeBatch(category, count);
         } else {
-            index += 1;
+            results = JokeFetcher.fetchAll(category, count);
+        }
+        List<byte[]> batch = new ArrayList<>();
+        FingerprintSet inBatch = new FingerprintSet(count);
+        List<Joke> jokes = new ArrayList<>();
+        FetchException failed = null;
+        for (FetchResult result : results) {
+            if (!result.isSuccess()) {
+                failed = failed == null ? new FetchException(result) : failed;
+                continue;
+            }
+            Joke joke = new Joke(category, result.getJoke());
+            byte[] jokeBytes = encode(joke);
+            int tries = 0;
+            while (joke != null && (contains(jokeBytes)
+                    || inBatch.contains(Fingerprint.of(jokeBytes))
+                    || isNearDuplicate(joke) || nearBatch(jokes, joke))) {
+                joke = null;
+                if (tries++ < MAX_REFETCHES) {
+                    Metrics.dedupRetried();
+                    try {
+                        joke = getJoke(category);
+                        jokeBytes = encode(joke);
+                    } catch (FetchException e) {
+                        failed = failed == null ? e : failed;
+                    }
+                }
+            }
+            if (joke != null) {
+                batch.add(jokeBytes);
+                inBatch.add(Fingerprint.of(jokeBytes));
+                jokes.add(joke);
+            }
+        }
+        if (batch.isEmpty() && failed != null) {
+            throw failed;
+        }
+        appendJokes(batch);
+    }
+
+    /**
+     * Appends already encoded jokes after the last section with a single
+     * writeBatch, leaving out those already stored or repeated in the list,
+     * or nearly the same as one of those when the store looks for
+     * near-duplicates.
+     * The check and the write happen as one step, as in saveJoke.
+     * 
+     * @param jokeBytes bytes of the jokes, as returned by encode.
+     * @return number of jokes stored.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public synchronized int appendJokes(List<byte[]> jokeBytes)
+            throws Exception {
+        List<byte[]> batch = new ArrayList<>(jokeBytes.size());
+        FingerprintSet inBatch = new FingerprintSet(jokeBytes.size());
+        List<Joke> jokes = new ArrayList<>(jokeBytes.size());
+        for (byte[] bytes : jokeBytes) {
+            long fingerprint = Fingerprint.of(bytes);
+            if (contains(bytes) || inBatch.contains(fingerprint)) {
+                continue;
+            }
+            if (nearDuplicates != null) {
+                Joke joke = Joke.fromBytes(bytes);
+                if (isNearDuplicate(joke) || nearBatch(jokes, joke)) {
+                    continue;
+                }
+                jokes.add(joke);
+            }
+            batch.add(bytes);
+            inBatch.add(fingerprint);
+        }
+        append(batch);
+        return batch.size();
+    }
+
+    /**
+     * Converts a joke into the bytes stored for it: a variable-length record
+     * in a packed file, a section of secSize bytes otherwise.
+     * 
+     * @param joke Joke to convert.
+     * @return bytes to store.
+     */
+    public byte[] encode(Joke joke) {
+        if (isPacked()) {
+            return joke.toRecord();
+        }
+        return joke.getBytes(getSecSize());
+    }
+
+    /*
+     * Writes the bytes of a joke after the last section.
+     */
+    private void store(byte[] jokeBytes) throws Exception {
+        write(size(), jokeBytes);
+    }
+
+    /*
+     * Writes the bytes of several jokes after the last section with a single
+     * writeBatch.
+     */
+    private void append(List<byte[]> batch) throws Exception {
+        int first = size();
+        int[] indices = new int[batch.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = first + i;
+        }
+        writeBatch(indices, batch.toArray(new byte[0][]));
+    }
+
+    /*
+     * Checks if a joke is nearly the same as one of a batch not yet stored.
+     */
+    private boolean nearBatch(List<Joke> batch, Joke joke) {
+        if (nearDuplicates == null || joke.getContent().isEmpty()) {
+            return false;
+        }
+        long signature = SimHash.of(joke.getContent());
+        for (Joke other : batch) {
+            if (SimHash.distance(signature, SimHash.of(other.getContent()))
+                    <= nearDuplicates.getMaxDistance()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops prefetching, then saves the indexes and closes the file.
+     * 
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    @Override
+    public void close() throws Exception {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
         }
+        super.close();
     }
 }
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Storage on an AsynchronousFileChannel. Besides the blocking Storage
+ * methods, which wait for the channel, it can start a read and return at
+ * once with a CompletableFuture that completes when the bytes are in, so a
+ * thread can have many reads outstanding without waiting on any of them.
+ *
+ * @author rachelcurci
+ */
+public class AsyncStorage implements Storage {
+
+    private final AsynchronousFileChannel channel;
+
+    /**
+     * Constructor that opens the file at the given path for reading and
+     * writing, creating it if needed.
+     *
+     * @param path path of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public AsyncStorage(String path) throws IOException {
+        this.channel = AsynchronousFileChannel.open(Paths.get(path),
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+    }
+
+    @Override
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public int read(long position, byte[] dst, int offset, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(dst, offset, length);
+        while (buffer.hasRemaining()) {
+            int n = await(channel.read(buffer,
+                    position + buffer.position() - offset));
+            if (n < 0) {
+                break;
+            }
+        }
+        return buffer.position() - offset;
+    }
+
+    /**
+     * Starts reading up to length bytes at the given position and returns
+     * without waiting for them.
+     *
+     * @param position first byte to read.
+     * @param dst      array to read into.
+     * @param offset   first index of dst to fill.
+     * @param length   maximum number of bytes to read.
+     * @return future number of bytes read, smaller than length at the end of
+     *         the storage.
+     */
+    public CompletableFuture<Integer> readAsync(long position, byte[] dst,
+            int offset, int length) {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        ByteBuffer buffer = ByteBuffer.wrap(dst, offset, length);
+        channel.read(buffer, position, null,
+                new CompletionHandler<Integer, Void>() {
+                    @Override
+                    public void completed(Integer n, Void attachment) {
+                        if (n < 0 || !buffer.hasRemaining()) {
+                            done.complete(buffer.position() - offset);
+                            return;
+                        }
+                        // a short read in the middle of the file
+                        channel.read(buffer,
+                                position + buffer.position() - offset, null,
+                                this);
+                    }
+
+                    @Override
+                    public void failed(Throwable e, Void attachment) {
+                        done.completeExceptionally(e);
+                    }
+                });
+        return done;
+    }
+
+    @Override
+    public void write(long position, byte[] src, int offset, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(src, offset, length);
+        while (buffer.hasRemaining()) {
+            await(channel.write(buffer,
+                    position + buffer.position() - offset));
+        }
+    }
+
+    @Override
+    public ByteBuffer slice(long position, int length) throws IOException {
+        byte[] data = new byte[length];
+        int n = read(position, data, 0, length);
+        return ByteBuffer.wrap(data, 0, n).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    private static int await(Future<Integer> pending) throws IOException {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for I/O");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
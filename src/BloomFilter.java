@@ -0,0 +1,175 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over 64-bit fingerprints: a set that answers "maybe present"
+ * or "certainly absent" from a few bits per entry. Entries cannot be
+ * removed.
+ * <p>
+ * The bits probed for a fingerprint are derived from its two 32-bit halves
+ * by double hashing, which needs fingerprints whose bits are evenly mixed,
+ * as those of Fingerprint are. Bits are set with atomic updates, so puts and
+ * lookups can run at the same time from any thread.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final long capacity;
+    private volatile long insertions;
+
+    /**
+     * Constructor of a filter sized for the given number of entries.
+     *
+     * @param capacity          number of entries it is sized for.
+     * @param falsePositiveRate chance that an absent fingerprint is reported
+     *                          present once the filter holds capacity
+     *                          entries, between 0 and 1.
+     */
+    public BloomFilter(long capacity, double falsePositiveRate) {
+        if (capacity < 1 || !(falsePositiveRate > 0)
+                || !(falsePositiveRate < 1)) {
+            throw new IllegalArgumentException(
+                    "Need capacity >= 1 and 0 < falsePositiveRate < 1");
+        }
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate)
+                / (ln2 * ln2));
+        this.bits = Math.max(64, (m + 63) / 64 * 64);
+        this.hashes = (int) Math.max(1,
+                Math.round((double) bits / capacity * ln2));
+        this.capacity = capacity;
+        this.words = new AtomicLongArray((int) (bits / 64));
+    }
+
+    private BloomFilter(long bits, int hashes, long capacity,
+            long insertions, AtomicLongArray words) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.capacity = capacity;
+        this.insertions = insertions;
+        this.words = words;
+    }
+
+    /**
+     * Adds a fingerprint.
+     *
+     * @param fingerprint fingerprint to add.
+     */
+    public void put(long fingerprint) {
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old = words.get(word);
+            while ((old & mask) == 0
+                    && !words.compareAndSet(word, old, old | mask)) {
+                old = words.get(word);
+            }
+        }
+        insertions++;
+    }
+
+    /**
+     * Checks if a fingerprint may have been added.
+     *
+     * @param fingerprint fingerprint to look up.
+     * @return false if it was certainly never added.
+     */
+    public boolean mightContain(long fingerprint) {
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of entries the filter is sized for.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of puts so far, counting repeated fingerprints
+     * every time. Updated without locking, so concurrent puts can be
+     * undercounted.
+     *
+     * @return number of puts.
+     */
+    public long getInsertions() {
+        return insertions;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of bits.
+     */
+    public long getBitCount() {
+        return bits;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of bits probed per fingerprint.
+     */
+    public int getHashCount() {
+        return hashes;
+    }
+
+    /**
+     * Writes the filter to a stream.
+     *
+     * @param out stream to write to.
+     * @throws IOException if the stream cannot be written.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(bits);
+        out.writeInt(hashes);
+        out.writeLong(capacity);
+        out.writeLong(insertions);
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    /**
+     * Reads a filter written by writeTo.
+     *
+     * @param in stream to read from.
+     * @return the filter.
+     * @throws IOException if the stream is truncated or corrupt.
+     */
+    public static BloomFilter readFrom(DataInputStream in) throws IOException {
+        long bits = in.readLong();
+        int hashes = in.readInt();
+        long capacity = in.readLong();
+        long insertions = in.readLong();
+        if (bits < 64 || bits % 64 != 0 || bits / 64 > Integer.MAX_VALUE
+                || hashes < 1 || capacity < 1) {
+            throw new IOException("Corrupt Bloom filter");
+        }
+        AtomicLongArray words = new AtomicLongArray((int) (bits / 64));
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, in.readLong());
+        }
+        return new BloomFilter(bits, hashes, capacity, insertions, words);
+    }
+}
@@ -0,0 +1,65 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Test;
+
+public class BloomFilterTester {
+
+    private static long fingerprint(int i) {
+        return Fingerprint.of(("joke " + i).getBytes());
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.put(fingerprint(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain(fingerprint(i)));
+        }
+        assertEquals(1000, filter.getInsertions());
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(fingerprint(i));
+        }
+        int falsePositives = 0;
+        for (int i = 10_000; i < 110_000; i++) {
+            if (filter.mightContain(fingerprint(i))) {
+                falsePositives++;
+            }
+        }
+        // 1% of 100,000 expected, with room for chance
+        assertTrue("false positives: " + falsePositives,
+                falsePositives < 1500);
+        assertEquals(7, filter.getHashCount());
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        BloomFilter filter = new BloomFilter(100, 0.05);
+        for (int i = 0; i < 100; i++) {
+            filter.put(fingerprint(i));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(new DataOutputStream(bytes));
+        BloomFilter copy = BloomFilter.readFrom(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(filter.getBitCount(), copy.getBitCount());
+        assertEquals(100, copy.getInsertions());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(filter.mightContain(fingerprint(i)),
+                    copy.mightContain(fingerprint(i)));
+        }
+    }
+}
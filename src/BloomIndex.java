@@ -0,0 +1,105 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Bloom filter over the fingerprints of the sections of a FileManager. It
+ * lets indexOf and contains answer "not stored" for a new section, the
+ * common case when saving a freshly fetched joke, with a few bit probes and
+ * without reading or comparing anything. Only "maybe" answers go on to the
+ * fingerprint index and a verifying read.
+ * <p>
+ * Overwritten sections leave their bits set, which only adds false
+ * positives. Once more sections have been written than the filter is sized
+ * for, it is rebuilt twice as large from the fingerprint index, dropping
+ * those stale bits.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class BloomIndex extends SectionIndex {
+
+    private static final int MAGIC = 0x4a4b4246; // "JKBF"
+    private static final long INITIAL_CAPACITY = 1024;
+
+    private final double falsePositiveRate;
+    private final FingerprintIndex fingerprints;
+    private volatile BloomFilter filter;
+
+    /**
+     * Constructor.
+     *
+     * @param sidecarPath       path of the sidecar file.
+     * @param falsePositiveRate chance that a section that is not stored is
+     *                          reported as maybe stored, between 0 and 1.
+     * @param fingerprints      fingerprint index of the same store, which the
+     *                          filter is rebuilt from when it grows.
+     */
+    public BloomIndex(String sidecarPath, double falsePositiveRate,
+            FingerprintIndex fingerprints) {
+        super(sidecarPath);
+        this.falsePositiveRate = falsePositiveRate;
+        this.fingerprints = fingerprints;
+        this.filter = new BloomFilter(INITIAL_CAPACITY, falsePositiveRate);
+    }
+
+    /**
+     * Checks if a section with the given fingerprint may be stored.
+     *
+     * @param fingerprint fingerprint of the section's bytes.
+     * @return false if no section holds bytes with that fingerprint.
+     */
+    public boolean mightContain(long fingerprint) {
+        return filter.mightContain(fingerprint);
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return the filter currently in use.
+     */
+    public BloomFilter getFilter() {
+        return filter;
+    }
+
+    @Override
+    protected int magic() {
+        return MAGIC;
+    }
+
+    @Override
+    protected synchronized void clear() {
+        filter = new BloomFilter(INITIAL_CAPACITY, falsePositiveRate);
+    }
+
+    @Override
+    protected synchronized void sectionWritten(int index, byte[] data) {
+        BloomFilter current = filter;
+        if (current.getInsertions() >= current.getCapacity()) {
+            // The fingerprint index already holds this section, since it is
+            // attached first and told first.
+            long[] live = fingerprints.fingerprints();
+            BloomFilter grown = new BloomFilter(Math.max(
+                    current.getCapacity() * 2, live.length * 2L),
+                    falsePositiveRate);
+            for (long fingerprint : live) {
+                grown.put(fingerprint);
+            }
+            grown.put(Fingerprint.of(data));
+            filter = grown;
+            return;
+        }
+        current.put(Fingerprint.of(data));
+    }
+
+    @Override
+    protected void writeTo(DataOutputStream out) throws IOException {
+        filter.writeTo(out);
+    }
+
+    @Override
+    protected void readFrom(DataInputStream in, int sections)
+            throws IOException {
+        filter = BloomFilter.readFrom(in);
+    }
+}
@@ -0,0 +1,328 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index from the category of the joke in each section to the sections, or
+ * slots, holding jokes of that category. It lets jokes of one category be
+ * walked through in store order with a cursor, one array access per step,
+ * however many categories and jokes the store holds.
+ * <p>
+ * Sections whose category is empty, such as never written sections of a
+ * fixed-size file, belong to no category.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class CategoryIndex extends SectionIndex {
+
+    private static final int MAGIC = 0x4a4b4354; // "JKCT"
+    private static final int[] NONE = new int[0];
+
+    private final Map<String, Slots> slots = new HashMap<>();
+    private String[] categories = new String[16];
+    private int sections;
+
+    /**
+     * Position in the slots of one category, moving through them in store
+     * order and starting over after the last. A cursor stays valid while
+     * jokes are stored; its position is kept within the slots there are.
+     */
+    public final class Cursor {
+        private final String category;
+        private int position = -1;
+
+        private Cursor(String category) {
+            this.category = category;
+        }
+
+        /**
+         * Getter method.
+         *
+         * @return category the cursor walks through.
+         */
+        public String getCategory() {
+            return category;
+        }
+
+        /**
+         * Getter method.
+         *
+         * @return position of the slot last returned, -1 before the first.
+         */
+        public int getPosition() {
+            synchronized (CategoryIndex.this) {
+                return position;
+            }
+        }
+
+        /**
+         * Moves the cursor so that the next call to next returns the slot at
+         * the given position.
+         *
+         * @param next position of the next slot, from 0 to count - 1.
+         */
+        public void seek(int next) {
+            synchronized (CategoryIndex.this) {
+                position = next - 1;
+            }
+        }
+
+        /**
+         * Moves to the next slot of the category, or to the first after the
+         * last.
+         *
+         * @return section of the slot, or -1 if the category has no jokes.
+         */
+        public int next() {
+            synchronized (CategoryIndex.this) {
+                Slots list = slots.get(category);
+                if (list == null) {
+                    return -1;
+                }
+                position = (position + 1) % list.size;
+                return list.ids[position];
+            }
+        }
+
+        /**
+         * Moves to the previous slot of the category, or to the last before
+         * the first.
+         *
+         * @return section of the slot, or -1 if the category has no jokes.
+         */
+        public int previous() {
+            synchronized (CategoryIndex.this) {
+                Slots list = slots.get(category);
+                if (list == null) {
+                    return -1;
+                }
+                position = position <= 0 || position > list.size
+                        ? list.size - 1 : position - 1;
+                return list.ids[position];
+            }
+        }
+    }
+
+    /*
+     * Sorted, growable list of section numbers.
+     */
+    private static final class Slots {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            // jokes are mostly appended, so try the end first
+            int pos = size;
+            if (size > 0 && ids[size - 1] >= id) {
+                pos = Arrays.binarySearch(ids, 0, size, id);
+                if (pos >= 0) {
+                    return;
+                }
+                pos = -pos - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sidecarPath path of the sidecar file.
+     */
+    public CategoryIndex(String sidecarPath) {
+        super(sidecarPath);
+    }
+
+    /**
+     * Creates a cursor over the slots of a category, before its first slot.
+     *
+     * @param category category to walk through.
+     * @return the cursor.
+     */
+    public Cursor cursor(String category) {
+        return new Cursor(category);
+    }
+
+    /**
+     * Returns the number of jokes of a category.
+     *
+     * @param category category to count.
+     * @return number of slots, 0 for an unknown category.
+     */
+    public synchronized int count(String category) {
+        Slots list = slots.get(category);
+        return list == null ? 0 : list.size;
+    }
+
+    /**
+     * Returns the slot at a position within a category.
+     *
+     * @param category category of the slot.
+     * @param position position of the slot, from 0 to count - 1.
+     * @return section of the slot, or -1 if there is no such slot.
+     */
+    public synchronized int slot(String category, int position) {
+        Slots list = slots.get(category);
+        if (list == null || position < 0 || position >= list.size) {
+            return -1;
+        }
+        return list.ids[position];
+    }
+
+    /**
+     * Returns every slot of a category.
+     *
+     * @param category category of the slots.
+     * @return sections in ascending order, empty if there are none.
+     */
+    public synchronized int[] slots(String category) {
+        Slots list = slots.get(category);
+        return list == null ? NONE : Arrays.copyOf(list.ids, list.size);
+    }
+
+    /**
+     * Returns the categories of the stored jokes.
+     *
+     * @return categories in alphabetical order.
+     */
+    public synchronized List<String> getCategories() {
+        List<String> names = new ArrayList<>(slots.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Returns the category of the joke in a section.
+     *
+     * @param index section.
+     * @return category, or null if the section belongs to none.
+     */
+    public synchronized String categoryOf(int index) {
+        return index >= 0 && index < sections ? categories[index] : null;
+    }
+
+    @Override
+    protected int magic() {
+        return MAGIC;
+    }
+
+    @Override
+    protected synchronized void clear() {
+        sections = 0;
+        Arrays.fill(categories, null);
+        slots.clear();
+    }
+
+    @Override
+    protected synchronized void sectionWritten(int index, byte[] data) {
+        String category = new JokeView(ByteBuffer.wrap(data))
+                .getCategory();
+        if (index < sections) {
+            if (categories[index] != null) {
+                if (categories[index].equals(category)) {
+                    return;
+                }
+                unlink(index);
+            }
+        } else {
+            // FileManager reports new sections in order, so the section
+            // written here is always the one right after the last.
+            ensureCapacity(index + 1);
+            sections = index + 1;
+        }
+        link(category, index);
+    }
+
+    @Override
+    protected void writeTo(DataOutputStream out) throws IOException {
+        List<String> names = new ArrayList<>(slots.keySet());
+        Map<String, Integer> ids = new HashMap<>();
+        out.writeInt(names.size());
+        for (String name : names) {
+            ids.put(name, ids.size());
+            out.writeUTF(name);
+        }
+        for (int i = 0; i < sections; i++) {
+            out.writeInt(categories[i] == null ? -1 : ids.get(categories[i]));
+        }
+    }
+
+    @Override
+    protected void readFrom(DataInputStream in, int count) throws IOException {
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            int id = in.readInt();
+            if (id < -1 || id >= names.length) {
+                throw new IOException("Corrupt category index");
+            }
+            if (id >= 0) {
+                link(names[id], i);
+            }
+        }
+        sections = count;
+    }
+
+    /*
+     * Adds a section to the slots of its category, sharing one String per
+     * category between all its sections.
+     */
+    private void link(String category, int index) {
+        if (category.isEmpty()) {
+            categories[index] = null;
+            return;
+        }
+        Slots list = slots.get(category);
+        if (list == null) {
+            list = new Slots();
+            slots.put(category, list);
+        } else {
+            category = categories[list.ids[0]];
+        }
+        list.add(index);
+        categories[index] = category;
+    }
+
+    /*
+     * Removes a section from the slots of its category.
+     */
+    private void unlink(int index) {
+        Slots list = slots.get(categories[index]);
+        list.remove(index);
+        if (list.size == 0) {
+            slots.remove(categories[index]);
+        }
+        categories[index] = null;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > categories.length) {
+            categories = Arrays.copyOf(categories,
+                    Math.max(count, categories.length * 2));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CategoryIndexTester {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jokes", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        for (String suffix : new String[] { ".fp", ".tri", ".cat" }) {
+            new File(file.getPath() + suffix).delete();
+        }
+        file.delete();
+    }
+
+    private AppService store() throws Exception {
+        return new AppService(file.getPath(), new StoreConfig()
+                .setPacked(true));
+    }
+
+    @Test
+    public void testSlotsAndCursor() throws Exception {
+        AppService service = store();
+        service.saveJoke(new Joke("Misc", "First misc"));
+        service.saveJoke(new Joke("Pun", "First pun"));
+        service.saveJoke(new Joke("Misc", "Second misc"));
+        service.saveJoke(new Joke("Spooky", "First spooky"));
+
+        CategoryIndex index = service.getCategoryIndex();
+        assertArrayEquals(new int[] { 0, 2 }, index.slots("Misc"));
+        assertEquals(List.of("Misc", "Pun", "Spooky"),
+                index.getCategories());
+        assertEquals(0, service.countJokes("Dark"));
+
+        CategoryIndex.Cursor misc = service.cursor("Misc");
+        assertEquals(0, misc.next());
+        assertEquals(2, misc.next());
+        assertEquals(0, misc.next());
+        assertEquals(2, misc.previous());
+        assertEquals(-1, service.cursor("Dark").next());
+
+        service.saveJoke(new Joke("Misc", "Third misc"));
+        misc.seek(2);
+        assertEquals(4, misc.next());
+        service.close();
+    }
+
+    @Test
+    public void testOverwriteMovesSlot() throws Exception {
+        AppService service = store();
+        service.saveJoke(new Joke("Misc", "A misc joke"));
+        service.saveJoke(new Joke("Misc", "Another misc joke"));
+        service.write(0, service.encode(new Joke("Dark", "A dark joke")));
+
+        CategoryIndex index = service.getCategoryIndex();
+        assertArrayEquals(new int[] { 1 }, index.slots("Misc"));
+        assertArrayEquals(new int[] { 0 }, index.slots("Dark"));
+        assertEquals("Dark", index.categoryOf(0));
+        service.close();
+    }
+
+    @Test
+    public void testManyJokesPersisted() throws Exception {
+        AppService service = store();
+        String[] categories = { "Misc", "Programming", "Christmas" };
+        List<byte[]> jokes = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            jokes.add(service.encode(new Joke(categories[i % 3],
+                    "Joke number " + i)));
+        }
+        assertEquals(3000, service.appendJokes(jokes));
+        service.close();
+        assertTrue(new File(file.getPath() + ".cat").isFile());
+
+        service = store();
+        assertEquals(1000, service.countJokes("Christmas"));
+        assertEquals(2999, service.getCategoryIndex()
+                .slot("Christmas", 999));
+        CategoryIndex.Cursor programming = service.cursor("Programming");
+        programming.seek(999);
+        assertEquals(2998, programming.next());
+        assertEquals(1, programming.next());
+        service.close();
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Storage that uses positional FileChannel reads and writes. No file position
+ * is shared between calls, so any number of threads can read and write
+ * different parts of the file at the same time without locking.
+ *
+ * @author rachelcurci
+ */
+public class ChannelStorage implements Storage {
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private final Object gatherLock = new Object();
+
+    /**
+     * Constructor that opens the file at the given path for reading and
+     * writing.
+     *
+     * @param path path of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public ChannelStorage(String path) throws IOException {
+        this.raf = new RandomAccessFile(path, "rw");
+        this.channel = raf.getChannel();
+    }
+
+    @Override
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public int read(long position, byte[] dst, int offset, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(dst, offset, length);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position() - offset);
+            if (n < 0) {
+                break;
+            }
+        }
+        return buffer.position() - offset;
+    }
+
+    @Override
+    public void write(long position, byte[] src, int offset, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(src, offset, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position() - offset);
+        }
+    }
+
+    /**
+     * Writes the buffers with a gathering write. Gathering writes go through
+     * the channel position, so they are serialized with each other, but not
+     * with positional reads and writes.
+     */
+    @Override
+    public void write(long position, ByteBuffer[] srcs) throws IOException {
+        synchronized (gatherLock) {
+            channel.position(position);
+            long remaining = RandomAccessStorage.remaining(srcs);
+            while (remaining > 0) {
+                remaining -= channel.write(srcs);
+            }
+        }
+    }
+
+    @Override
+    public ByteBuffer slice(long position, int length) throws IOException {
+        byte[] data = new byte[length];
+        int n = read(position, data, 0, length);
+        return ByteBuffer.wrap(data, 0, n).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        raf.close();
+    }
+}
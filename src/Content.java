@@ -1,20 +1,23 @@
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
 
 public class Content implements Searchable {
 
     private String content;
+    // fingerprint of the content, computed on first use; 0 until then
+    private long fingerprint;
 
     /**
      * Constructor that initializes the content instance variable with the
-     * deep-copy of the given String.
+     * given String. Strings are immutable, so it is shared instead of copied.
      * 
-     * @param input String make a deep copy of and create a Content object
+     * @param input String to create a Content object from
      */
     public Content(String input) {
 
-        this.content = new String(input);
+        this.content = Objects.requireNonNull(input);
     }
 
     /**
@@ -35,6 +38,47 @@ public class Content implements Searchable {
         return content;
     }
 
+    /**
+     * Returns the 64-bit fingerprint of the UTF-8 bytes of the content,
+     * computed on first use and cached, since the content never changes.
+     * Equal contents have equal fingerprints, so it can stand for the
+     * content in a FingerprintSet.
+     * 
+     * @return fingerprint of the content.
+     */
+    public long fingerprint() {
+        long h = fingerprint;
+        if (h == 0) {
+            h = Fingerprint.of(content.getBytes(StandardCharsets.UTF_8));
+            fingerprint = h;
+        }
+        return h;
+    }
+
+    /**
+     * Returns true if the given object is of the same class and holds the
+     * same content.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        return content.equals(((Content) obj).content);
+    }
+
+    /**
+     * Returns a hash of the content, taken from its cached fingerprint, so
+     * that equal objects have equal hashes.
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(fingerprint());
+    }
+
     /**
      * Checks if the content instance variable contains the given key and
      * returns a boolean value.
@@ -49,26 +93,65 @@ public class Content implements Searchable {
      */
     @Override
     public Integer[] indexOf(String key) {
+        int[] locs = offsetsOf(key);
+        Integer[] result = new Integer[locs.length];
 
-        List<Integer> locs = new ArrayList<>();
-
-        int startIndex = 0;
+        for (int i = 0; i < locs.length; i++) {
+            result[i] = locs[i];
+        }
+        return result;
+    }
 
-        String lowercaseContent = content.toLowerCase();
-        String lowercaseKey = key.toLowerCase();
+    /**
+     * Finds all occurrences of the given key, ignoring case, and writes their
+     * indices into the buffer without copying the content or the key.
+     */
+    @Override
+    public int indexOf(String key, int[] buffer) {
+        int keyLength = key.length();
+        int last = key.isEmpty() ? content.length() - 1
+                : content.length() - keyLength;
+        int count = 0;
+
+        for (int i = 0; i <= last; i++) {
+            if (content.regionMatches(true, i, key, 0, keyLength)) {
+                if (count < buffer.length) {
+                    buffer[count] = i;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
 
-        while (startIndex < lowercaseContent.length()) {
-            int index = lowercaseContent.indexOf(lowercaseKey, startIndex);
+    /**
+     * Finds all occurrences of a precompiled key, ignoring case, and writes
+     * their indices into the buffer. Faster than indexOf(String, int[]) when
+     * the same key is searched for in many contents.
+     * 
+     * @param key    precompiled key to find.
+     * @param buffer array receiving the indices.
+     * @return total number of occurrences.
+     */
+    public int indexOf(KeyPattern key, int[] buffer) {
+        return key.findAll(content, buffer);
+    }
 
-            if (index == -1) {
-                break;
-            }
+    /**
+     * Finds all occurrences of the given key, ignoring case.
+     * 
+     * @param key text to find.
+     * @return indices of the occurrences in ascending order.
+     */
+    public int[] offsetsOf(String key) {
+        int[] buffer = new int[8];
+        int count = indexOf(key, buffer);
 
-            locs.add(index);
-            startIndex = index + 1;
+        if (count > buffer.length) {
+            buffer = new int[count];
+            indexOf(key, buffer);
         }
-
-        return locs.toArray(new Integer[locs.size()]);
+        return count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
     }
 
     /**
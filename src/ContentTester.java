@@ -50,6 +50,37 @@ public class ContentTester {
         assertFalse(none.equals(expected2));
     }
 
+    @Test
+    public void testIndexOfBuffer() {
+        Content content = new Content(
+                "This is a TEST content. This content is for testing.");
+
+        int[] buffer = new int[1];
+        assertEquals(2, content.indexOf("test", buffer));
+        assertEquals(10, buffer[0]);
+
+        assertArrayEquals(new int[] { 10, 44 }, content.offsetsOf("Test"));
+        assertArrayEquals(new int[] { 0, 1 },
+                new Content("aaa").offsetsOf("aa"));
+        assertEquals(0, content.indexOf("none", buffer));
+    }
+
+    @Test
+    public void testIndexOfKeyPattern() {
+        Content content = new Content(
+                "This is a TEST content. This content is for testing.");
+        KeyPattern key = KeyPattern.compile("conTENT");
+
+        int[] buffer = new int[4];
+        assertEquals(2, content.indexOf(key, buffer));
+        assertEquals(15, buffer[0]);
+        assertEquals(29, buffer[1]);
+
+        assertEquals(3, new Content("aaaa").indexOf(KeyPattern.compile("AA"),
+                buffer));
+        assertEquals(-1, KeyPattern.compile("xyz").find("abc", 0));
+    }
+
     @Test
     public void testClone() {
         Content original = new Content("Test Content");
@@ -58,6 +89,17 @@ public class ContentTester {
         assertEquals(original.getContent(), clone.getContent());
     }
 
+    @Test
+    public void testEqualsAndHashCode() {
+        Content original = new Content("Test Content");
+        Content clone = (Content) original.clone();
+
+        assertTrue(original.equals(clone));
+        assertEquals(original.hashCode(), clone.hashCode());
+        assertFalse(original.equals(new Content("Test content")));
+        assertFalse(original.equals(new Joke("Misc", "Test Content")));
+    }
+
     @Test
     public void testToString() {
         Content content = new Content("Test Content");
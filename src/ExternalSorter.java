@@ -0,0 +1,359 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * External merge sort of the sections of a FileManager by the jokes stored in
+ * them, for stores much larger than the heap.
+ * <p>
+ * The store is read in order, in runs of at most the given number of bytes.
+ * Each run is sorted on a fork/join pool and spilled to a temporary file
+ * while the next run is read, with at most one run per worker in memory. The
+ * runs are then merged, at most MAX_FAN_IN at a time, into a new file with
+ * the same layout as the store, which is renamed over the store.
+ * </p>
+ * <p>
+ * The sort is stable: sections that compare equal keep their order. The
+ * store is locked for the whole sort, so reads and writes of other threads
+ * wait until it is done instead of being lost.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class ExternalSorter {
+
+    /** Orders jokes by Joke.compareTo. */
+    public static final Comparator<Joke> NATURAL = Comparator.naturalOrder();
+
+    /** Orders jokes by category, then by content. */
+    public static final Comparator<Joke> BY_CATEGORY = Comparator
+            .comparing(Joke::getCategory).thenComparing(Joke::getContent);
+
+    static final int MAX_FAN_IN = 64;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int BATCH = 256;
+    // rough heap cost of a decoded entry besides its bytes
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final Comparator<Joke> comparator;
+    private final long runBytes;
+    private final ForkJoinPool pool;
+
+    /*
+     * A section with the joke it holds, decoded once for all comparisons.
+     */
+    private static final class Entry {
+        private final Joke joke;
+        private final byte[] bytes;
+
+        Entry(byte[] bytes) {
+            this.joke = Joke.fromBytes(bytes);
+            this.bytes = bytes;
+        }
+    }
+
+    /*
+     * Takes the sorted sections one at a time.
+     */
+    private interface Output {
+        void accept(byte[] bytes) throws Exception;
+    }
+
+    /*
+     * Reads back a run spilled to a file.
+     */
+    private static final class Run implements AutoCloseable {
+        private final DataInputStream in;
+        private final int order;
+        private int left;
+        private Entry head;
+
+        Run(File file, int order) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), BUFFER_SIZE));
+            this.order = order;
+            this.left = in.readInt();
+        }
+
+        boolean advance() throws IOException {
+            if (left == 0) {
+                head = null;
+                return false;
+            }
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            head = new Entry(bytes);
+            left--;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Constructor that sorts on the common fork/join pool.
+     *
+     * @param comparator order of the jokes, such as NATURAL or BY_CATEGORY.
+     * @param runBytes   bytes of sections sorted in memory at once per
+     *                   worker.
+     */
+    public ExternalSorter(Comparator<Joke> comparator, long runBytes) {
+        this(comparator, runBytes, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param comparator order of the jokes, such as NATURAL or BY_CATEGORY.
+     * @param runBytes   bytes of sections sorted in memory at once per
+     *                   worker.
+     * @param pool       pool the runs are sorted and merged on.
+     */
+    public ExternalSorter(Comparator<Joke> comparator, long runBytes,
+            ForkJoinPool pool) {
+        if (runBytes < 1) {
+            throw new IllegalArgumentException("Need runBytes >= 1");
+        }
+        this.comparator = comparator;
+        this.runBytes = runBytes;
+        this.pool = pool;
+    }
+
+    /**
+     * Sorts the sections of the store by the jokes stored in them.
+     *
+     * @param store FileManager to sort.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public void sort(FileManager store) throws Exception {
+        store.exclusively(() -> {
+            sortLocked(store);
+            return null;
+        });
+    }
+
+    /*
+     * Sorts the store while holding all of its locks.
+     */
+    private void sortLocked(FileManager store) throws Exception {
+        File directory = new File(store.getPath()).getAbsoluteFile()
+                .getParentFile();
+        String sortedPath = store.getPath() + ".sorted";
+        deleteFiles(sortedPath);
+        List<File> runs = new ArrayList<>();
+        try {
+            runs = spill(store, directory);
+            while (runs.size() > MAX_FAN_IN) {
+                runs = mergePass(runs, directory);
+            }
+            FileManager sorted = new FileManager(sortedPath, new StoreConfig()
+                    .setSecSize(store.getSecSize()).setMode(store.getMode())
+                    .setPacked(store.isPacked()).setCodec(store.getCodec()));
+            try {
+                int[] indices = new int[BATCH];
+                byte[][] batch = new byte[BATCH][];
+                int[] written = new int[2]; // sections, sections in batch
+                merge(runs, bytes -> {
+                    indices[written[1]] = written[0]++;
+                    batch[written[1]++] = bytes;
+                    if (written[1] == BATCH) {
+                        sorted.writeBatch(indices, batch);
+                        written[1] = 0;
+                    }
+                });
+                sorted.writeBatch(Arrays.copyOf(indices, written[1]),
+                        Arrays.copyOf(batch, written[1]));
+            } finally {
+                sorted.close();
+            }
+            new File(sortedPath + ".fp").delete();
+            store.replaceWith(sortedPath);
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+            deleteFiles(sortedPath);
+        }
+    }
+
+    /*
+     * Reads the store in runs and spills each run, sorted, to a file. Runs
+     * are sorted by the pool while the next one is read.
+     */
+    private List<File> spill(FileManager store, File directory)
+            throws Exception {
+        List<File> runs = new ArrayList<>();
+        Deque<Future<File>> inFlight = new ArrayDeque<>();
+        try {
+            int sections = store.size();
+            List<Entry> run = new ArrayList<>();
+            long bytes = 0;
+            for (int i = 0; i < sections; i++) {
+                byte[] data = store.read(i);
+                run.add(new Entry(data));
+                bytes += data.length + ENTRY_OVERHEAD;
+                if (bytes >= runBytes || i == sections - 1) {
+                    if (inFlight.size() >= pool.getParallelism()) {
+                        runs.add(await(inFlight.removeFirst()));
+                    }
+                    Entry[] entries = run.toArray(new Entry[0]);
+                    inFlight.addLast(pool.submit(
+                            () -> writeRun(entries, directory)));
+                    run = new ArrayList<>();
+                    bytes = 0;
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                runs.add(await(inFlight.removeFirst()));
+            }
+            return runs;
+        } catch (Exception e) {
+            for (Future<File> pending : inFlight) {
+                File run = awaitQuietly(pending);
+                if (run != null) {
+                    run.delete();
+                }
+            }
+            for (File run : runs) {
+                run.delete();
+            }
+            throw e;
+        }
+    }
+
+    private File writeRun(Entry[] entries, File directory) throws IOException {
+        Arrays.parallelSort(entries, (a, b) -> comparator.compare(a.joke,
+                b.joke));
+        File file = File.createTempFile("run", ".tmp", directory);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file),
+                        BUFFER_SIZE))) {
+            out.writeInt(entries.length);
+            for (Entry entry : entries) {
+                out.writeInt(entry.bytes.length);
+                out.write(entry.bytes);
+            }
+        }
+        return file;
+    }
+
+    /*
+     * Merges the runs in groups of MAX_FAN_IN, in parallel, into fewer and
+     * longer runs, keeping them in order so that the sort stays stable.
+     */
+    private List<File> mergePass(List<File> runs, File directory)
+            throws Exception {
+        List<Future<File>> merged = new ArrayList<>();
+        for (int from = 0; from < runs.size(); from += MAX_FAN_IN) {
+            List<File> group = runs.subList(from,
+                    Math.min(runs.size(), from + MAX_FAN_IN));
+            merged.add(pool.submit(() -> mergeToFile(group, directory)));
+        }
+        List<File> result = new ArrayList<>();
+        for (Future<File> run : merged) {
+            result.add(await(run));
+        }
+        for (File run : runs) {
+            run.delete();
+        }
+        return result;
+    }
+
+    private File mergeToFile(List<File> runs, File directory)
+            throws Exception {
+        File file = File.createTempFile("run", ".tmp", directory);
+        int count = 0;
+        for (File run : runs) {
+            try (DataInputStream in = new DataInputStream(
+                    new FileInputStream(run))) {
+                count += in.readInt();
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file),
+                        BUFFER_SIZE))) {
+            out.writeInt(count);
+            merge(runs, bytes -> {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            });
+        }
+        return file;
+    }
+
+    /*
+     * K-way merge of sorted runs. Equal jokes come out in run order.
+     */
+    private void merge(List<File> runs, Output output) throws Exception {
+        PriorityQueue<Run> heads = new PriorityQueue<>(
+                Math.max(1, runs.size()), (a, b) -> {
+                    int order = comparator.compare(a.head.joke, b.head.joke);
+                    return order != 0 ? order
+                            : Integer.compare(a.order, b.order);
+                });
+        List<Run> open = new ArrayList<>();
+        try {
+            for (File file : runs) {
+                Run run = new Run(file, open.size());
+                open.add(run);
+                if (run.advance()) {
+                    heads.add(run);
+                }
+            }
+            while (!heads.isEmpty()) {
+                Run run = heads.poll();
+                output.accept(run.head.bytes);
+                if (run.advance()) {
+                    heads.add(run);
+                }
+            }
+        } finally {
+            for (Run run : open) {
+                run.close();
+            }
+        }
+    }
+
+    private static File await(Future<File> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static File awaitQuietly(Future<File> task) {
+        try {
+            return task.get();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void deleteFiles(String path) {
+        for (String suffix : new String[] { "", ".fp", ".dir" }) {
+            new File(path + suffix).delete();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExternalSorterTester {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jokes", ".dat");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        for (String suffix : new String[] { "", ".fp", ".dir", ".wal" }) {
+            new File(file.getPath() + suffix).delete();
+        }
+    }
+
+    private static List<Joke> jokes(int count) {
+        String[] categories = { "Pun", "Misc", "Programming", "Dark" };
+        Random random = new Random(7);
+        List<Joke> jokes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            jokes.add(new Joke(categories[random.nextInt(4)],
+                    "Joke number " + random.nextInt(1000) + "-" + i));
+        }
+        return jokes;
+    }
+
+    @Test
+    public void testSortFixedInManyRuns() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 64);
+        List<Joke> jokes = jokes(300);
+        for (int i = 0; i < jokes.size(); i++) {
+            fm.write(i, jokes.get(i).getBytes(64));
+        }
+
+        // one section per run, more runs than one merge can take
+        new ExternalSorter(ExternalSorter.BY_CATEGORY, 1).sort(fm);
+
+        List<Joke> expected = new ArrayList<>(jokes);
+        expected.sort(ExternalSorter.BY_CATEGORY);
+        assertEquals(300, fm.size());
+        for (int i = 0; i < expected.size(); i++) {
+            byte[] bytes = expected.get(i).getBytes(64);
+            assertArrayEquals(bytes, fm.read(i));
+            assertEquals(i, fm.indexOf(bytes));
+        }
+        fm.close();
+        assertFalse(new File(file.getPath() + ".sorted").exists());
+    }
+
+    @Test
+    public void testSortPacked() throws Exception {
+        StoreConfig config = new StoreConfig().setPacked(true);
+        FileManager fm = new FileManager(file.getPath(), config);
+        List<Joke> jokes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            jokes.add(new Joke("Misc", "A joke that is " + "long ".repeat(i)
+                    + "enough"));
+        }
+        Collections.shuffle(jokes, new Random(3));
+        for (int i = 0; i < jokes.size(); i++) {
+            fm.write(i, jokes.get(i).toRecord());
+        }
+
+        new ExternalSorter(ExternalSorter.NATURAL, 500).sort(fm);
+        fm.close();
+
+        fm = new FileManager(file.getPath(), config);
+        for (int i = 1; i < 50; i++) {
+            int previous = Joke.fromBytes(fm.read(i - 1)).getContent()
+                    .length();
+            assertTrue(previous < Joke.fromBytes(fm.read(i)).getContent()
+                    .length());
+        }
+        fm.close();
+    }
+
+    @Test
+    public void testWritesDuringSortAreKept() throws Exception {
+        FileManager logged = new FileManager(file.getPath(),
+                new StoreConfig().setSecSize(64).setWal(true)
+                        .setGroupCommit(1000, 60000));
+        List<Joke> jokes = jokes(400);
+        for (int i = 0; i < 200; i++) {
+            logged.write(i, jokes.get(i).getBytes(64));
+        }
+
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 200; i < 400; i++) {
+                    logged.write(logged.size(), jokes.get(i).getBytes(64));
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        new ExternalSorter(ExternalSorter.BY_CATEGORY, 64 * 16).sort(logged);
+        writer.join();
+
+        assertEquals(400, logged.size());
+        for (Joke joke : jokes) {
+            assertTrue(logged.contains(joke.getBytes(64)));
+        }
+        logged.close();
+
+        FileManager fm = new FileManager(file.getPath(), 64);
+        assertEquals(400, fm.size());
+        for (Joke joke : jokes) {
+            assertTrue(fm.contains(joke.getBytes(64)));
+        }
+        fm.close();
+    }
+
+    @Test
+    public void testSortIsStable() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 64);
+        String[] categories = { "B", "A", "B", "A", "B" };
+        for (int i = 0; i < categories.length; i++) {
+            byte[] bytes = new Joke(categories[i], "same").getBytes(64);
+            bytes[63] = (byte) i; // after the content, so not compared
+            fm.write(i, bytes);
+        }
+
+        new ExternalSorter(Comparator.comparing(Joke::getCategory), 1)
+                .sort(fm);
+
+        int[] expected = { 1, 3, 0, 2, 4 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], fm.read(i)[63]);
+        }
+        fm.close();
+    }
+}
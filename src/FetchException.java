@@ -0,0 +1,32 @@
+import java.io.IOException;
+
+/**
+ * Thrown when a joke could not be fetched.
+ *
+ * @author rachelcurci
+ */
+public class FetchException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient FetchResult result;
+
+    /**
+     * Constructor.
+     *
+     * @param result the failed result.
+     */
+    public FetchException(FetchResult result) {
+        super("Cannot fetch a joke: " + result.getFailure() + ", "
+                + result.getDetail());
+        this.result = result;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return the failed result.
+     */
+    public FetchResult getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Timeouts and retries of JokeFetcher. The setters return the policy so
+ * settings can be chained.
+ * <p>
+ * A request that times out, is rate limited, fails with a 5xx status or
+ * cannot connect is tried again, up to maxAttempts requests in all. Before
+ * attempt n it waits a random time between half and all of
+ * baseBackoffMillis * 2^(n - 2), capped at maxBackoffMillis, or longer if
+ * the API asked for it with Retry-After, still capped.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class FetchPolicy {
+
+    private long connectTimeoutMillis = 2000;
+    private long requestTimeoutMillis = 5000;
+    private int maxAttempts = 3;
+    private long baseBackoffMillis = 100;
+    private long maxBackoffMillis = 2000;
+
+    /**
+     * Getter method.
+     *
+     * @return longest time to open a connection, in milliseconds.
+     */
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * Sets the longest time to open a connection.
+     *
+     * @param millis timeout in milliseconds, at least 1.
+     * @return this policy.
+     */
+    public FetchPolicy setConnectTimeoutMillis(long millis) {
+        this.connectTimeoutMillis = positive(millis);
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return longest time for a whole request, in milliseconds.
+     */
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Sets the longest time for a whole request, from sending it to having
+     * read the response.
+     *
+     * @param millis timeout in milliseconds, at least 1.
+     * @return this policy.
+     */
+    public FetchPolicy setRequestTimeoutMillis(long millis) {
+        this.requestTimeoutMillis = positive(millis);
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return most requests made for one joke.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the most requests made for one joke, counting the first.
+     *
+     * @param attempts number of requests, at least 1.
+     * @return this policy.
+     */
+    public FetchPolicy setMaxAttempts(int attempts) {
+        this.maxAttempts = (int) positive(attempts);
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return wait before the first retry, in milliseconds.
+     */
+    public long getBaseBackoffMillis() {
+        return baseBackoffMillis;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return longest wait between two attempts, in milliseconds.
+     */
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * Sets the wait before the first retry, which doubles with every retry
+     * up to the given maximum.
+     *
+     * @param baseMillis wait before the first retry, at least 1.
+     * @param maxMillis  longest wait, at least baseMillis.
+     * @return this policy.
+     */
+    public FetchPolicy setBackoffMillis(long baseMillis, long maxMillis) {
+        if (maxMillis < baseMillis) {
+            throw new IllegalArgumentException("Need maxMillis >= baseMillis");
+        }
+        this.baseBackoffMillis = positive(baseMillis);
+        this.maxBackoffMillis = maxMillis;
+        return this;
+    }
+
+    /**
+     * Returns how long to wait before the given attempt.
+     *
+     * @param attempt          number of the attempt about to be made, from 2.
+     * @param retryAfterMillis wait asked for by the API, 0 if none.
+     * @param random           number between 0 and 1 for the jitter.
+     * @return wait in milliseconds.
+     */
+    public long backoffMillis(int attempt, long retryAfterMillis,
+            double random) {
+        int doublings = Math.min(Math.max(0, attempt - 2), 30);
+        long cap = Math.min(maxBackoffMillis, baseBackoffMillis << doublings);
+        long wait = cap / 2 + (long) (random * (cap - cap / 2));
+        return Math.min(maxBackoffMillis, Math.max(wait, retryAfterMillis));
+    }
+
+    private static long positive(long value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Need a value of at least 1");
+        }
+        return value;
+    }
+}
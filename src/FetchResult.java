@@ -0,0 +1,179 @@
+/**
+ * Outcome of fetching one joke: the text of the joke, or why there is none.
+ *
+ * @author rachelcurci
+ */
+public final class FetchResult {
+
+    /**
+     * Why a fetch failed.
+     */
+    public enum Failure {
+        /** No response within the request timeout. */
+        TIMEOUT(true),
+        /** The API answered 429 Too Many Requests. */
+        RATE_LIMITED(true),
+        /** The API answered with a 5xx status. */
+        SERVER_ERROR(true),
+        /** The API answered with a 4xx status other than 429. */
+        CLIENT_ERROR(false),
+        /** The response held no joke or could not be parsed. */
+        BAD_RESPONSE(false),
+        /** The connection failed. */
+        NETWORK(true),
+        /** The fetching thread was interrupted. */
+        INTERRUPTED(false);
+
+        private final boolean retryable;
+
+        Failure(boolean retryable) {
+            this.retryable = retryable;
+        }
+
+        /**
+         * Checks if trying again may succeed.
+         *
+         * @return true for transient failures.
+         */
+        public boolean isRetryable() {
+            return retryable;
+        }
+    }
+
+    private final String joke;
+    private final Failure failure;
+    private final int status;
+    private final String detail;
+    private final int attempts;
+    private final long retryAfterMillis;
+
+    private FetchResult(String joke, Failure failure, int status,
+            String detail, int attempts, long retryAfterMillis) {
+        this.joke = joke;
+        this.failure = failure;
+        this.status = status;
+        this.detail = detail;
+        this.attempts = attempts;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Creates the result of a successful fetch.
+     *
+     * @param joke     text of the joke.
+     * @param attempts number of requests made.
+     * @return the result.
+     */
+    public static FetchResult success(String joke, int attempts) {
+        return new FetchResult(joke, null, 200, null, attempts, 0);
+    }
+
+    /**
+     * Creates the result of a failed fetch.
+     *
+     * @param failure  why it failed.
+     * @param status   HTTP status of the last response, 0 if there was none.
+     * @param detail   description of the failure.
+     * @param attempts number of requests made.
+     * @return the result.
+     */
+    public static FetchResult failure(Failure failure, int status,
+            String detail, int attempts) {
+        return new FetchResult(null, failure, status, detail, attempts, 0);
+    }
+
+    /*
+     * Failure that asks to wait the given time before trying again.
+     */
+    static FetchResult rateLimited(int status, long retryAfterMillis,
+            int attempts) {
+        return new FetchResult(null, Failure.RATE_LIMITED, status,
+                "HTTP " + status, attempts, retryAfterMillis);
+    }
+
+    /**
+     * Checks if the fetch succeeded.
+     *
+     * @return true if there is a joke.
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return text of the joke, or null if the fetch failed.
+     */
+    public String getJoke() {
+        return joke;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return why the fetch failed, or null if it succeeded.
+     */
+    public Failure getFailure() {
+        return failure;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return HTTP status of the last response, 0 if there was none.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return description of the failure, or null if the fetch succeeded.
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of requests made.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /*
+     * How long the API asked to wait before trying again, 0 if it did not.
+     */
+    long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Returns the joke, or throws if the fetch failed.
+     *
+     * @return text of the joke.
+     * @throws FetchException if the fetch failed.
+     */
+    public String orThrow() throws FetchException {
+        if (failure != null) {
+            throw new FetchException(this);
+        }
+        return joke;
+    }
+
+    /**
+     * Returns a String representation of the result.
+     */
+    @Override
+    public String toString() {
+        if (failure == null) {
+            return "FetchResult[" + joke + "]";
+        }
+        return "FetchResult[" + failure + ", " + detail + ", after "
+                + attempts + " attempt(s)]";
+    }
+}
@@ -1,32 +1,503 @@
-import java.io.RandomAccessFile;
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Class that handles file operations with random access, enabling the storage
  * and retrieval of joke data in a serialized form.
+ * <p>
+ * A FileManager can be shared by threads. Sections are guarded by striped
+ * read/write locks, so readers and writers of different sections proceed in
+ * parallel, while a reader never sees a section half written or a swap half
+ * done. Writes that grow the file are additionally serialized with each
+ * other. In CONCURRENT mode the file is accessed with positional I/O, so
+ * sections in different stripes are also read and written in parallel by the
+ * operating system.
+ * </p>
+ * <p>
+ * With a write-ahead log, writes are kept in memory and logged, and reach the
+ * file only after their group of writes has been committed to the log. A
+ * swap or a batch is logged as one transaction, so after a crash it is
+ * either complete or absent.
+ * </p>
  * 
  * @author rachelcurci
  */
 public class FileManager implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    private RandomAccessFile raf;
+    /**
+     * How the bytes of the file are accessed.
+     */
+    public enum Mode {
+        /** RandomAccessFile with seek followed by read/write. */
+        RANDOM_ACCESS,
+        /** Memory-mapped FileChannel, with zero-copy reads. */
+        MAPPED,
+        /** Positional FileChannel I/O, for many threads at once. */
+        CONCURRENT,
+        /**
+         * AsynchronousFileChannel, with readAsync of fixed-size sections
+         * done without tying up a thread.
+         */
+        ASYNC
+    }
+
+    private static final int STRIPES = 64;
+    private static final int MAX_DIRECT_READS = 16;
+    private static final int TRAINING_SAMPLES = 4096;
+    // records a compressed file needs before close trains its dictionary
+    private static final int MIN_TRAINING_RECORDS = 100;
+    private static final int TRAINED_DICTIONARY = 4096;
+
+    private String path;
+    private Mode mode;
+    private transient Storage storage;
+    private transient PackedHeap heap;
     private int secSize;
+    private transient List<SectionIndex> indexes = new CopyOnWriteArrayList<>();
+    private transient FingerprintIndex fingerprints;
+    private transient BloomIndex bloom;
+    private transient SectionCache cache;
+    private ReentrantReadWriteLock[] stripes =
+            new ReentrantReadWriteLock[STRIPES];
+    private ReentrantLock growLock = new ReentrantLock();
+    private transient WriteAheadLog wal;
+    private transient Map<Integer, byte[]> logged = new ConcurrentHashMap<>();
+    private volatile int loggedSize;
+    // times each stripe has been write-locked, so that reads done without
+    // its lock can tell whether a write overlapped them
+    private AtomicLongArray stripeWrites = new AtomicLongArray(STRIPES);
+    private int asyncThreads;
+    private transient ExecutorService asyncPool;
+    private transient Semaphore asyncPermits;
+    private transient Queue<Runnable> asyncWaiting =
+            new ConcurrentLinkedQueue<>();
+    private AtomicInteger asyncPending = new AtomicInteger();
 
     /**
      * Constructor that initializes the FileManager object with a file at the
      * given path for reading and writing, using RandomAccessFile class, and
      * sets the given size into the secSize for subsequent read/write
-     * operations.
+     * operations. The fingerprint index kept in path + ".fp" is loaded, or
+     * rebuilt from the file if it is missing or stale.
      * 
      * @param path String - path of file.
      * @param size int - for secSize for future operations.
      * @throws Exception for IOException and FileNotFoundException.
      */
     public FileManager(String path, int size) throws Exception {
-        this.raf = new RandomAccessFile(path, "rw");
-        this.secSize = size;
+        this(path, size, Mode.RANDOM_ACCESS);
+    }
+
+    /**
+     * Constructor that initializes the FileManager object with a file at the
+     * given path, accessed as given by the mode, and sets the given size into
+     * the secSize for subsequent read/write operations.
+     * 
+     * @param path String - path of file.
+     * @param size int - for secSize for future operations.
+     * @param mode Mode - how the file is accessed.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public FileManager(String path, int size, Mode mode) throws Exception {
+        this(path, new StoreConfig().setSecSize(size).setMode(mode));
+    }
+
+    /**
+     * Constructor that initializes the FileManager object with a file at the
+     * given path, set up as given by the config. A packed file stores records
+     * of any length one after the other instead of in fixed-size sections;
+     * sections are then called slots.
+     * 
+     * @param path   String - path of file.
+     * @param config StoreConfig - settings of the file.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public FileManager(String path, StoreConfig config) throws Exception {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.path = path;
+        this.mode = config.getMode();
+        this.secSize = config.getSecSize();
+        if (config.isPacked()) {
+            this.heap = new PackedHeap(path, config.getMode(),
+                    config.getCodec());
+        } else {
+            this.storage = openStorage(path, config.getMode());
+        }
+        if (config.isWal()) {
+            this.wal = new WriteAheadLog(path + ".wal",
+                    config.getGroupCommitRecords(),
+                    config.getGroupCommitMillis(), new LogSink());
+        }
+        this.asyncThreads = config.getAsyncThreads();
+        this.asyncPermits = new Semaphore(config.getMaxInFlight());
+        if (config.getCacheBytes() > 0) {
+            this.cache = new SectionCache(config.getCacheBytes());
+        }
+        this.fingerprints = new FingerprintIndex(path + ".fp");
+        attachIndex(fingerprints);
+        if (config.getBloomFalsePositiveRate() > 0) {
+            this.bloom = new BloomIndex(path + ".bf",
+                    config.getBloomFalsePositiveRate(), fingerprints);
+            attachIndex(bloom);
+        }
+    }
+
+    /*
+     * Opens the storage of a file in the given mode.
+     */
+    static Storage openStorage(String path, Mode mode) throws IOException {
+        if (mode == Mode.MAPPED) {
+            return new MappedStorage(path);
+        }
+        if (mode == Mode.CONCURRENT) {
+            return new ChannelStorage(path);
+        }
+        if (mode == Mode.ASYNC) {
+            return new AsyncStorage(path);
+        }
+        return new RandomAccessStorage(path);
+    }
+
+    /**
+     * Attaches a secondary index to the file. The index is loaded from its
+     * sidecar, or rebuilt by reading every section, and is kept up to date on
+     * every subsequent write.
+     * 
+     * @param index SectionIndex to attach.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    protected void addIndex(SectionIndex index) throws Exception {
+        attachIndex(index);
+    }
+
+    /*
+     * Does the work of addIndex without calling methods a subclass can
+     * override, so the constructor can attach the built-in indexes before
+     * a subclass is initialized.
+     */
+    private void attachIndex(SectionIndex index) throws Exception {
+        int sections = sectionCount();
+        if (!index.load(sections, fileLength())) {
+            for (int i = 0; i < sections; i++) {
+                index.sectionWritten(i, readLocked(i));
+            }
+        }
+        indexes.add(index);
+    }
+
+    /*
+     * Runs a task that reads the whole file and then replaces it, with every
+     * section locked throughout, so that no write made meanwhile is lost.
+     * Other threads wait until the task is done. A write-ahead log is
+     * drained first, while no commit can start, so that none of its
+     * sections is applied at its old place to the replacement.
+     */
+    <T> T exclusively(Callable<T> task) throws Exception {
+        if (wal == null) {
+            return lockedAll(task);
+        }
+        // commits take stripe locks, so the commit lock is taken first
+        return wal.exclusive(() -> lockedAll(task));
+    }
+
+    private <T> T lockedAll(Callable<T> task) throws Exception {
+        List<Lock> locks = lockAll();
+        try {
+            if (wal != null) {
+                wal.drain();
+            }
+            return task.call();
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /*
+     * Replaces the file with the one at the given path, which has the same
+     * layout, and rebuilds the indexes from it. The file is renamed over the
+     * old one, so a crash leaves either the old or the new file in place.
+     */
+    void replaceWith(String replacementPath) throws Exception {
+        if (wal != null) {
+            wal.commit();
+        }
+        List<Lock> locks = lockAll();
+        try {
+            File target = new File(path);
+            File replacement = new File(replacementPath);
+            if (heap != null) {
+                heap.close();
+                new File(path + ".dir").delete();
+            } else {
+                storage.close();
+            }
+            Files.move(replacement.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (heap != null) {
+                File directory = new File(replacementPath + ".dir");
+                if (directory.isFile()) {
+                    Files.move(directory.toPath(),
+                            new File(path + ".dir").toPath(),
+                            StandardCopyOption.ATOMIC_MOVE);
+                }
+                heap = new PackedHeap(path, mode);
+            } else {
+                storage = openStorage(path, mode);
+            }
+
+            if (cache != null) {
+                cache.clear();
+            }
+            int sections = size();
+            // indexOf waits for the rebuilt index instead of seeing it empty
+            synchronized (fingerprints) {
+                for (SectionIndex index : indexes) {
+                    index.clear();
+                }
+                for (int i = 0; i < sections; i++) {
+                    byte[] data = readSection(i);
+                    for (SectionIndex index : indexes) {
+                        index.sectionWritten(i, data);
+                    }
+                }
+            }
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Waits for the async operations started so far, then saves the attached
+     * indexes next to the file and closes it. A compressed packed file
+     * without a dictionary gets one trained from its records first, once
+     * it holds at least 100 of them.
+     * 
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public void close() throws Exception {
+        synchronized (asyncPending) {
+            while (asyncPending.get() > 0) {
+                asyncPending.wait();
+            }
+        }
+        synchronized (this) {
+            if (asyncPool != null) {
+                asyncPool.shutdown();
+            }
+        }
+        if (wal != null) {
+            wal.close();
+        }
+        List<Lock> locks = lockAll();
+        try {
+            if (heap != null && !trainDictionary()
+                    && heap.garbage() > heap.length() / 2) {
+                heap.compact();
+            }
+            int sections = size();
+            long length = length();
+            for (SectionIndex index : indexes) {
+                index.save(sections, length);
+            }
+            if (heap != null) {
+                heap.close();
+            } else {
+                storage.close();
+            }
+            if (cache != null) {
+                cache.clear();
+            }
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Forces every write made so far to the device. With a write-ahead log,
+     * the waiting writes are committed without waiting for their group to
+     * fill up.
+     * 
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public void sync() throws Exception {
+        if (wal != null) {
+            wal.commit();
+        } else if (heap != null) {
+            heap.force();
+        } else {
+            storage.force();
+        }
+    }
+
+    /**
+     * Getter method.
+     * 
+     * @return the section cache with its statistics, or null if sections are
+     *         not cached.
+     */
+    public SectionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Checks if records are packed with variable lengths.
+     * 
+     * @return true for a packed file, false for fixed-size sections.
+     */
+    public boolean isPacked() {
+        return heap != null;
+    }
+
+    /**
+     * Reclaims the space left behind by records of a packed file that were
+     * moved when they grew. Does nothing for fixed-size sections.
+     * 
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public void compact() throws Exception {
+        if (heap == null) {
+            return;
+        }
+        List<Lock> locks = lockAll();
+        try {
+            heap.compact();
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Checks if the records of a packed file are compressed.
+     * 
+     * @return true if records are stored compressed.
+     */
+    public boolean isCompressed() {
+        return heap != null && heap.getCodec().isCompressed();
+    }
+
+    /**
+     * Getter method.
+     * 
+     * @return how records are stored, IDENTITY for fixed-size sections.
+     */
+    public RecordCodec getCodec() {
+        return heap != null ? heap.getCodec() : RecordCodec.IDENTITY;
+    }
+
+    /**
+     * Compresses the records of a packed file with Deflate and a dictionary
+     * trained from up to 4096 records spread over the file. The file is
+     * rewritten as compact does, with the codec and the dictionary in its
+     * header, so it can be run again to retrain the dictionary as the jokes
+     * change. Reads return the records as they were written.
+     * 
+     * @param dictionarySize largest dictionary size in bytes, at most
+     *                       RecordCodec.MAX_DICTIONARY.
+     * @throws IllegalStateException if the file is not packed.
+     * @throws Exception             for IOException and
+     *                               FileNotFoundException.
+     */
+    public void compress(int dictionarySize) throws Exception {
+        if (heap == null) {
+            throw new IllegalStateException(
+                    "Only packed files can be compressed.");
+        }
+        List<Lock> locks = lockAll();
+        try {
+            heap.compact(RecordCodec.deflate(train(dictionarySize)));
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /*
+     * Builds a dictionary from up to TRAINING_SAMPLES records spread over
+     * the file. Called holding every lock.
+     */
+    private byte[] train(int dictionarySize) throws Exception {
+        int sections = size();
+        int step = Math.max(1, sections / TRAINING_SAMPLES);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < sections; i += step) {
+            samples.add(readSection(i));
+        }
+        return RecordCodec.train(samples, dictionarySize);
+    }
+
+    /*
+     * Gives a compressed file that has no dictionary yet one trained from
+     * its records, once it holds MIN_TRAINING_RECORDS of them, and rewrites
+     * the file with it. Without a dictionary, Deflate saves next to nothing
+     * on a record as short as a joke. Called holding every lock.
+     */
+    private boolean trainDictionary() throws Exception {
+        RecordCodec codec = heap.getCodec();
+        if (!codec.isCompressed() || codec.dictionary().length > 0
+                || size() < MIN_TRAINING_RECORDS) {
+            return false;
+        }
+        byte[] dictionary = train(TRAINED_DICTIONARY);
+        if (dictionary.length == 0) {
+            return false;
+        }
+        heap.compact(RecordCodec.deflate(dictionary));
+        return true;
+    }
+
+    /**
+     * Returns the length of the file.
+     * 
+     * @return length of the file in bytes.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public long length() throws Exception {
+        return fileLength();
+    }
+
+    /**
+     * Getter method.
+     * 
+     * @return path of the file.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Getter method.
+     * 
+     * @return how the file is accessed.
+     */
+    public Mode getMode() {
+        return mode;
     }
 
     /**
@@ -45,8 +516,27 @@ public class FileManager implements Serializable {
      * @throws Exception for IOException and FileNotFoundException.
      */
     public int size() throws Exception {
-        int sections = (int) (raf.length() / secSize);
-        return sections;
+        return sectionCount();
+    }
+
+    /*
+     * Length of the file, also used before a subclass is initialized.
+     */
+    private long fileLength() throws Exception {
+        return heap != null ? heap.length() : storage.length();
+    }
+
+    /*
+     * Number of sections, also used before a subclass is initialized.
+     */
+    private int sectionCount() throws Exception {
+        int sections;
+        if (heap != null) {
+            sections = heap.size();
+        } else {
+            sections = (int) (storage.length() / secSize);
+        }
+        return Math.max(sections, loggedSize);
     }
 
     /**
@@ -57,61 +547,195 @@ public class FileManager implements Serializable {
      * @throws Exception for IOException and FileNotFoundException.
      */
     public void write(int index, byte[] data) throws Exception {
-        raf.seek(index * secSize);
-        raf.write(data);
+        writeBatch(new int[] { index }, new byte[][] { data });
+    }
+
+    /**
+     * Writes several sections as one step. The sections are written in
+     * ascending order, and runs of adjacent sections go to the file with a
+     * single gathering write, so a batch costs a few system calls instead of
+     * one per section. With a write-ahead log they are committed together, so
+     * after a crash either all or none of them are in the file. When an index
+     * repeats, the last data given for it wins.
+     * 
+     * @param indices sections to write.
+     * @param data    byte array of data for each section.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public void writeBatch(int[] indices, byte[][] data) throws Exception {
+        if (indices.length != data.length) {
+            throw new IllegalArgumentException(
+                    "Need one byte array per index");
+        }
+        if (indices.length == 0) {
+            return;
+        }
+        long start = Metrics.WRITE.start();
+        int first = Integer.MAX_VALUE;
+        int last = 0;
+        for (int k = 0; k < indices.length; k++) {
+            first = Math.min(first, indices[k]);
+            last = Math.max(last, indices[k] + sectionsTouched(data[k]));
+        }
+        int before = size();
+        boolean grows = last > before;
+        if (grows) {
+            growLock.lock();
+            before = size();
+        }
+        boolean commitDue;
+        try {
+            List<Lock> locks = lockRange(Math.min(first, before), last);
+            try {
+                commitDue = writeSections(indices, data);
+                // indexOf sees the whole batch in the index or none of it
+                synchronized (fingerprints) {
+                    for (int k = 0; k < indices.length; k++) {
+                        updateIndexes(indices[k], data[k], before);
+                    }
+                }
+            } finally {
+                unlock(locks);
+            }
+        } finally {
+            if (grows) {
+                growLock.unlock();
+            }
+        }
+        if (commitDue) {
+            wal.commit();
+        }
+        Metrics.WRITE.stop(start);
     }
 
     /**
-     * Reads data from a specified section.
+     * Reads data from a specified section. With a section cache, a section
+     * read recently is copied from memory instead of read from the file.
      * 
      * @param index specified section to read data from.
      * @return byte array of the read data.
      * @throws Exception for IOException and FileNotFoundException.
      */
     public byte[] read(int index) throws Exception {
-        raf.seek(index * secSize);
-        byte[] data = new byte[secSize];
-        int bytesRead = raf.read(data);
-
-        if (bytesRead < secSize) {
-            data = Arrays.copyOf(data, bytesRead);
+        long start = Metrics.READ.start();
+        try {
+            return readLocked(index);
+        } finally {
+            Metrics.READ.stop(start);
         }
+    }
 
-        return data;
+    /**
+     * Reads data from a specified section without copying it when the file is
+     * memory-mapped. The buffer is read-only and only valid until the section
+     * is written again. With a section cache, the buffer is a view of the
+     * cached section.
+     * 
+     * @param index specified section to read data from.
+     * @return read-only ByteBuffer over the section.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public ByteBuffer readBuffer(int index) throws Exception {
+        long start = Metrics.READ.start();
+        Lock lock = stripe(index).readLock();
+        lock.lock();
+        try {
+            return sliceSection(index);
+        } finally {
+            lock.unlock();
+            Metrics.READ.stop(start);
+        }
     }
 
     /**
-     * Swaps data between two indices i and j.
+     * Swaps data between two indices i and j. Both sections are locked for
+     * the whole swap, so readers see either both old or both new sections,
+     * and with a write-ahead log so does the file after a crash. indexOf
+     * finds both of them throughout.
      * 
      * @param i indices one.
      * @param j indices two.
      * @throws Exception for IOException and FileNotFoundException.
      */
     public void swap(int i, int j) throws Exception {
-        byte[] dataI = read(i);
-        byte[] dataJ = read(j);
+        boolean[] needed = new boolean[STRIPES];
+        needed[stripeOf(i)] = true;
+        needed[stripeOf(j)] = true;
+        List<Lock> locks = lockStripes(needed);
+        boolean commitDue;
+        try {
+            int before = size();
+            byte[] dataI = readSection(i);
+            byte[] dataJ = readSection(j);
 
-        write(j, dataI);
-        write(i, dataJ);
+            commitDue = writeSections(new int[] { j, i },
+                    new byte[][] { dataI, dataJ });
+            // indexOf never sees one section moved and the other not
+            synchronized (fingerprints) {
+                updateIndexes(j, dataI, before);
+                updateIndexes(i, dataJ, before);
+            }
+        } finally {
+            unlock(locks);
+        }
+        if (commitDue) {
+            wal.commit();
+        }
     }
 
     /**
-     * Searches for the first occurrence of the given byte array target.
+     * Searches for the first occurrence of the given byte array target. The
+     * fingerprint index narrows the search down to the sections with the same
+     * fingerprint, so only those are read and compared. With a Bloom filter,
+     * bytes that are certainly not stored are answered without looking the
+     * fingerprint up at all. The candidates are compared holding their read
+     * locks, and looked up again once locked, so a section moved by a
+     * concurrent swap is not missed.
      * 
      * @param target byte array to find in the file.
      * @return int of the index. Returns -1 if target is not found in the file.
      * @throws Exception for IOException and FileNotFoundException.
      */
     public int indexOf(byte[] target) throws Exception {
-        int sections = size();
-
-        for (int i = 0; i < sections; i++) {
-            byte[] currentData = read(i);
-            if (Arrays.equals(currentData, target)) {
-                return i;
+        long start = Metrics.DEDUP.start();
+        ByteBuffer wanted = ByteBuffer.wrap(target);
+        long fingerprint = Fingerprint.of(target);
+        int compared = 0;
+        try {
+            if (bloom != null && !bloom.mightContain(fingerprint)) {
+                return -1;
+            }
+            boolean[] needed = new boolean[STRIPES];
+            int[] candidates = fingerprints.candidates(fingerprint);
+            while (true) {
+                for (int i : candidates) {
+                    needed[stripeOf(i)] = true;
+                }
+                List<Lock> locks = readLockStripes(needed);
+                try {
+                    // with the stripe of every candidate locked, no
+                    // candidate can be written, so the list is final; a
+                    // candidate whose stripe is not locked yet gets it
+                    // locked on the next round, and as the stripes only add
+                    // up, this ends
+                    candidates = fingerprints.candidates(fingerprint);
+                    if (locked(candidates, needed)) {
+                        for (int i : candidates) {
+                            compared++;
+                            if (sliceSection(i).equals(wanted)) {
+                                return i;
+                            }
+                        }
+                        return -1;
+                    }
+                } finally {
+                    unlock(locks);
+                }
             }
+        } finally {
+            Metrics.dedupCompared(compared);
+            Metrics.DEDUP.stop(start);
         }
-        return -1;
     }
 
     /**
@@ -126,4 +750,556 @@ public class FileManager implements Serializable {
         return indexOf(target) != -1;
     }
 
+    /**
+     * Reads data from a specified section without blocking the caller. A
+     * section in the write-ahead log or the cache completes at once. In
+     * ASYNC mode, other fixed-size sections are read with asynchronous I/O;
+     * the read holds no lock and is done again if a write overlapped it.
+     * Otherwise the read runs on the pool of the async operations. The
+     * future may complete on a thread of that pool or of the channel, so
+     * callers should not block in its continuations.
+     * 
+     * @param index specified section to read data from.
+     * @return future byte array of the read data.
+     */
+    public CompletableFuture<byte[]> readAsync(int index) {
+        Lock lock = stripe(index).readLock();
+        if (lock.tryLock()) {
+            try {
+                byte[] image = logged.get(index);
+                if (image == null && cache != null) {
+                    image = cache.get(index);
+                }
+                if (image != null) {
+                    return CompletableFuture.completedFuture(image.clone());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (storage instanceof AsyncStorage && wal == null) {
+            return limit(() -> readDirect((AsyncStorage) storage, index, 0));
+        }
+        return limit(() -> onPool(() -> read(index)));
+    }
+
+    /**
+     * Writes a given byte array into the specified section without blocking
+     * the caller. The write runs as write does on the pool of the async
+     * operations, holding the locks of the sections it writes.
+     * 
+     * @param index section of file specified to write the array
+     * @param data  byte array of data to add
+     * @return future completing once the section is written.
+     */
+    public CompletableFuture<Void> writeAsync(int index, byte[] data) {
+        return limit(() -> onPool(() -> {
+            write(index, data);
+            return null;
+        }));
+    }
+
+    /**
+     * Swaps data between two indices i and j without blocking the caller.
+     * The swap runs as swap does on the pool of the async operations.
+     * 
+     * @param i indices one.
+     * @param j indices two.
+     * @return future completing once both sections are written.
+     */
+    public CompletableFuture<Void> swapAsync(int i, int j) {
+        return limit(() -> onPool(() -> {
+            swap(i, j);
+            return null;
+        }));
+    }
+
+    /**
+     * Searches for the first occurrence of the given byte array target
+     * without blocking the caller. Bytes that the Bloom filter or the
+     * fingerprint index rule out complete at once, with no I/O; the others
+     * are compared as indexOf does on the pool of the async operations.
+     * 
+     * @param target byte array to find in the file.
+     * @return future index, -1 if target is not found in the file.
+     */
+    public CompletableFuture<Integer> indexOfAsync(byte[] target) {
+        long fingerprint = Fingerprint.of(target);
+        if ((bloom != null && !bloom.mightContain(fingerprint))
+                || fingerprints.candidates(fingerprint).length == 0) {
+            return CompletableFuture.completedFuture(-1);
+        }
+        return limit(() -> onPool(() -> indexOf(target)));
+    }
+
+    /*
+     * Reads a fixed-size section with asynchronous I/O and no lock. The
+     * stripe must not be write-locked before the read, nor have been after
+     * it, or else a write may have overlapped the read and it is done again,
+     * in the end under the lock.
+     */
+    private CompletableFuture<byte[]> readDirect(AsyncStorage async,
+            int index, int attempt) {
+        int stripe = stripeOf(index);
+        long writes = stripeWrites.get(stripe);
+        if (attempt >= MAX_DIRECT_READS || stripes[stripe].isWriteLocked()) {
+            return onPool(() -> read(index));
+        }
+        long start = Metrics.READ.start();
+        byte[] data = new byte[secSize];
+        return async.readAsync((long) index * secSize, data, 0, secSize)
+                .thenCompose(n -> {
+                    if (stripeWrites.get(stripe) != writes
+                            || stripes[stripe].isWriteLocked()) {
+                        return readDirect(async, index, attempt + 1);
+                    }
+                    Metrics.READ.stop(start);
+                    cacheSection(index, data, n == secSize);
+                    // a write between the check and the caching may have
+                    // dropped the section already
+                    if (cache != null && stripeWrites.get(stripe) != writes) {
+                        cache.invalidate(index);
+                    }
+                    return CompletableFuture.completedFuture(n == secSize
+                            ? data : Arrays.copyOf(data, n));
+                });
+    }
+
+    /*
+     * Runs a task on the pool of the async operations.
+     */
+    private <T> CompletableFuture<T> onPool(Callable<T> task) {
+        CompletableFuture<T> done = new CompletableFuture<>();
+        asyncPool().execute(() -> {
+            try {
+                done.complete(task.call());
+            } catch (Exception e) {
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    private synchronized ExecutorService asyncPool() {
+        if (asyncPool == null) {
+            asyncPool = Executors.newFixedThreadPool(asyncThreads, r -> {
+                Thread thread = new Thread(r, "file-async");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return asyncPool;
+    }
+
+    /*
+     * Starts an async operation once fewer than maxInFlight are running,
+     * queueing it until then without blocking the caller.
+     */
+    private <T> CompletableFuture<T> limit(
+            Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> done = new CompletableFuture<>();
+        asyncPending.incrementAndGet();
+        asyncWaiting.add(() -> {
+            CompletableFuture<T> running;
+            try {
+                running = operation.get();
+            } catch (RuntimeException e) {
+                running = CompletableFuture.failedFuture(e);
+            }
+            running.whenComplete((value, error) -> {
+                asyncPermits.release();
+                if (error != null) {
+                    done.completeExceptionally(
+                            error instanceof CompletionException
+                                    && error.getCause() != null
+                                            ? error.getCause() : error);
+                } else {
+                    done.complete(value);
+                }
+                if (asyncPending.decrementAndGet() == 0) {
+                    synchronized (asyncPending) {
+                        asyncPending.notifyAll();
+                    }
+                }
+                startWaiting();
+            });
+        });
+        startWaiting();
+        return done;
+    }
+
+    /*
+     * Starts waiting operations while there are permits. Both adding an
+     * operation and finishing one call this, so none is left waiting.
+     */
+    private void startWaiting() {
+        while (!asyncWaiting.isEmpty() && asyncPermits.tryAcquire()) {
+            Runnable next = asyncWaiting.poll();
+            if (next == null) {
+                asyncPermits.release();
+                return;
+            }
+            next.run();
+        }
+    }
+
+    /*
+     * Writes sections without locking them. With a write-ahead log the whole
+     * new content of every section touched is logged as one transaction and
+     * kept in memory until it is committed. Returns true if a commit is due.
+     */
+    private boolean writeSections(int[] indices, byte[][] data)
+            throws Exception {
+        if (wal == null) {
+            if (heap != null) {
+                heap.writeBatch(indices, data);
+            } else {
+                writeRuns(indices, data);
+            }
+            invalidate(indices, data);
+            return false;
+        }
+        List<Integer> sections = new ArrayList<>();
+        List<byte[]> images = new ArrayList<>();
+        for (int k = 0; k < indices.length; k++) {
+            if (heap != null) {
+                sections.add(indices[k]);
+                images.add(data[k].clone());
+                logSection(indices[k], images.get(images.size() - 1));
+                continue;
+            }
+            for (int from = 0; from < Math.max(1, data[k].length);
+                    from += secSize) {
+                int section = indices[k] + from / secSize;
+                byte[] image = Arrays.copyOf(readSection(section), secSize);
+                System.arraycopy(data[k], from, image, 0,
+                        Math.min(secSize, data[k].length - from));
+                sections.add(section);
+                images.add(image);
+                logSection(section, image);
+            }
+        }
+        int[] logIndices = new int[sections.size()];
+        for (int k = 0; k < logIndices.length; k++) {
+            logIndices[k] = sections.get(k);
+        }
+        // the images were built from reads that may have cached the old data
+        invalidate(indices, data);
+        return wal.append(logIndices, images.toArray(new byte[0][]));
+    }
+
+    /*
+     * Drops the sections touched by a write from the cache.
+     */
+    private void invalidate(int[] indices, byte[][] data) {
+        if (cache == null) {
+            return;
+        }
+        for (int k = 0; k < indices.length; k++) {
+            for (int i = 0; i < sectionsTouched(data[k]); i++) {
+                cache.invalidate(indices[k] + i);
+            }
+        }
+    }
+
+    /*
+     * Writes sections of a fixed-size file in ascending order, joining each
+     * run of adjacent whole sections into one gathering write. Batches whose
+     * writes overlap are written one by one, in the given order.
+     */
+    private void writeRuns(int[] indices, byte[][] data) throws IOException {
+        Integer[] order = new Integer[indices.length];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(indices[a], indices[b]));
+        for (int k = 1; k < order.length; k++) {
+            int prev = order[k - 1];
+            int prevEnd = indices[prev] + sectionsTouched(data[prev]);
+            if (indices[order[k]] < prevEnd) {
+                for (int i = 0; i < indices.length; i++) {
+                    applySection(indices[i], data[i]);
+                }
+                return;
+            }
+        }
+
+        int start = 0;
+        while (start < order.length) {
+            int end = start + 1;
+            while (end < order.length && adjacent(indices, data,
+                    order[end - 1], order[end])) {
+                end++;
+            }
+            ByteBuffer[] run = new ByteBuffer[end - start];
+            for (int k = start; k < end; k++) {
+                run[k - start] = ByteBuffer.wrap(data[order[k]]);
+            }
+            storage.write((long) indices[order[start]] * secSize, run);
+            start = end;
+        }
+    }
+
+    /*
+     * Checks that write b starts right where write a, which covers whole
+     * sections, ends.
+     */
+    private boolean adjacent(int[] indices, byte[][] data, int a, int b) {
+        return data[a].length % secSize == 0
+                && indices[b] == indices[a] + data[a].length / secSize;
+    }
+
+    private void logSection(int index, byte[] image) {
+        logged.put(index, image);
+        if (index >= loggedSize) {
+            loggedSize = index + 1;
+        }
+    }
+
+    /*
+     * Writes a section straight to the file without locking it.
+     */
+    private void applySection(int index, byte[] data) throws IOException {
+        if (heap != null) {
+            heap.write(index, data);
+        } else {
+            storage.write((long) index * secSize, data, 0, data.length);
+        }
+    }
+
+    /*
+     * Reads a section holding its read lock.
+     */
+    private byte[] readLocked(int index) throws Exception {
+        Lock lock = stripe(index).readLock();
+        lock.lock();
+        try {
+            return readSection(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Reads a section without locking it.
+     */
+    private byte[] readSection(int index) throws Exception {
+        byte[] image = logged.get(index);
+        if (image != null) {
+            return image.clone();
+        }
+        byte[] cached = cache != null ? cache.get(index) : null;
+        if (cached != null) {
+            return cached.clone();
+        }
+        return readFromFile(index);
+    }
+
+    /*
+     * Reads a section from the file, past the log and the cache, and caches
+     * it.
+     */
+    private byte[] readFromFile(int index) throws Exception {
+        if (heap != null) {
+            byte[] data = heap.read(index);
+            cacheSection(index, data, data.length > 0);
+            return data;
+        }
+        byte[] data = new byte[secSize];
+        int bytesRead = storage.read((long) index * secSize, data, 0,
+                secSize);
+        cacheSection(index, data, bytesRead == secSize);
+
+        // sections below a logged one are zeros until the log is applied
+        if (bytesRead < secSize && index >= loggedSize) {
+            data = Arrays.copyOf(data, bytesRead);
+        }
+
+        return data;
+    }
+
+    /*
+     * Caches a copy of the bytes of a section just read from the file. Only
+     * whole sections are cached, since a partial one grows when the file
+     * does, without being written.
+     */
+    private void cacheSection(int index, byte[] data, boolean whole) {
+        if (cache != null && whole) {
+            cache.put(index, data.clone());
+        }
+    }
+
+    /*
+     * Returns a view of a section without locking it.
+     */
+    private ByteBuffer sliceSection(int index) throws Exception {
+        byte[] image = logged.get(index);
+        if (image != null) {
+            return ByteBuffer.wrap(image).asReadOnlyBuffer();
+        }
+        if (index < loggedSize && heap == null) {
+            return ByteBuffer.wrap(readSection(index)).asReadOnlyBuffer();
+        }
+        if (cache != null) {
+            byte[] cached = cache.get(index);
+            return ByteBuffer.wrap(cached != null ? cached
+                    : readFromFile(index)).asReadOnlyBuffer();
+        }
+        if (heap != null) {
+            return heap.slice(index);
+        }
+        return storage.slice((long) index * secSize, secSize);
+    }
+
+    /*
+     * Number of sections a write of the data covers.
+     */
+    private int sectionsTouched(byte[] data) {
+        if (heap != null) {
+            return 1;
+        }
+        return Math.max(1, (data.length + secSize - 1) / secSize);
+    }
+
+    /*
+     * Tells the attached indexes about every section changed by a write of
+     * data at the given index. Sections between the old end of the file and
+     * the write are reported too, since the write filled them with zeros, or
+     * left them empty in a packed file. The indexes are told holding the
+     * monitor of the fingerprint index, so indexOf never sees them half
+     * told, and every caller takes that monitor before any other index's.
+     */
+    private void updateIndexes(int index, byte[] data, int before)
+            throws Exception {
+        int after = size();
+        int first = Math.min(index, before);
+        int last = Math.min(after, index + sectionsTouched(data));
+
+        synchronized (fingerprints) {
+            for (int i = first; i < last; i++) {
+                boolean whole = heap != null || data.length == secSize;
+                byte[] current = (i == index && whole) ? data
+                        : readSection(i);
+                for (SectionIndex sectionIndex : indexes) {
+                    sectionIndex.sectionWritten(i, current);
+                }
+            }
+        }
+    }
+
+    private int stripeOf(int index) {
+        return Math.floorMod(index, STRIPES);
+    }
+
+    private ReentrantReadWriteLock stripe(int index) {
+        return stripes[stripeOf(index)];
+    }
+
+    /*
+     * Write-locks the stripes of the sections first to last - 1.
+     */
+    private List<Lock> lockRange(int first, int last) {
+        boolean[] needed = new boolean[STRIPES];
+        if (last - first >= STRIPES) {
+            Arrays.fill(needed, true);
+        }
+        for (int i = first; i < last && i - first < STRIPES; i++) {
+            needed[stripeOf(i)] = true;
+        }
+        return lockStripes(needed);
+    }
+
+    /*
+     * Takes the grow lock and write-locks every stripe.
+     */
+    private List<Lock> lockAll() {
+        growLock.lock();
+        boolean[] needed = new boolean[STRIPES];
+        Arrays.fill(needed, true);
+        List<Lock> locks = lockStripes(needed);
+        locks.add(0, growLock);
+        return locks;
+    }
+
+    /*
+     * Write-locks the needed stripes in ascending order, the one order every
+     * caller uses, so that threads locking several stripes cannot deadlock.
+     */
+    private List<Lock> lockStripes(boolean[] needed) {
+        List<Lock> locks = new ArrayList<>();
+        for (int i = 0; i < STRIPES; i++) {
+            if (needed[i]) {
+                Lock lock = stripes[i].writeLock();
+                lock.lock();
+                stripeWrites.incrementAndGet(i);
+                locks.add(lock);
+            }
+        }
+        return locks;
+    }
+
+    /*
+     * Read-locks the needed stripes, in the same ascending order.
+     */
+    private List<Lock> readLockStripes(boolean[] needed) {
+        List<Lock> locks = new ArrayList<>();
+        for (int i = 0; i < STRIPES; i++) {
+            if (needed[i]) {
+                Lock lock = stripes[i].readLock();
+                lock.lock();
+                locks.add(lock);
+            }
+        }
+        return locks;
+    }
+
+    /*
+     * Checks if the stripe of every given section is among the needed ones.
+     */
+    private boolean locked(int[] sections, boolean[] needed) {
+        for (int i : sections) {
+            if (!needed[stripeOf(i)]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void unlock(List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    /*
+     * Applies committed sections of the write-ahead log to the file.
+     */
+    private class LogSink implements WriteAheadLog.Sink {
+
+        @Override
+        public void apply(int index, byte[] data) throws Exception {
+            Lock lock = stripe(index).writeLock();
+            lock.lock();
+            stripeWrites.incrementAndGet(stripeOf(index));
+            try {
+                applySection(index, data);
+                logged.remove(index, data);
+                if (cache != null) {
+                    cache.invalidate(index);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void force() throws Exception {
+            if (heap != null) {
+                heap.force();
+            } else {
+                storage.force();
+            }
+        }
+    }
+
 }
@@ -0,0 +1,683 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileManagerTester {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jokes", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        new File(file.getPath() + ".fp").delete();
+        new File(file.getPath() + ".dir").delete();
+        new File(file.getPath() + ".wal").delete();
+        new File(file.getPath() + ".bf").delete();
+        file.delete();
+    }
+
+    private static byte[] section(String text, int size) {
+        byte[] data = new byte[size];
+        byte[] bytes = text.getBytes();
+        System.arraycopy(bytes, 0, data, 0, bytes.length);
+        return data;
+    }
+
+    private FileManager packed() throws Exception {
+        file.delete();
+        return new FileManager(file.getPath(),
+                new StoreConfig().setPacked(true));
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 20);
+        fm.write(0, section("first", 20));
+        fm.write(1, section("second", 20));
+
+        assertEquals(2, fm.size());
+        assertArrayEquals(section("second", 20), fm.read(1));
+        fm.close();
+    }
+
+    @Test
+    public void testIndexOf() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 20);
+        fm.write(0, section("first", 20));
+        fm.write(1, section("second", 20));
+        fm.write(2, section("first", 20));
+
+        assertEquals(0, fm.indexOf(section("first", 20)));
+        assertEquals(1, fm.indexOf(section("second", 20)));
+        assertEquals(-1, fm.indexOf(section("third", 20)));
+
+        fm.write(0, section("third", 20));
+        assertEquals(0, fm.indexOf(section("third", 20)));
+        assertEquals(2, fm.indexOf(section("first", 20)));
+        fm.close();
+    }
+
+    @Test
+    public void testSwap() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 20);
+        fm.write(0, section("first", 20));
+        fm.write(1, section("second", 20));
+        fm.swap(0, 1);
+
+        assertEquals(1, fm.indexOf(section("first", 20)));
+        assertEquals(0, fm.indexOf(section("second", 20)));
+        fm.close();
+    }
+
+    @Test
+    public void testWriteAfterEnd() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 20);
+        fm.write(2, section("third", 20));
+
+        assertEquals(3, fm.size());
+        assertEquals(0, fm.indexOf(new byte[20]));
+        assertEquals(2, fm.indexOf(section("third", 20)));
+        fm.close();
+    }
+
+    @Test
+    public void testIndexPersistence() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 20);
+        fm.write(0, section("first", 20));
+        fm.write(1, section("second", 20));
+        fm.close();
+        assertTrue(new File(file.getPath() + ".fp").isFile());
+
+        fm = new FileManager(file.getPath(), 20);
+        assertFalse(new File(file.getPath() + ".fp").isFile());
+        assertEquals(1, fm.indexOf(section("second", 20)));
+        assertTrue(fm.contains(section("first", 20)));
+        fm.close();
+    }
+
+    @Test
+    public void testIndexRebuild() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 20);
+        fm.write(0, section("first", 20));
+        fm.write(1, section("second", 20));
+        fm.close();
+        new File(file.getPath() + ".fp").delete();
+
+        fm = new FileManager(file.getPath(), 20);
+        assertEquals(1, fm.indexOf(section("second", 20)));
+        fm.close();
+    }
+
+    @Test
+    public void testMappedWriteAndRead() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 20,
+                FileManager.Mode.MAPPED);
+        fm.write(0, section("first", 20));
+        fm.write(1, section("second", 20));
+
+        assertEquals(2, fm.size());
+        assertArrayEquals(section("second", 20), fm.read(1));
+        assertEquals(ByteBuffer.wrap(section("first", 20)), fm.readBuffer(0));
+        assertEquals(1, fm.indexOf(section("second", 20)));
+        fm.close();
+
+        assertEquals(40, file.length());
+        fm = new FileManager(file.getPath(), 20);
+        assertArrayEquals(section("first", 20), fm.read(0));
+        fm.close();
+    }
+
+    @Test
+    public void testMappedGrowth() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 600,
+                FileManager.Mode.MAPPED);
+        for (int i = 0; i < 5000; i++) {
+            fm.write(i, section("joke " + i, 600));
+        }
+
+        assertEquals(5000, fm.size());
+        assertEquals(4321, fm.indexOf(section("joke 4321", 600)));
+        fm.close();
+        assertEquals(5000 * 600, file.length());
+    }
+
+    @Test
+    public void testMappedRecoversLength() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 20,
+                FileManager.Mode.MAPPED);
+        for (int i = 0; i < 3; i++) {
+            fm.write(i, section("joke " + i, 20));
+        }
+        // left open, as after the program is killed
+        assertTrue(file.length() >= 1 << 20);
+
+        fm = new FileManager(file.getPath(), 20, FileManager.Mode.MAPPED);
+        assertEquals(3, fm.size());
+        assertEquals(60, file.length());
+        assertEquals(-1, fm.indexOf(new byte[20]));
+        fm.write(3, section("joke 3", 20));
+        assertArrayEquals(section("joke 2", 20), fm.read(2));
+        fm.close();
+
+        assertEquals(80, file.length());
+        assertFalse(new File(file.getPath() + ".len").exists());
+    }
+
+    @Test
+    public void testPackedWriteAndRead() throws Exception {
+        FileManager fm = packed();
+        fm.write(0, "first".getBytes());
+        fm.write(2, "third".getBytes());
+
+        assertEquals(3, fm.size());
+        assertArrayEquals("first".getBytes(), fm.read(0));
+        assertArrayEquals(new byte[0], fm.read(1));
+        assertEquals(ByteBuffer.wrap("third".getBytes()), fm.readBuffer(2));
+        assertEquals(2, fm.indexOf("third".getBytes()));
+
+        fm.write(0, "1st".getBytes());
+        assertArrayEquals("1st".getBytes(), fm.read(0));
+        fm.write(0, "the first one".getBytes());
+        assertArrayEquals("the first one".getBytes(), fm.read(0));
+        assertEquals(-1, fm.indexOf("first".getBytes()));
+        fm.close();
+    }
+
+    @Test
+    public void testPackedReopen() throws Exception {
+        FileManager fm = packed();
+        fm.write(0, "first".getBytes());
+        fm.write(1, "second".getBytes());
+        fm.write(0, "first, but longer".getBytes());
+        fm.close();
+
+        fm = new FileManager(file.getPath(),
+                new StoreConfig().setPacked(true));
+        assertArrayEquals("first, but longer".getBytes(), fm.read(0));
+        assertArrayEquals("second".getBytes(), fm.read(1));
+        fm.write(2, "third".getBytes());
+        fm.close();
+
+        // without the slot directory the frames are scanned
+        new File(file.getPath() + ".dir").delete();
+        fm = new FileManager(file.getPath(),
+                new StoreConfig().setPacked(true));
+        assertEquals(3, fm.size());
+        assertArrayEquals("first, but longer".getBytes(), fm.read(0));
+        assertArrayEquals("third".getBytes(), fm.read(2));
+        fm.close();
+    }
+
+    @Test
+    public void testPackedCompact() throws Exception {
+        FileManager fm = packed();
+        for (int i = 0; i < 10; i++) {
+            fm.write(0, ("joke number " + i).repeat(i + 1).getBytes());
+        }
+        fm.write(1, "second".getBytes());
+        long before = fm.length();
+        fm.compact();
+
+        assertTrue(fm.length() < before);
+        assertArrayEquals(("joke number 9").repeat(10).getBytes(), fm.read(0));
+        assertArrayEquals("second".getBytes(), fm.read(1));
+        fm.write(1, "2nd".getBytes());
+        fm.close();
+
+        fm = new FileManager(file.getPath(),
+                new StoreConfig().setPacked(true));
+        assertArrayEquals("2nd".getBytes(), fm.read(1));
+        fm.close();
+    }
+
+    @Test
+    public void testPackedCompress() throws Exception {
+        String[] setups = { "Why do programmers prefer dark mode? ",
+                "How many programmers does it take to change a light bulb? ",
+                "I told my computer I needed a break, ",
+                "Why did the developer go broke? " };
+        String[] punchlines = { "Because light attracts bugs.",
+                "None, that is a hardware problem.",
+                "and now it will not stop sending me vacation ads.",
+                "Because he used up all his cache." };
+        FileManager fm = packed();
+        for (int i = 0; i < 400; i++) {
+            fm.write(i, new Joke("Programming", setups[i % 4]
+                    + punchlines[(i / 4) % 4] + " #" + i).toRecord());
+        }
+        long before = fm.length();
+        fm.compress(4096);
+
+        assertTrue(fm.isCompressed());
+        assertTrue(fm.length() * 2 < before);
+        Joke joke = new Joke("Programming", setups[1] + punchlines[2]
+                + " #" + 9);
+        assertArrayEquals(joke.toRecord(), fm.read(9));
+        assertEquals(ByteBuffer.wrap(joke.toRecord()), fm.readBuffer(9));
+        assertEquals(9, fm.indexOf(joke.toRecord()));
+
+        fm.write(9, "short".getBytes());
+        fm.write(400, new Joke("Misc", punchlines[0]).toRecord());
+        fm.close();
+
+        new File(file.getPath() + ".dir").delete();
+        fm = new FileManager(file.getPath(),
+                new StoreConfig().setPacked(true));
+        assertTrue(fm.isCompressed());
+        assertEquals(401, fm.size());
+        assertArrayEquals("short".getBytes(), fm.read(9));
+        assertArrayEquals(new Joke("Misc", punchlines[0]).toRecord(),
+                fm.read(400));
+        fm.close();
+    }
+
+    @Test
+    public void testCompressedTrainsOnClose() throws Exception {
+        StoreConfig config = new StoreConfig().setPacked(true)
+                .setCompressed(true);
+        FileManager fm = new FileManager(file.getPath(), config);
+        for (int i = 0; i < 99; i++) {
+            fm.write(i, new Joke("Programming", "Why do programmers prefer"
+                    + " dark mode? Because light attracts bugs. #" + i)
+                    .toRecord());
+        }
+        fm.close();
+
+        // too few records to learn from yet
+        fm = new FileManager(file.getPath(), config);
+        assertEquals(0, fm.getCodec().getDictionary().length);
+        fm.write(99, new Joke("Programming", "Why do programmers prefer"
+                + " dark mode? Because light attracts bugs. #99").toRecord());
+        long before = fm.length();
+        fm.close();
+
+        fm = new FileManager(file.getPath(), config);
+        assertTrue(fm.getCodec().getDictionary().length > 0);
+        assertTrue(fm.length() * 2 < before);
+        assertEquals(100, fm.size());
+        Joke joke = new Joke("Programming", "Why do programmers prefer"
+                + " dark mode? Because light attracts bugs. #42");
+        assertArrayEquals(joke.toRecord(), fm.read(42));
+        assertEquals(42, fm.indexOf(joke.toRecord()));
+        fm.close();
+    }
+
+    @Test
+    public void testPackedMappedRecovery() throws Exception {
+        file.delete();
+        StoreConfig config = new StoreConfig()
+                .setMode(FileManager.Mode.MAPPED).setPacked(true)
+                .setCompressed(true);
+        FileManager fm = new FileManager(file.getPath(), config);
+        for (int i = 0; i < 3; i++) {
+            fm.write(i, new Joke("Misc", "joke " + i).toRecord());
+        }
+        fm.write(3, new byte[0]);
+        // left open, as after the program is killed
+
+        fm = new FileManager(file.getPath(), config);
+        assertEquals(4, fm.size());
+        assertTrue(fm.length() < 1 << 20);
+        assertArrayEquals(new Joke("Misc", "joke 0").toRecord(), fm.read(0));
+        assertEquals(0, fm.read(3).length);
+        fm.write(4, new Joke("Misc", "joke 4").toRecord());
+        fm.close();
+
+        // zeros past the last frame, with the directory lost
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[4096]);
+        }
+        new File(file.getPath() + ".dir").delete();
+        fm = new FileManager(file.getPath(),
+                new StoreConfig().setPacked(true));
+        assertEquals(5, fm.size());
+        assertArrayEquals(new Joke("Misc", "joke 0").toRecord(), fm.read(0));
+        assertArrayEquals(new Joke("Misc", "joke 4").toRecord(), fm.read(4));
+        fm.close();
+    }
+
+    @Test
+    public void testBloomFilter() throws Exception {
+        FileManager fm = new FileManager(file.getPath(),
+                new StoreConfig().setBloomFilter(0.01));
+        // more sections than the filter starts sized for, so it grows
+        for (int i = 0; i < 3000; i++) {
+            fm.write(i, section("joke " + i, 600));
+        }
+        fm.write(5, section("rewritten", 600));
+
+        assertEquals(2999, fm.indexOf(section("joke 2999", 600)));
+        assertEquals(5, fm.indexOf(section("rewritten", 600)));
+        assertEquals(-1, fm.indexOf(section("joke 5", 600)));
+        assertFalse(fm.contains(section("joke 3000", 600)));
+        fm.close();
+        assertTrue(new File(file.getPath() + ".bf").isFile());
+
+        fm = new FileManager(file.getPath(),
+                new StoreConfig().setBloomFilter(0.01));
+        assertTrue(fm.contains(section("joke 1234", 600)));
+        assertFalse(fm.contains(section("joke 3001", 600)));
+        fm.close();
+    }
+
+    @Test
+    public void testPackedSize() throws Exception {
+        FileManager fixed = new FileManager(file.getPath(), 600);
+        File packedFile = File.createTempFile("jokes", ".dat");
+        packedFile.delete();
+        FileManager packedStore = new FileManager(packedFile.getPath(),
+                new StoreConfig().setPacked(true));
+        for (int i = 0; i < 100; i++) {
+            Joke joke = new Joke("Misc", "A fairly typical joke, number " + i
+                    + ", that is about this long.");
+            fixed.write(i, joke.getBytes(600));
+            packedStore.write(i, joke.toRecord());
+        }
+
+        assertTrue(packedStore.length() * 5 < fixed.length());
+        fixed.close();
+        packedStore.close();
+        for (String suffix : new String[] { "", ".fp", ".dir" }) {
+            new File(packedFile.getPath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 64,
+                FileManager.Mode.CONCURRENT);
+        writeConcurrently(fm, 8, 50);
+        for (int i = 0; i < 8 * 50; i++) {
+            assertArrayEquals(section("joke " + i, 64), fm.read(i));
+            assertEquals(i, fm.indexOf(section("joke " + i, 64)));
+        }
+        fm.close();
+    }
+
+    @Test
+    public void testConcurrentPackedWriters() throws Exception {
+        FileManager fm = packed();
+        writeConcurrently(fm, 8, 50);
+        for (int i = 0; i < 8 * 50; i++) {
+            assertArrayEquals(section("joke " + i, 64), fm.read(i));
+        }
+        fm.close();
+    }
+
+    @Test
+    public void testSwapIsAtomicForReaders() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 64,
+                FileManager.Mode.CONCURRENT);
+        byte[] a = section("a", 64);
+        byte[] b = section("b", 64);
+        fm.write(0, a);
+        fm.write(1, b);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<?> swapper = pool.submit(() -> {
+            for (int i = 0; i < 500; i++) {
+                fm.swap(0, 1);
+            }
+            return null;
+        });
+        Future<?> reader = pool.submit(() -> {
+            for (int i = 0; i < 500; i++) {
+                assertFalse(fm.contains(new byte[64]));
+                assertTrue(fm.contains(a) && fm.contains(b));
+                byte[] first = fm.read(0);
+                assertTrue(Arrays.equals(first, a) || Arrays.equals(first, b));
+            }
+            return null;
+        });
+        swapper.get();
+        reader.get();
+        pool.shutdown();
+        assertTrue(fm.contains(a) && fm.contains(b));
+        fm.close();
+    }
+
+    /*
+     * Has each thread write its own run of sections, interleaved with the
+     * other threads, reading every section back right after writing it.
+     */
+    private static void writeConcurrently(FileManager fm, int threads,
+            int perThread) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * perThread;
+            results.add(pool.submit(() -> {
+                for (int i = first; i < first + perThread; i++) {
+                    byte[] data = section("joke " + i, 64);
+                    fm.write(i, data);
+                    assertArrayEquals(data, fm.read(i));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testWalSwapAndBatch() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), new StoreConfig()
+                .setSecSize(16).setWal(true).setGroupCommit(1000, 60000));
+        fm.write(0, section("zero", 16));
+        fm.writeBatch(new int[] { 1, 2 }, new byte[][] { section("one", 16),
+                section("two", 16) });
+        fm.swap(0, 2);
+        fm.write(4, "four".getBytes());
+
+        assertEquals(5, fm.size());
+        assertArrayEquals(section("two", 16), fm.read(0));
+        assertArrayEquals(new byte[16], fm.read(3));
+        assertEquals(2, fm.indexOf(section("zero", 16)));
+        assertEquals(0, file.length());
+
+        fm.sync();
+        assertEquals(5 * 16, file.length());
+        assertArrayEquals(section("four", 16), fm.read(4));
+        fm.close();
+        assertFalse(new File(file.getPath() + ".wal").exists());
+
+        fm = new FileManager(file.getPath(), 16);
+        assertArrayEquals(section("two", 16), fm.read(0));
+        assertArrayEquals(section("one", 16), fm.read(1));
+        assertArrayEquals(section("zero", 16), fm.read(2));
+        fm.close();
+    }
+
+    @Test
+    public void testSectionCache() throws Exception {
+        // room for three sections of 16 bytes with their overhead
+        FileManager fm = new FileManager(file.getPath(), new StoreConfig()
+                .setSecSize(16).setCache(240));
+        SectionCache cache = fm.getCache();
+        for (int i = 0; i < 5; i++) {
+            fm.write(i, section("joke " + i, 16));
+        }
+        cache.resetStats();
+
+        byte[] first = fm.read(0);
+        first[0] = 'X';
+        assertArrayEquals(section("joke 0", 16), fm.read(0));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        fm.read(1);
+        fm.read(2);
+        fm.read(3);
+        assertEquals(3, cache.getSections());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.getBytes() <= cache.getBudget());
+
+        fm.write(2, section("new 2", 16));
+        fm.swap(1, 3);
+        assertArrayEquals(section("new 2", 16), fm.read(2));
+        assertArrayEquals(section("joke 3", 16), fm.read(1));
+        assertEquals(section("joke 1", 16)[5],
+                fm.readBuffer(3).get(5));
+        fm.close();
+    }
+
+    @Test
+    public void testSectionCacheWithWal() throws Exception {
+        file.delete();
+        StoreConfig config = new StoreConfig().setPacked(true)
+                .setCompressed(true).setWal(true).setGroupCommit(1000, 60000)
+                .setCache(1 << 16);
+        FileManager fm = new FileManager(file.getPath(), config);
+        fm.write(0, "first".getBytes());
+        fm.sync();
+        assertArrayEquals("first".getBytes(), fm.read(0));
+        fm.write(0, "changed".getBytes());
+        assertArrayEquals("changed".getBytes(), fm.read(0));
+        fm.sync();
+        assertArrayEquals("changed".getBytes(), fm.read(0));
+        assertEquals(1, fm.indexOf("changed".getBytes()) + 1);
+        fm.close();
+    }
+
+    @Test
+    public void testAsyncMode() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), new StoreConfig()
+                .setSecSize(16).setMode(FileManager.Mode.ASYNC)
+                .setAsync(2, 3));
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            writes.add(fm.writeAsync(i, section("joke " + i, 16)));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]))
+                .join();
+        assertEquals(100, fm.size());
+
+        List<CompletableFuture<byte[]>> reads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            reads.add(fm.readAsync(i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(section("joke " + i, 16), reads.get(i).join());
+        }
+
+        fm.swapAsync(0, 99).join();
+        assertArrayEquals(section("joke 0", 16), fm.readAsync(99).join());
+        assertEquals(0, (int) fm.indexOfAsync(section("joke 99", 16))
+                .join());
+        assertEquals(-1, (int) fm.indexOfAsync(section("joke 100", 16))
+                .join());
+        fm.writeAsync(200, section("last", 16));
+        fm.close();
+
+        fm = new FileManager(file.getPath(), 16);
+        assertArrayEquals(section("last", 16), fm.read(200));
+        fm.close();
+    }
+
+    @Test
+    public void testAsyncWithWalAndCache() throws Exception {
+        file.delete();
+        FileManager fm = new FileManager(file.getPath(), new StoreConfig()
+                .setPacked(true).setWal(true).setGroupCommit(1000, 60000)
+                .setCache(1 << 16).setAsync(1, 1));
+        fm.write(0, "logged".getBytes());
+        assertArrayEquals("logged".getBytes(), fm.readAsync(0).join());
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 1; i < 20; i++) {
+            writes.add(fm.writeAsync(i, ("joke " + i).getBytes()));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]))
+                .join();
+        fm.sync();
+        assertArrayEquals("joke 7".getBytes(), fm.readAsync(7).join());
+        assertArrayEquals("joke 7".getBytes(), fm.readAsync(7).join());
+        assertEquals(7, (int) fm.indexOfAsync("joke 7".getBytes()).join());
+        fm.close();
+    }
+
+    @Test
+    public void testWalPacked() throws Exception {
+        file.delete();
+        StoreConfig config = new StoreConfig().setPacked(true).setWal(true)
+                .setGroupCommit(2, 60000);
+        FileManager fm = new FileManager(file.getPath(), config);
+        fm.write(0, "first".getBytes());
+        fm.write(1, "second".getBytes());
+        fm.swap(0, 1);
+        fm.close();
+
+        fm = new FileManager(file.getPath(), config);
+        assertArrayEquals("second".getBytes(), fm.read(0));
+        assertArrayEquals("first".getBytes(), fm.read(1));
+        fm.close();
+    }
+
+    @Test
+    public void testWriteBatch() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 8);
+        fm.writeBatch(new int[] { 3, 0, 1, 5 }, new byte[][] {
+                section("d", 8), section("a", 8), "b".getBytes(),
+                section("f", 8) });
+        assertEquals(6, fm.size());
+        assertArrayEquals(section("a", 8), fm.read(0));
+        assertArrayEquals(section("b", 8), fm.read(1));
+        assertArrayEquals(new byte[8], fm.read(2));
+        assertArrayEquals(section("d", 8), fm.read(3));
+        assertEquals(5, fm.indexOf(section("f", 8)));
+
+        // overlapping writes keep their order
+        fm.writeBatch(new int[] { 2, 2 }, new byte[][] { section("x", 16),
+                section("y", 8) });
+        assertArrayEquals(section("y", 8), fm.read(2));
+        assertArrayEquals(new byte[8], fm.read(3));
+        fm.close();
+    }
+
+    @Test
+    public void testPackedWriteBatch() throws Exception {
+        FileManager fm = packed();
+        fm.write(0, "a fairly long first record".getBytes());
+        fm.writeBatch(new int[] { 0, 2, 1, 2 }, new byte[][] {
+                "short".getBytes(), "x".getBytes(), "second".getBytes(),
+                "a longer third record".getBytes() });
+
+        assertArrayEquals("short".getBytes(), fm.read(0));
+        assertArrayEquals("second".getBytes(), fm.read(1));
+        assertArrayEquals("a longer third record".getBytes(), fm.read(2));
+        assertEquals(2, fm.indexOf("a longer third record".getBytes()));
+        fm.close();
+
+        fm = new FileManager(file.getPath(),
+                new StoreConfig().setPacked(true));
+        assertArrayEquals("a longer third record".getBytes(), fm.read(2));
+        fm.close();
+        new File(file.getPath() + ".dir").delete();
+        fm = new FileManager(file.getPath(),
+                new StoreConfig().setPacked(true));
+        assertArrayEquals("short".getBytes(), fm.read(0));
+        assertArrayEquals("a longer third record".getBytes(), fm.read(2));
+        fm.close();
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Utility class that computes 64-bit content fingerprints used by the store
+ * indexes to find sections without comparing them byte by byte.
+ *
+ * @author rachelcurci
+ */
+public final class Fingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Fingerprint() {
+    }
+
+    /**
+     * Computes the fingerprint of the whole byte array.
+     *
+     * @param data bytes to fingerprint.
+     * @return 64-bit fingerprint of the data.
+     */
+    public static long of(byte[] data) {
+        return of(data, 0, data.length);
+    }
+
+    /**
+     * Computes the fingerprint of a range of a byte array. The result is an
+     * FNV-1a hash followed by a final avalanche step so that the low bits are
+     * usable for bucketing.
+     *
+     * @param data   bytes to fingerprint.
+     * @param offset first byte of the range.
+     * @param length number of bytes in the range.
+     * @return 64-bit fingerprint of the range.
+     */
+    public static long of(byte[] data, int offset, int length) {
+        long h = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= (data[i] & 0xff);
+            h *= FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    /*
+     * Final avalanche step (MurmurHash3 fmix64).
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index from the 64-bit fingerprint of a section's bytes to the sections that
+ * hold those bytes. It lets FileManager answer indexOf and contains with a
+ * hash lookup and a single verifying read instead of a scan of the file.
+ *
+ * @author rachelcurci
+ */
+public class FingerprintIndex extends SectionIndex {
+
+    private static final int MAGIC = 0x4a4b4650; // "JKFP"
+    private static final int[] NONE = new int[0];
+
+    private long[] hashes = new long[16];
+    private int sections;
+    private final Map<Long, int[]> bySection = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param sidecarPath path of the sidecar file.
+     */
+    public FingerprintIndex(String sidecarPath) {
+        super(sidecarPath);
+    }
+
+    /**
+     * Returns the sections whose fingerprint equals the given one, in
+     * ascending order. Different contents can share a fingerprint, so callers
+     * have to verify the candidates.
+     *
+     * @param fingerprint fingerprint to look up.
+     * @return candidate sections, empty if there are none.
+     */
+    public synchronized int[] candidates(long fingerprint) {
+        int[] found = bySection.get(fingerprint);
+        return found == null ? NONE : found;
+    }
+
+    /*
+     * Fingerprints of every section, in section order.
+     */
+    synchronized long[] fingerprints() {
+        return Arrays.copyOf(hashes, sections);
+    }
+
+    @Override
+    protected int magic() {
+        return MAGIC;
+    }
+
+    @Override
+    protected synchronized void clear() {
+        sections = 0;
+        bySection.clear();
+    }
+
+    @Override
+    protected synchronized void sectionWritten(int index, byte[] data) {
+        long hash = Fingerprint.of(data);
+        if (index < sections) {
+            if (hashes[index] == hash) {
+                return;
+            }
+            unlink(hashes[index], index);
+        } else {
+            // FileManager reports new sections in order, so the section
+            // written here is always the one right after the last.
+            ensureCapacity(index + 1);
+            sections = index + 1;
+        }
+        hashes[index] = hash;
+        link(hash, index);
+    }
+
+    @Override
+    protected void writeTo(DataOutputStream out) throws IOException {
+        for (int i = 0; i < sections; i++) {
+            out.writeLong(hashes[i]);
+        }
+    }
+
+    @Override
+    protected void readFrom(DataInputStream in, int count) throws IOException {
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            hashes[i] = in.readLong();
+            link(hashes[i], i);
+        }
+        sections = count;
+    }
+
+    /*
+     * Adds a section to the sorted candidate list of a fingerprint.
+     */
+    private void link(long hash, int index) {
+        int[] list = bySection.get(hash);
+        if (list == null) {
+            bySection.put(hash, new int[] { index });
+            return;
+        }
+        int pos = Arrays.binarySearch(list, index);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        int[] grown = new int[list.length + 1];
+        System.arraycopy(list, 0, grown, 0, pos);
+        grown[pos] = index;
+        System.arraycopy(list, pos, grown, pos + 1, list.length - pos);
+        bySection.put(hash, grown);
+    }
+
+    /*
+     * Removes a section from the candidate list of a fingerprint.
+     */
+    private void unlink(long hash, int index) {
+        int[] list = bySection.get(hash);
+        if (list == null) {
+            return;
+        }
+        int pos = Arrays.binarySearch(list, index);
+        if (pos < 0) {
+            return;
+        }
+        if (list.length == 1) {
+            bySection.remove(hash);
+            return;
+        }
+        int[] shrunk = new int[list.length - 1];
+        System.arraycopy(list, 0, shrunk, 0, pos);
+        System.arraycopy(list, pos + 1, shrunk, pos, list.length - pos - 1);
+        bySection.put(hash, shrunk);
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > hashes.length) {
+            hashes = Arrays.copyOf(hashes, Math.max(count, hashes.length * 2));
+        }
+    }
+}
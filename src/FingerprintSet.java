@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+ * Set of 64-bit fingerprints kept in a single long array, for deduplicating
+ * jokes in memory without boxing, hashing or comparing their contents. Adds,
+ * lookups and removals take constant time.
+ * <p>
+ * Fingerprints are already well mixed, so their low bits pick the slot
+ * directly. Collisions are resolved by probing the next slots. The set is
+ * not thread-safe.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class FingerprintSet {
+
+    private static final long FREE = 0;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    // FREE marks empty slots, so the fingerprint 0 is kept apart
+    private boolean hasFree;
+
+    /**
+     * Constructor for an empty set.
+     */
+    public FingerprintSet() {
+        this(16);
+    }
+
+    /**
+     * Constructor for an empty set that holds the given number of
+     * fingerprints without growing.
+     *
+     * @param expected number of fingerprints expected.
+     */
+    public FingerprintSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 4) * 2 - 1)
+                << 1;
+        this.slots = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds a fingerprint.
+     *
+     * @param fingerprint fingerprint to add.
+     * @return true if it was not in the set.
+     */
+    public boolean add(long fingerprint) {
+        if (fingerprint == FREE) {
+            if (hasFree) {
+                return false;
+            }
+            hasFree = true;
+            size++;
+            return true;
+        }
+        int slot = (int) fingerprint & mask;
+        while (slots[slot] != FREE) {
+            if (slots[slot] == fingerprint) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = fingerprint;
+        if (++size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the set holds a fingerprint.
+     *
+     * @param fingerprint fingerprint to look up.
+     * @return true if it is in the set.
+     */
+    public boolean contains(long fingerprint) {
+        if (fingerprint == FREE) {
+            return hasFree;
+        }
+        int slot = (int) fingerprint & mask;
+        while (slots[slot] != FREE) {
+            if (slots[slot] == fingerprint) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a fingerprint.
+     *
+     * @param fingerprint fingerprint to remove.
+     * @return true if it was in the set.
+     */
+    public boolean remove(long fingerprint) {
+        if (fingerprint == FREE) {
+            if (!hasFree) {
+                return false;
+            }
+            hasFree = false;
+            size--;
+            return true;
+        }
+        int slot = (int) fingerprint & mask;
+        while (slots[slot] != fingerprint) {
+            if (slots[slot] == FREE) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Move later entries of the probe run back, so that lookups never
+        // stop early at the freed slot.
+        int free = slot;
+        for (int next = (slot + 1) & mask; slots[next] != FREE;
+                next = (next + 1) & mask) {
+            int home = (int) slots[next] & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                slots[free] = slots[next];
+                free = next;
+            }
+        }
+        slots[free] = FREE;
+        size--;
+        return true;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of fingerprints in the set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the set is empty.
+     *
+     * @return true if it holds no fingerprints.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every fingerprint.
+     */
+    public void clear() {
+        Arrays.fill(slots, FREE);
+        hasFree = false;
+        size = 0;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        mask = slots.length - 1;
+        for (long fingerprint : old) {
+            if (fingerprint != FREE) {
+                int slot = (int) fingerprint & mask;
+                while (slots[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = fingerprint;
+            }
+        }
+    }
+}
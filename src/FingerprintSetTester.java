@@ -0,0 +1,61 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class FingerprintSetTester {
+
+    @Test
+    public void testAddContainsRemove() {
+        FingerprintSet set = new FingerprintSet();
+        assertTrue(set.add(42));
+        assertFalse(set.add(42));
+        assertTrue(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(2, set.size());
+
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertFalse(set.contains(0));
+        assertTrue(set.remove(42));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void testMatchesHashSet() {
+        // few distinct low bits, so probe runs get long and wrap around
+        Random random = new Random(7);
+        FingerprintSet set = new FingerprintSet(4);
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            long fingerprint = (long) random.nextInt(64) << 40
+                    | random.nextInt(512);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(fingerprint),
+                        set.remove(fingerprint));
+            } else {
+                assertEquals(expected.add(fingerprint), set.add(fingerprint));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (long fingerprint : expected) {
+            assertTrue(set.contains(fingerprint));
+        }
+        set.clear();
+        assertFalse(set.contains(expected.iterator().next()));
+    }
+
+    @Test
+    public void testDedupsJokes() {
+        Joke joke = new Joke("Misc", "Knock Knock");
+        FingerprintSet set = new FingerprintSet();
+        assertTrue(set.add(joke.fingerprint()));
+        assertFalse(set.add(new Joke("Pun", "Knock Knock").fingerprint()));
+        assertTrue(set.add(new Joke("Misc", "Knock Knock!").fingerprint()));
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Settings of an IngestPipeline: what to fetch, how many threads each stage
+ * runs and how many jokes may wait between two stages. The setters return
+ * the config so settings can be chained.
+ *
+ * @author rachelcurci
+ */
+public class IngestConfig {
+
+    private String[] categories = { "Misc", "Programming" };
+    private long count = -1;
+    private int queueCapacity = 256;
+    private int batchSize = 64;
+    private int fetchThreads = 8;
+    private int parseThreads = 1;
+    private int dedupThreads = 1;
+    private int encodeThreads = 1;
+    private int writeThreads = 1;
+
+    /**
+     * Getter method.
+     *
+     * @return categories fetched in turn.
+     */
+    public String[] getCategories() {
+        return categories.clone();
+    }
+
+    /**
+     * Sets the categories fetched, in turn, so each gets an equal share.
+     *
+     * @param names categories, at least one.
+     * @return this config.
+     */
+    public IngestConfig setCategories(String... names) {
+        if (names.length == 0) {
+            throw new IllegalArgumentException("Need at least one category");
+        }
+        this.categories = names.clone();
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of jokes fetched before the pipeline drains, or -1 to
+     *         fetch until shut down.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Sets how many jokes are fetched before the pipeline drains by itself.
+     *
+     * @param jokes number of jokes, or -1 to fetch until shut down.
+     * @return this config.
+     */
+    public IngestConfig setCount(long jokes) {
+        if (jokes < -1) {
+            throw new IllegalArgumentException("Need a count of -1 or more");
+        }
+        this.count = jokes;
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return most jokes waiting between two stages.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets how many jokes may wait between two stages. A stage whose output
+     * queue is full waits, which slows the stages before it down to the pace
+     * of the slowest one.
+     *
+     * @param capacity jokes per queue, at least 1.
+     * @return this config.
+     */
+    public IngestConfig setQueueCapacity(int capacity) {
+        this.queueCapacity = positive(capacity);
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return most jokes written with one writeBatch.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets how many waiting jokes the write stage stores with one
+     * writeBatch.
+     *
+     * @param size jokes per batch, at least 1.
+     * @return this config.
+     */
+    public IngestConfig setBatchSize(int size) {
+        this.batchSize = positive(size);
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return threads of the fetch stage.
+     */
+    public int getFetchThreads() {
+        return fetchThreads;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return threads of the parse stage.
+     */
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return threads of the dedup stage.
+     */
+    public int getDedupThreads() {
+        return dedupThreads;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return threads of the encode stage.
+     */
+    public int getEncodeThreads() {
+        return encodeThreads;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return threads of the write stage.
+     */
+    public int getWriteThreads() {
+        return writeThreads;
+    }
+
+    /**
+     * Sets the number of threads of each stage, in pipeline order.
+     *
+     * @param fetch  threads fetching jokes.
+     * @param parse  threads turning fetch results into jokes.
+     * @param dedup  threads dropping jokes already stored or in the pipeline.
+     * @param encode threads converting jokes into the bytes stored.
+     * @param write  threads writing batches to the store.
+     * @return this config.
+     */
+    public IngestConfig setThreads(int fetch, int parse, int dedup,
+            int encode, int write) {
+        this.fetchThreads = positive(fetch);
+        this.parseThreads = positive(parse);
+        this.dedupThreads = positive(dedup);
+        this.encodeThreads = positive(encode);
+        this.writeThreads = positive(write);
+        return this;
+    }
+
+    private static int positive(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Need a value of at least 1");
+        }
+        return value;
+    }
+}
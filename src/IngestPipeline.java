@@ -0,0 +1,557 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Headless ingestion of jokes into an AppService, without the UI. Jokes flow
+ * through five stages connected by bounded queues:
+ * <ol>
+ * <li>fetch: fetches jokes of the configured categories in turn;</li>
+ * <li>parse: turns fetch results into jokes, dropping failures and jokes
+ * that do not fit a section;</li>
+ * <li>dedup: drops jokes already stored, or nearly the same as a stored
+ * one when the store looks for near-duplicates, or already in the
+ * pipeline;</li>
+ * <li>encode: converts jokes into the bytes stored for them;</li>
+ * <li>write: appends them to the store in batches.</li>
+ * </ol>
+ * <p>
+ * Each stage runs on its own pool of threads. A stage whose output queue is
+ * full waits, so a slow store slows the fetchers down instead of filling the
+ * heap. shutdown stops fetching and lets every joke already fetched flow
+ * through to the store; a stage ends once the stage before it has ended and
+ * its queue is empty.
+ * </p>
+ * <p>
+ * The JSON of a joke is parsed by JokeFetcher while the response is read,
+ * so the fetch stage hands whole results to the parse stage, which checks
+ * and converts them.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class IngestPipeline {
+
+    private static final long POLL_MILLIS = 50;
+
+    /*
+     * Work of one stage on one item. Returns null to drop the item.
+     */
+    private interface Step<I, O> {
+        O apply(I item) throws Exception;
+    }
+
+    /*
+     * A fetch result with the category it was fetched for.
+     */
+    private static final class Fetched {
+        private final String category;
+        private final FetchResult result;
+
+        Fetched(String category, FetchResult result) {
+            this.category = category;
+            this.result = result;
+        }
+    }
+
+    /*
+     * A joke with the bytes stored for it.
+     */
+    private static final class Encoded {
+        private final long key;
+        private final byte[] bytes;
+
+        Encoded(long key, byte[] bytes) {
+            this.key = key;
+            this.bytes = bytes;
+        }
+    }
+
+    /*
+     * Threads of one stage, and whether they have all ended.
+     */
+    private static final class Stage {
+        private final ExecutorService pool;
+        private final AtomicInteger running;
+        private volatile boolean done;
+
+        Stage(String name, int threads) {
+            AtomicInteger number = new AtomicInteger();
+            this.pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r,
+                        "ingest-" + name + "-" + number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.running = new AtomicInteger(threads);
+        }
+    }
+
+    private final AppService store;
+    private final IngestConfig config;
+    private final Function<String, FetchResult> fetcher;
+    private final String[] categories;
+
+    private final BlockingQueue<Fetched> fetched;
+    private final BlockingQueue<Joke> parsed;
+    private final BlockingQueue<Joke> unique;
+    private final BlockingQueue<Encoded> encoded;
+    // fingerprints of the contents of the jokes between dedup and write,
+    // guarded by itself
+    private final FingerprintSet inFlight = new FingerprintSet();
+
+    private final AtomicLong issued = new AtomicLong();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private final List<Stage> stages = new ArrayList<>();
+    private volatile boolean stopping;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * Constructor of a pipeline fetching jokes from the JokeAPI.
+     *
+     * @param store  where jokes are stored.
+     * @param config settings of the pipeline.
+     */
+    public IngestPipeline(AppService store, IngestConfig config) {
+        this(store, config, JokeFetcher::fetch);
+    }
+
+    /**
+     * Constructor of a pipeline fetching jokes from the given source.
+     *
+     * @param store   where jokes are stored.
+     * @param config  settings of the pipeline.
+     * @param fetcher fetches one joke of a given category.
+     */
+    public IngestPipeline(AppService store, IngestConfig config,
+            Function<String, FetchResult> fetcher) {
+        this.store = store;
+        this.config = config;
+        this.fetcher = fetcher;
+        this.categories = config.getCategories();
+        int capacity = config.getQueueCapacity();
+        this.fetched = new ArrayBlockingQueue<>(capacity);
+        this.parsed = new ArrayBlockingQueue<>(capacity);
+        this.unique = new ArrayBlockingQueue<>(capacity);
+        this.encoded = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Starts the threads of every stage. A pipeline can be started once.
+     */
+    public synchronized void start() {
+        if (!stages.isEmpty()) {
+            throw new IllegalStateException("Pipeline already started.");
+        }
+        startNanos = System.nanoTime();
+        Stage fetch = new Stage("fetch", config.getFetchThreads());
+        Stage parse = new Stage("parse", config.getParseThreads());
+        Stage dedup = new Stage("dedup", config.getDedupThreads());
+        Stage encode = new Stage("encode", config.getEncodeThreads());
+        Stage write = new Stage("write", config.getWriteThreads());
+        stages.addAll(List.of(fetch, parse, dedup, encode, write));
+
+        run(fetch, this::fetchLoop);
+        run(parse, () -> transform(fetch, fetched, parsed, this::parse));
+        run(dedup, () -> transform(parse, parsed, unique, this::dedup));
+        run(encode, () -> transform(dedup, unique, encoded, this::encode));
+        run(write, () -> writeLoop(encode));
+    }
+
+    /**
+     * Stops fetching new jokes. Jokes already fetched still go through every
+     * stage and are stored.
+     */
+    public void shutdown() {
+        stopping = true;
+    }
+
+    /**
+     * Stops every stage right away, dropping the jokes waiting in the
+     * queues.
+     */
+    public synchronized void shutdownNow() {
+        stopping = true;
+        for (Stage stage : stages) {
+            stage.pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for every stage to end.
+     *
+     * @param timeout longest time to wait.
+     * @param unit    unit of the timeout.
+     * @return true if the pipeline ended, false if the time ran out.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * Checks if every stage has ended.
+     *
+     * @return true once the last joke has been written.
+     */
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of fetches made.
+     */
+    public long getFetched() {
+        return fetches.sum();
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of fetches that failed.
+     */
+    public long getFailed() {
+        return failures.sum();
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of jokes dropped for not fitting a section.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of jokes dropped as duplicates.
+     */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of jokes stored.
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Returns the number of jokes stored per second since the start, up to
+     * the end once the pipeline has ended.
+     *
+     * @return records per second.
+     */
+    public double getRecordsPerSecond() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = isTerminated() ? endNanos : System.nanoTime();
+        return written.sum() * 1e9 / Math.max(1, end - start);
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return the error that stopped the pipeline, or null if there was none.
+     */
+    public Exception getFailure() {
+        return failure.get();
+    }
+
+    private void run(Stage stage, Runnable worker) {
+        int threads = stage.running.get();
+        for (int i = 0; i < threads; i++) {
+            stage.pool.execute(() -> {
+                try {
+                    worker.run();
+                } catch (RuntimeException e) {
+                    fail(e);
+                } finally {
+                    if (stage.running.decrementAndGet() == 0) {
+                        stage.done = true;
+                        stage.pool.shutdown();
+                        if (stage == stages.get(stages.size() - 1)) {
+                            endNanos = System.nanoTime();
+                            terminated.countDown();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void fetchLoop() {
+        long count = config.getCount();
+        while (!stopping && !Thread.currentThread().isInterrupted()) {
+            long n = issued.getAndIncrement();
+            if (count >= 0 && n >= count) {
+                return;
+            }
+            String category = categories[(int) (n % categories.length)];
+            FetchResult result = fetcher.apply(category);
+            fetches.increment();
+            if (!put(fetched, new Fetched(category, result))) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Moves items from one queue to the next through a step until the stage
+     * before has ended and the input queue is empty.
+     */
+    private <I, O> void transform(Stage upstream, BlockingQueue<I> in,
+            BlockingQueue<O> out, Step<I, O> step) {
+        while (true) {
+            I item;
+            try {
+                item = in.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (item == null) {
+                if (upstream.done && in.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            O result;
+            try {
+                result = step.apply(item);
+            } catch (Exception e) {
+                fail(e);
+                continue;
+            }
+            if (result != null && !put(out, result)) {
+                return;
+            }
+        }
+    }
+
+    private Joke parse(Fetched item) {
+        if (!item.result.isSuccess()) {
+            failures.increment();
+            return null;
+        }
+        Joke joke = new Joke(item.category, item.result.getJoke());
+        if (joke.getContent().isBlank()
+                || (!store.isPacked() && !joke.fits(store.getSecSize()))) {
+            rejected.increment();
+            return null;
+        }
+        return joke;
+    }
+
+    private Joke dedup(Joke joke) throws Exception {
+        long key = joke.fingerprint();
+        synchronized (inFlight) {
+            if (!inFlight.add(key)) {
+                duplicates.increment();
+                return null;
+            }
+        }
+        if (store.contains(store.encode(joke))
+                || store.isNearDuplicate(joke)) {
+            synchronized (inFlight) {
+                inFlight.remove(key);
+            }
+            duplicates.increment();
+            return null;
+        }
+        return joke;
+    }
+
+    private Encoded encode(Joke joke) {
+        return new Encoded(joke.fingerprint(), store.encode(joke));
+    }
+
+    /*
+     * Appends waiting jokes in batches until the encode stage has ended and
+     * nothing is left.
+     */
+    private void writeLoop(Stage upstream) {
+        int batchSize = config.getBatchSize();
+        List<Encoded> batch = new ArrayList<>(batchSize);
+        while (true) {
+            Encoded first;
+            try {
+                first = encoded.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                if (upstream.done && encoded.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            encoded.drainTo(batch, batchSize - 1);
+            List<byte[]> jokeBytes = new ArrayList<>(batch.size());
+            for (Encoded joke : batch) {
+                jokeBytes.add(joke.bytes);
+            }
+            try {
+                int stored = store.appendJokes(jokeBytes);
+                written.add(stored);
+                duplicates.add(batch.size() - stored);
+            } catch (Exception e) {
+                fail(e);
+            } finally {
+                synchronized (inFlight) {
+                    for (Encoded joke : batch) {
+                        inFlight.remove(joke.key);
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /*
+     * Remembers the first error and stops fetching; what was fetched still
+     * drains.
+     */
+    private void fail(Exception e) {
+        failure.compareAndSet(null, e);
+        stopping = true;
+    }
+
+    private static <T> boolean put(BlockingQueue<T> queue, T item) {
+        try {
+            queue.put(item);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Fills a joke file from the JokeAPI and reports the records stored per
+     * second every second. Ctrl-C stops fetching, waits for the jokes
+     * already fetched to be stored, and closes the file, saving its indexes.
+     * <p>
+     * Usage: IngestPipeline [--file path] [--count n] [--categories a,b]
+     * [--fetchers n] [--queue n] [--batch n] [--packed]
+     * </p>
+     *
+     * @param args command-line options.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public static void main(String[] args) throws Exception {
+        String path = "jokes.dat";
+        boolean packed = false;
+        IngestConfig config = new IngestConfig().setCount(100);
+        int fetchers = config.getFetchThreads();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--file":
+                path = args[++i];
+                break;
+            case "--count":
+                config.setCount(Long.parseLong(args[++i]));
+                break;
+            case "--categories":
+                config.setCategories(args[++i].split(","));
+                break;
+            case "--fetchers":
+                fetchers = Integer.parseInt(args[++i]);
+                break;
+            case "--queue":
+                config.setQueueCapacity(Integer.parseInt(args[++i]));
+                break;
+            case "--batch":
+                config.setBatchSize(Integer.parseInt(args[++i]));
+                break;
+            case "--packed":
+                packed = true;
+                break;
+            default:
+                System.err.println("Usage: IngestPipeline [--file path] "
+                        + "[--count n] [--categories a,b] [--fetchers n] "
+                        + "[--queue n] [--batch n] [--packed]");
+                System.exit(2);
+            }
+        }
+        config.setThreads(fetchers, 1, 1, 1, 1);
+
+        AppService store = new AppService(path, new StoreConfig()
+                .setPacked(packed).setCompressed(packed));
+        IngestPipeline pipeline = new IngestPipeline(store, config);
+        AtomicBoolean closed = new AtomicBoolean();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            pipeline.shutdown();
+            try {
+                pipeline.awaitTermination(1, TimeUnit.MINUTES);
+                closeOnce(store, closed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }));
+
+        pipeline.start();
+        while (!pipeline.awaitTermination(1, TimeUnit.SECONDS)) {
+            report(pipeline);
+        }
+        report(pipeline);
+        closeOnce(store, closed);
+        if (pipeline.getFailure() != null) {
+            pipeline.getFailure().printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /*
+     * Closes the store unless main or the shutdown hook has already. The
+     * second caller waits for the first to finish, so the JVM does not exit
+     * while the indexes are being saved.
+     */
+    private static void closeOnce(AppService store, AtomicBoolean closed)
+            throws Exception {
+        synchronized (closed) {
+            if (closed.compareAndSet(false, true)) {
+                store.close();
+            }
+        }
+    }
+
+    private static void report(IngestPipeline pipeline) {
+        System.out.printf("%d stored (%.1f records/sec), %d fetched, "
+                + "%d failed, %d duplicates, %d rejected%n",
+                pipeline.getWritten(), pipeline.getRecordsPerSecond(),
+                pipeline.getFetched(), pipeline.getFailed(),
+                pipeline.getDuplicates(), pipeline.getRejected());
+    }
+}
@@ -0,0 +1,94 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IngestPipelineTester {
+
+    private File file;
+    private AppService store;
+    private AtomicInteger fetches = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jokes", ".dat");
+        file.delete();
+        store = new AppService(file.getPath(),
+                new StoreConfig().setPacked(true));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+        for (String suffix : new String[] { "", ".fp", ".dir", ".tri",
+                ".cat" }) {
+            new File(file.getPath() + suffix).delete();
+        }
+    }
+
+    /*
+     * Every tenth fetch fails, and jokes repeat every 40 fetches.
+     */
+    private FetchResult fetch(String category) {
+        int n = fetches.incrementAndGet();
+        if (n % 10 == 0) {
+            return FetchResult.failure(FetchResult.Failure.SERVER_ERROR, 500,
+                    "HTTP 500", 3);
+        }
+        return FetchResult.success(category + " joke " + (n % 40), 1);
+    }
+
+    @Test
+    public void testStoresEveryNewJoke() throws Exception {
+        IngestPipeline pipeline = new IngestPipeline(store, new IngestConfig()
+                .setCategories("Programming").setCount(200)
+                .setQueueCapacity(4).setBatchSize(8)
+                .setThreads(4, 2, 2, 2, 1), this::fetch);
+        pipeline.start();
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertNull(pipeline.getFailure());
+        assertEquals(200, pipeline.getFetched());
+        assertEquals(20, pipeline.getFailed());
+        // n % 40 for n not divisible by 10 leaves 36 distinct jokes
+        assertEquals(36, pipeline.getWritten());
+        assertEquals(180 - 36, pipeline.getDuplicates());
+        assertEquals(36, store.size());
+        Set<String> stored = new HashSet<>();
+        for (int i = 0; i < store.size(); i++) {
+            Joke joke = Joke.fromBytes(store.read(i));
+            stored.add(joke.getCategory() + ": " + joke.getContent());
+        }
+        assertEquals(36, stored.size());
+        assertTrue(stored.contains("Programming: Programming joke 1"));
+        assertTrue(stored.contains("Programming: Programming joke 39"));
+    }
+
+    @Test
+    public void testShutdownDrains() throws Exception {
+        IngestPipeline pipeline = new IngestPipeline(store,
+                new IngestConfig().setCount(-1).setQueueCapacity(2),
+                category -> FetchResult.success("Joke "
+                        + fetches.incrementAndGet(), 1));
+        pipeline.start();
+        while (pipeline.getWritten() < 50) {
+            Thread.sleep(5);
+        }
+        pipeline.shutdown();
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+
+        // everything fetched was stored, since every joke is new
+        assertEquals(pipeline.getFetched(), pipeline.getWritten());
+        assertEquals(pipeline.getWritten(), store.size());
+        assertTrue(pipeline.getRecordsPerSecond() > 0);
+    }
+}
@@ -1,11 +1,20 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
 
 public class Joke extends Content
         implements Convertable, Comparable<Joke>, Cloneable {
+    private static final byte RECORD_FORMAT = 1;
+
+    /** Bytes getBytes keeps for the category, in front of the content. */
+    public static final int CATEGORY_BYTES = 15;
+
     private String category;
 
     /**
      * Constructor that initializes the Category and Content instance variables
-     * with the deep-copy of the given Strings.
+     * with the given Strings, which are immutable and therefore shared.
      * 
      * @param category String of the category
      * @param content  String of the content
@@ -13,7 +22,7 @@ public class Joke extends Content
     public Joke(String category, String content) {
         super(content);
 
-        this.category = new String(category);
+        this.category = Objects.requireNonNull(category);
     }
 
     /**
@@ -27,8 +36,11 @@ public class Joke extends Content
 
     /**
      * Method returns true if the result of comparing this object with another
-     * using the compareTo() method is zero.
+     * using the compareTo() method is zero, that is if both jokes have the
+     * same content. The category is not compared, so the same joke filed
+     * under two categories is still one joke.
      */
+    @Override
     public boolean equals(Object obj) {
         if (obj == null || !(obj instanceof Joke)) {
             return false;
@@ -37,11 +49,21 @@ public class Joke extends Content
         return this.compareTo(otherJoke) == 0;
     }
 
+    /**
+     * Returns the hash of the content, consistent with equals, which ignores
+     * the category.
+     */
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
     /**
      * If both objects have contents of the same length returns the result of
-     * comparing the first 10 characters of these contents. If the contents of
-     * both objects are of different lengths, returns the result of comparing
-     * the length of the contents using the Interger.compare() method.
+     * comparing these contents, which the first characters usually decide.
+     * If the contents of both objects are of different lengths, returns the
+     * result of comparing the length of the contents using the
+     * Interger.compare() method.
      */
     @Override
     public int compareTo(Joke otherJoke) {
@@ -52,9 +74,7 @@ public class Joke extends Content
         int otherLength = otherContent.length();
 
         if (thisLength == otherLength) {
-            String thisSubstring = thisContent.substring(0, 10);
-            String otherSubstring = thisContent.substring(0, 10);
-            return thisSubstring.compareTo(otherSubstring);
+            return Integer.signum(thisContent.compareTo(otherContent));
         }
         return Integer.compare(thisLength, otherLength);
     }
@@ -65,8 +85,8 @@ public class Joke extends Content
      */
     @Override
     public String toString() {
-        int maxLength = 10;
         String content = getContent();
+        int maxLength = Math.min(10, content.length());
 
         return String.format("Category: %s%nJoke: %s%n", category,
                 content.substring(0, maxLength));
@@ -89,23 +109,122 @@ public class Joke extends Content
         int catLength = catBytes.length;
         int contentLength = contentBytes.length;
 
-        int catCopyLength = 15;
-        int contentCopyLength = byteSize - 15;
+        int catCopyLength = CATEGORY_BYTES;
+        int contentCopyLength = byteSize - CATEGORY_BYTES;
 
-        if (catLength < 15) {
+        if (catLength < CATEGORY_BYTES) {
             catCopyLength = catLength;
         }
 
-        if (contentLength < byteSize - 15) {
+        if (contentLength < byteSize - CATEGORY_BYTES) {
             contentCopyLength = contentLength;
         }
 
         System.arraycopy(catBytes, 0, result, 0, catCopyLength);
-        System.arraycopy(contentBytes, 0, result, 15, contentCopyLength);
+        System.arraycopy(contentBytes, 0, result, CATEGORY_BYTES,
+                contentCopyLength);
 
         return result;
     }
 
+    /**
+     * Checks if getBytes can convert the joke into a byte array of the given
+     * size without cutting off the category or the content.
+     * 
+     * @param byteSize size of the byte array.
+     * @return true if the whole joke fits.
+     */
+    public boolean fits(int byteSize) {
+        return category.getBytes().length <= CATEGORY_BYTES && getContent()
+                .getBytes().length <= byteSize - CATEGORY_BYTES;
+    }
+
+    /**
+     * Converts joke into a variable-length record: a format byte, then the
+     * category and the content, each as a length followed by its UTF-8 bytes.
+     * Lengths are written in 7-bit groups, so short jokes take one byte per
+     * length and long jokes are never truncated.
+     * 
+     * @return byte array of the record.
+     */
+    public byte[] toRecord() {
+        byte[] catBytes = category.getBytes(StandardCharsets.UTF_8);
+        byte[] contentBytes = getContent().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer
+                .allocate(11 + catBytes.length + contentBytes.length);
+
+        record.put(RECORD_FORMAT);
+        putLength(record, catBytes.length);
+        record.put(catBytes);
+        putLength(record, contentBytes.length);
+        record.put(contentBytes);
+
+        return Arrays.copyOf(record.array(), record.position());
+    }
+
+    /**
+     * Creates a Joke from a byte array built by toRecord, or by getBytes, with
+     * the category in the first 15 bytes and the content after it, both padded
+     * with zeros.
+     * 
+     * @param data byte array of a joke.
+     * @return Joke with the category and content stored in the array.
+     */
+    public static Joke fromBytes(byte[] data) {
+        if (data.length > 0 && data[0] == RECORD_FORMAT) {
+            ByteBuffer record = ByteBuffer.wrap(data, 1, data.length - 1);
+            String category = getString(record);
+            return new Joke(category, getString(record));
+        }
+        int catEnd = 0;
+        while (catEnd < Math.min(CATEGORY_BYTES, data.length)
+                && data[catEnd] != 0) {
+            catEnd++;
+        }
+        int contentEnd = CATEGORY_BYTES;
+        while (contentEnd < data.length && data[contentEnd] != 0) {
+            contentEnd++;
+        }
+        String category = new String(data, 0, catEnd);
+        String content = "";
+        if (contentEnd > CATEGORY_BYTES) {
+            content = new String(data, CATEGORY_BYTES,
+                    contentEnd - CATEGORY_BYTES);
+        }
+
+        return new Joke(category, content);
+    }
+
+    /*
+     * Writes a length in 7-bit groups, lowest first, with the high bit set on
+     * every byte but the last.
+     */
+    private static void putLength(ByteBuffer buffer, int length) {
+        while ((length & ~0x7f) != 0) {
+            buffer.put((byte) ((length & 0x7f) | 0x80));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+    }
+
+    /*
+     * Reads a length written by putLength followed by that many UTF-8 bytes.
+     */
+    private static String getString(ByteBuffer buffer) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        String value = new String(buffer.array(), buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
     /**
      * Returns an object which is a deep copy of this Joke object.
      */
@@ -1,7 +1,25 @@
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * The JokeFetcher class provides methods to fetch jokes from the JokeAPI.
@@ -21,28 +39,227 @@ import java.net.URL;
  * <li>Any: Fetches a random joke from any category.</li>
  * </ul>
  * <p>
+ * All requests share one HttpClient, so connections are kept alive between
+ * jokes. Batches of jokes are fetched concurrently on a pool with a thread
+ * for every request that may be in flight. The
+ * number of requests in flight is set by an {@link AdaptiveLimiter}: it grows
+ * while the API answers and halves when requests time out, are rate limited
+ * or fail with a 5xx status, never going above {@link #getMaxConcurrency()}.
+ * </p>
+ * <p>
+ * Each request is bounded by the timeouts of the {@link FetchPolicy}, and
+ * transient failures are tried again with exponential backoff and jitter,
+ * honoring Retry-After. {@link #fetch(String)} and
+ * {@link #fetchAll(String, int)} say why a fetch failed with a
+ * {@link FetchResult}; the methods returning strings give
+ * {@link #FETCH_ERROR} instead, for older callers.
+ * </p>
+ * <p>
  * Copyright 2023 Meisam Amjad @author amjadm@miamioh.edu
  * </p>
  */
 public class JokeFetcher {
 
+    /**
+     * Text returned in place of a joke when fetching it failed.
+     */
+    public static final String FETCH_ERROR = "Error fetching a joke.";
+
     /**
      * Fetches a random joke from any category.
      * 
-     * @return A string containing the joke.
+     * @return A string containing the joke, or FETCH_ERROR.
      */
     public static String fetchJoke() {
-        return getJoke("Any");
+        return fetchJoke("Any");
     }
 
     /**
      * Fetches a joke from a specified category.
      * 
      * @param category The desired category from which to fetch the joke.
-     * @return A string containing the joke.
+     * @return A string containing the joke, or FETCH_ERROR.
      */
     public static String fetchJoke(String category) {
-        return getJoke(category);
+        return textOf(fetch(category));
+    }
+
+    /**
+     * Fetches a joke from a specified category, trying again on transient
+     * failures as the policy allows.
+     * 
+     * @param category The desired category from which to fetch the joke.
+     * @return The joke, or why it could not be fetched.
+     */
+    public static FetchResult fetch(String category) {
+        FetchPolicy current = policy;
+        FetchResult result = null;
+        for (int attempt = 1; attempt <= current.getMaxAttempts(); attempt++) {
+            if (attempt > 1) {
+                Metrics.fetchRetried();
+                long wait = current.backoffMillis(attempt,
+                        result.getRetryAfterMillis(),
+                        ThreadLocalRandom.current().nextDouble());
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result = interrupted(attempt - 1);
+                    break;
+                }
+            }
+            result = attempt(category, current, attempt);
+            if (result.isSuccess() || !result.getFailure().isRetryable()) {
+                break;
+            }
+        }
+        if (!result.isSuccess()) {
+            Metrics.fetchFailed();
+        }
+        return result;
+    }
+
+    /**
+     * Fetches several jokes from a specified category concurrently and waits
+     * for all of them.
+     * 
+     * @param category The desired category from which to fetch the jokes.
+     * @param count    The number of jokes to fetch.
+     * @return A list containing the jokes, FETCH_ERROR for those that failed,
+     *         in request order.
+     */
+    public static List<String> fetchJokes(String category, int count) {
+        return fetchJokesAsync(category, count).join();
+    }
+
+    /**
+     * Fetches several jokes from a specified category concurrently without
+     * blocking the caller.
+     * 
+     * @param category The desired category from which to fetch the jokes.
+     * @param count    The number of jokes to fetch.
+     * @return A future completed with the jokes, FETCH_ERROR for those that
+     *         failed, in request order.
+     */
+    public static CompletableFuture<List<String>> fetchJokesAsync(
+            String category, int count) {
+        return fetchAllAsync(category, count).thenApply(results -> {
+            List<String> jokes = new ArrayList<>(count);
+            for (FetchResult result : results) {
+                jokes.add(textOf(result));
+            }
+            return jokes;
+        });
+    }
+
+    /**
+     * Fetches several jokes from a specified category concurrently and waits
+     * for all of them.
+     * 
+     * @param category The desired category from which to fetch the jokes.
+     * @param count    The number of jokes to fetch.
+     * @return The results, in request order.
+     */
+    public static List<FetchResult> fetchAll(String category, int count) {
+        return fetchAllAsync(category, count).join();
+    }
+
+    /**
+     * Fetches several jokes from a specified category concurrently without
+     * blocking the caller.
+     * 
+     * @param category The desired category from which to fetch the jokes.
+     * @param count    The number of jokes to fetch.
+     * @return A future completed with the results, in request order.
+     */
+    public static CompletableFuture<List<FetchResult>> fetchAllAsync(
+            String category, int count) {
+        List<CompletableFuture<FetchResult>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(CompletableFuture
+                    .supplyAsync(() -> fetch(category), EXECUTOR));
+        }
+        return CompletableFuture
+                .allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> {
+                    List<FetchResult> results = new ArrayList<>(count);
+                    for (CompletableFuture<FetchResult> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
+    }
+
+    /**
+     * Returns the maximum number of requests kept in flight.
+     * 
+     * @return the concurrency cap.
+     */
+    public static int getMaxConcurrency() {
+        return LIMITER.getMaxLimit();
+    }
+
+    /**
+     * Sets the maximum number of requests kept in flight. The adaptive limit
+     * is lowered to it if needed; requests already in flight are not
+     * affected. The pool running the requests gets as many threads.
+     * 
+     * @param max The concurrency cap, at least 1.
+     */
+    public static void setMaxConcurrency(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("max must be at least 1");
+        }
+        LIMITER.setMaxLimit(max);
+        synchronized (EXECUTOR) {
+            // the core size can never be above the maximum size
+            if (max > EXECUTOR.getMaximumPoolSize()) {
+                EXECUTOR.setMaximumPoolSize(max);
+                EXECUTOR.setCorePoolSize(max);
+            } else {
+                EXECUTOR.setCorePoolSize(max);
+                EXECUTOR.setMaximumPoolSize(max);
+            }
+        }
+    }
+
+    /**
+     * Returns the limiter deciding how many requests are in flight.
+     * 
+     * @return the limiter.
+     */
+    public static AdaptiveLimiter getLimiter() {
+        return LIMITER;
+    }
+
+    /**
+     * Returns the timeouts and retries used by new requests.
+     * 
+     * @return the policy.
+     */
+    public static FetchPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the timeouts and retries used by new requests. The policy must not
+     * be changed afterwards; set a new one instead.
+     * 
+     * @param fetchPolicy The policy.
+     */
+    public static void setPolicy(FetchPolicy fetchPolicy) {
+        client = newClient(fetchPolicy);
+        policy = fetchPolicy;
+    }
+
+    /**
+     * Sets the base URL jokes are fetched from, for example a local stub
+     * server. The category and settings are appended to it.
+     * 
+     * @param url The base URL, ending with a slash.
+     */
+    public static void setBaseUrl(String url) {
+        baseUrl = url;
     }
 
     // ============== PRIVATE VARIABLES & METHODS ============================
@@ -54,6 +271,38 @@ public class JokeFetcher {
     private static final String JOKE_SETTING = "?blacklistFlags=religious,"
             + "political,explicit,sexist,racist&type=single";
 
+    // Limits of the number of requests in flight
+    private static final int INITIAL_CONCURRENCY = 10;
+    private static final int DEFAULT_MAX_CONCURRENCY = 32;
+
+    // Threads running the requests of a batch, as many as requests may be
+    // in flight; idle ones end after a minute
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_CONCURRENCY, 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "joke-fetcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static final AdaptiveLimiter LIMITER = new AdaptiveLimiter(
+            INITIAL_CONCURRENCY, 1, DEFAULT_MAX_CONCURRENCY);
+
+    private static volatile String baseUrl = JOKE_API_URL;
+    private static volatile FetchPolicy policy = new FetchPolicy();
+    // Client shared by all requests so connections are kept alive
+    private static volatile HttpClient client = newClient(policy);
+
+    private static HttpClient newClient(FetchPolicy fetchPolicy) {
+        return HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(
+                        fetchPolicy.getConnectTimeoutMillis())).build();
+    }
+
     /*
      * A private helper method that extracts the joke content from the provided
      * response string.
@@ -62,56 +311,196 @@ public class JokeFetcher {
      * 
      * @return A string containing the extracted joke.
      */
-    private static String extractJoke(String jsonResponse) {
-        if (jsonResponse.contains("\"type\": \"single\"")) {
-            int startIndex = jsonResponse.indexOf("\"joke\": \"") + 9;
-            int endIndex = jsonResponse.indexOf("\"flags\"", startIndex);
-            return jsonResponse.substring(startIndex, endIndex).trim()
-                    .replace("\",", "");
-        } else {
-            int setupStart = jsonResponse.indexOf("\"setup \": \"") + 1;
-            int setupEnd = jsonResponse.indexOf("\"", setupStart);
-            int deliveryStart = jsonResponse.indexOf("\"delivery \": \"") + 1;
-            int deliveryEnd = jsonResponse.indexOf("\"", deliveryStart);
-            return jsonResponse.substring(setupStart, setupEnd) + " "
-                    + jsonResponse.substring(deliveryStart, deliveryEnd);
+    static String extractJoke(String jsonResponse) throws IOException {
+        return extractJoke(new ByteArrayInputStream(
+                jsonResponse.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /*
+     * A private helper method that extracts the joke content while reading
+     * the response stream.
+     * 
+     * @param body The stream of the JSON response from the JokeAPI.
+     * 
+     * @return A string containing the extracted joke.
+     */
+    private static String extractJoke(InputStream body) throws IOException {
+        JokeParser.Result result = JokeParser.parse(body);
+        String joke = result.getText();
+        if (result.isError() || joke == null) {
+            throw new IOException("No joke in the response.");
         }
+        return joke;
     }
 
     /*
-     * A private helper method that fetches a joke from a specified category.
+     * A private helper method that makes one request for a joke once the
+     * limiter lets it, and tells the limiter how it went.
      * 
      * @param category The desired category from which to fetch the joke.
      * 
-     * @return A string containing the joke.
+     * @param fetchPolicy The timeouts of the request.
+     * 
+     * @param attempt The number of this attempt, from 1.
+     * 
+     * @return The result of the request.
      */
-    private static String getJoke(String category) {
+    private static FetchResult attempt(String category,
+            FetchPolicy fetchPolicy, int attempt) {
         try {
-            // Construct the URL string based on the provided category
-            String urlString = JOKE_API_URL + category + JOKE_SETTING;
-            URL url = new URL(urlString);
-            HttpURLConnection connection = (HttpURLConnection) url
-                    .openConnection();
-            connection.setRequestMethod("GET");
-
-            // Read the response from the API
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(connection.getInputStream()));
-            String line;
-            StringBuilder response = new StringBuilder();
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+            LIMITER.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return interrupted(attempt);
+        }
+        FetchResult result = null;
+        long start = Metrics.FETCH.start();
+        try {
+            result = request(category, fetchPolicy, attempt);
+            return result;
+        } finally {
+            Metrics.FETCH.stop(start);
+            if (result != null && result.isSuccess()) {
+                LIMITER.onSuccess();
+            } else if (result != null && isOverload(result.getFailure())) {
+                LIMITER.onOverload();
+            } else {
+                LIMITER.onIgnore();
             }
-            reader.close();
+        }
+    }
 
-            // Use the private helper method to extract the joke
-            return extractJoke(response.toString());
+    /*
+     * Sends the request and reads the whole response within the request
+     * timeout, so that neither a slow server nor a slow body can hold the
+     * caller longer. The body is parsed straight from the response stream;
+     * a body still unread at the deadline has its stream closed, which
+     * fails the read.
+     */
+    private static FetchResult request(String category,
+            FetchPolicy fetchPolicy, int attempt) {
+        long timeout = fetchPolicy.getRequestTimeoutMillis();
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(timeout);
+        HttpRequest request = HttpRequest
+                .newBuilder(URI.create(baseUrl + category + JOKE_SETTING))
+                .timeout(Duration.ofMillis(timeout)).GET().build();
+        CompletableFuture<HttpResponse<InputStream>> future = client
+                .sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        HttpResponse<InputStream> response;
+        try {
+            response = future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return FetchResult.failure(FetchResult.Failure.TIMEOUT, 0,
+                    "No response within " + timeout + " ms", attempt);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return interrupted(attempt);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            FetchResult.Failure failure = cause instanceof HttpTimeoutException
+                    ? FetchResult.Failure.TIMEOUT
+                    : FetchResult.Failure.NETWORK;
+            return FetchResult.failure(failure, 0, String.valueOf(cause),
+                    attempt);
+        }
+
+        int status = response.statusCode();
+        InputStream body = response.body();
+        if (status >= 300) {
+            close(body);
+        }
+        if (status == 429) {
+            return FetchResult.rateLimited(status, retryAfterMillis(
+                    response.headers().firstValue("Retry-After").orElse(""),
+                    System.currentTimeMillis()), attempt);
+        }
+        if (status >= 500) {
+            return FetchResult.failure(FetchResult.Failure.SERVER_ERROR,
+                    status, "HTTP " + status, attempt);
+        }
+        if (status >= 300) {
+            return FetchResult.failure(FetchResult.Failure.CLIENT_ERROR,
+                    status, "HTTP " + status, attempt);
+        }
+
+        // completes with true if the deadline passes before the read is done
+        CompletableFuture<Boolean> expired = new CompletableFuture<>();
+        expired.completeOnTimeout(true, Math.max(0,
+                deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                .thenAccept(late -> {
+                    if (late) {
+                        close(body);
+                    }
+                });
+        try (body) {
+            return FetchResult.success(extractJoke(body), attempt);
+        } catch (IOException | RuntimeException e) {
+            if (!expired.complete(false) && expired.join()) {
+                return FetchResult.failure(FetchResult.Failure.TIMEOUT,
+                        status, "No response within " + timeout + " ms",
+                        attempt);
+            }
+            return FetchResult.failure(FetchResult.Failure.BAD_RESPONSE,
+                    status, e.getMessage(), attempt);
+        } finally {
+            expired.complete(false);
+        }
+    }
+
+    /*
+     * A private helper method that closes a response stream, ignoring a
+     * failure to close it.
+     * 
+     * @param body The stream to close.
+     */
+    private static void close(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            // the response is abandoned either way
+        }
+    }
 
-        } catch (Exception e) {
-            return "Error fetching a joke.";
+    /*
+     * Parses a Retry-After header, which is either a number of seconds or an
+     * HTTP-date, into the time to wait from now. Anything else, and a date
+     * in the past, gives 0, which leaves the wait to the normal backoff.
+     */
+    static long retryAfterMillis(String value, long nowMillis) {
+        String trimmed = value.trim();
+        try {
+            if (!trimmed.isEmpty() && trimmed.chars()
+                    .allMatch(c -> c >= '0' && c <= '9')) {
+                return Math.multiplyExact(Long.parseLong(trimmed), 1000L);
+            }
+            long until = ZonedDateTime.parse(trimmed,
+                    DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+                    .toEpochMilli();
+            return Math.max(0, until - nowMillis);
+        } catch (ArithmeticException | NumberFormatException
+                | DateTimeParseException e) {
+            return 0;
         }
     }
 
+    private static boolean isOverload(FetchResult.Failure failure) {
+        return failure == FetchResult.Failure.TIMEOUT
+                || failure == FetchResult.Failure.RATE_LIMITED
+                || failure == FetchResult.Failure.SERVER_ERROR;
+    }
+
+    private static FetchResult interrupted(int attempts) {
+        return FetchResult.failure(FetchResult.Failure.INTERRUPTED, 0,
+                "Interrupted", attempts);
+    }
+
+    private static String textOf(FetchResult result) {
+        return result.isSuccess() ? result.getJoke() : FETCH_ERROR;
+    }
+
     public static void main(String[] args) {
         System.out.println(fetchJoke());
         // Fetches a joke excluding religious political, sexist, racist,
@@ -0,0 +1,209 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class JokeFetcherTester {
+
+    private HttpServer server;
+    private AtomicInteger requests = new AtomicInteger();
+    private AtomicInteger inFlight = new AtomicInteger();
+    private AtomicInteger maxInFlight = new AtomicInteger();
+    // statuses answered before the stub starts answering jokes; 0 answers a
+    // body without a joke
+    private Queue<Integer> faults = new ConcurrentLinkedQueue<>();
+    private volatile long delayMillis = 200;
+    // delay between the headers and the body of a joke
+    private volatile long bodyDelayMillis = 0;
+    private volatile String retryAfter = "0";
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/joke/", exchange -> {
+            int n = requests.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+
+            Integer fault = faults.poll();
+            if (fault != null && fault != 0) {
+                if (fault == 429) {
+                    exchange.getResponseHeaders().add("Retry-After",
+                            retryAfter);
+                }
+                exchange.sendResponseHeaders(fault, -1);
+                exchange.close();
+                return;
+            }
+            String joke = fault == null ? "\"joke\": \"Joke number " + n
+                    + "\"" : "\"message\": \"No matching joke found\"";
+            byte[] body = ("{\n"
+                    + "    \"error\": " + (fault != null) + ",\n"
+                    + "    \"category\": \"Programming\",\n"
+                    + "    \"type\": \"single\",\n"
+                    + "    " + joke + ",\n"
+                    + "    \"flags\": {\n        \"nsfw\": false\n    },\n"
+                    + "    \"id\": " + n + ",\n    \"safe\": true,\n"
+                    + "    \"lang\": \"en\"\n}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.flush();
+                Thread.sleep(bodyDelayMillis);
+                out.write(body);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        JokeFetcher.setBaseUrl("http://127.0.0.1:"
+                + server.getAddress().getPort() + "/joke/");
+        JokeFetcher.setPolicy(new FetchPolicy().setBackoffMillis(1, 5));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        JokeFetcher.setBaseUrl("https://v2.jokeapi.dev/joke/");
+        JokeFetcher.setMaxConcurrency(32);
+        JokeFetcher.getLimiter().setLimit(10);
+        JokeFetcher.setPolicy(new FetchPolicy());
+    }
+
+    @Test
+    public void testFetchJoke() {
+        assertEquals("Joke number 1", JokeFetcher.fetchJoke("Programming"));
+    }
+
+    @Test
+    public void testFetchJokesConcurrently() {
+        long start = System.nanoTime();
+        List<String> jokes = JokeFetcher.fetchJokes("Programming", 10);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(10, jokes.size());
+        for (String joke : jokes) {
+            assertTrue(joke.startsWith("Joke number "));
+        }
+        assertEquals(10, requests.get());
+        assertTrue("took " + millis + " ms", millis < 1000);
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        JokeFetcher.setMaxConcurrency(2);
+        List<String> jokes = JokeFetcher.fetchJokesAsync("Misc", 6).join();
+
+        assertEquals(6, jokes.size());
+        assertTrue(maxInFlight.get() <= 2);
+    }
+    @Test
+    public void testRetriesTransientFailures() {
+        delayMillis = 0;
+        faults.add(500);
+        faults.add(429);
+
+        FetchResult result = JokeFetcher.fetch("Programming");
+        assertTrue(result.isSuccess());
+        assertEquals("Joke number 3", result.getJoke());
+        assertEquals(3, result.getAttempts());
+    }
+
+    @Test
+    public void testRetryAfterDates() {
+        delayMillis = 0;
+        retryAfter = "Wed, 21 Oct 2015 07:28:00 GMT";
+        faults.add(429);
+        faults.add(429);
+
+        FetchResult result = JokeFetcher.fetch("Programming");
+        assertEquals("Joke number 3", result.getJoke());
+
+        assertEquals(120_000, JokeFetcher.retryAfterMillis(" 120 ", 0));
+        assertEquals(2000, JokeFetcher.retryAfterMillis(
+                "Thu, 01 Jan 1970 00:00:03 GMT", 1000));
+        assertEquals(0, JokeFetcher.retryAfterMillis(
+                "Thu, 01 Jan 1970 00:00:03 GMT", 5000));
+        assertEquals(0, JokeFetcher.retryAfterMillis("soon", 0));
+        assertEquals(0, JokeFetcher.retryAfterMillis(
+                "99999999999999999999", 0));
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() {
+        delayMillis = 0;
+        for (int i = 0; i < 6; i++) {
+            faults.add(503);
+        }
+
+        FetchResult result = JokeFetcher.fetch("Programming");
+        assertEquals(FetchResult.Failure.SERVER_ERROR, result.getFailure());
+        assertEquals(503, result.getStatus());
+        assertEquals(3, result.getAttempts());
+        assertEquals(3, requests.get());
+        assertEquals(JokeFetcher.FETCH_ERROR,
+                JokeFetcher.fetchJoke("Programming"));
+    }
+
+    @Test
+    public void testDoesNotRetryBadResponses() {
+        delayMillis = 0;
+        faults.add(0);
+        faults.add(404);
+
+        FetchResult result = JokeFetcher.fetch("Programming");
+        assertEquals(FetchResult.Failure.BAD_RESPONSE, result.getFailure());
+        assertEquals(1, result.getAttempts());
+        result = JokeFetcher.fetch("Programming");
+        assertEquals(FetchResult.Failure.CLIENT_ERROR, result.getFailure());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testTimesOutSlowResponses() {
+        JokeFetcher.setPolicy(new FetchPolicy().setRequestTimeoutMillis(50)
+                .setMaxAttempts(2).setBackoffMillis(1, 5));
+        int limit = JokeFetcher.getLimiter().getLimit();
+        long start = System.nanoTime();
+        FetchResult result = JokeFetcher.fetch("Programming");
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(FetchResult.Failure.TIMEOUT, result.getFailure());
+        assertEquals(2, result.getAttempts());
+        assertTrue("took " + millis + " ms", millis < 200);
+        assertTrue(JokeFetcher.getLimiter().getLimit() <= limit / 2);
+    }
+
+    @Test
+    public void testTimesOutSlowBodies() {
+        delayMillis = 0;
+        bodyDelayMillis = 500;
+        JokeFetcher.setPolicy(new FetchPolicy().setRequestTimeoutMillis(100)
+                .setMaxAttempts(1));
+        long start = System.nanoTime();
+        FetchResult result = JokeFetcher.fetch("Programming");
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(FetchResult.Failure.TIMEOUT, result.getFailure());
+        assertTrue("took " + millis + " ms", millis < 400);
+    }
+}
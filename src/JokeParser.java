@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Single-pass parser for JokeAPI responses. It reads the response stream
+ * directly, decodes UTF-8 and JSON escapes as it goes, and only builds strings
+ * for the fields it keeps; everything else, like the flags object, is skipped
+ * without being copied.
+ *
+ * @author rachelcurci
+ */
+public final class JokeParser {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final String[] KEYS = { "type", "joke", "setup",
+            "delivery", "category", "id", "error" };
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final StringBuilder text = new StringBuilder(256);
+    private int pos;
+    private int limit;
+
+    /**
+     * Fields of a parsed JokeAPI response. Fields missing from the response
+     * are null, or -1 for the id.
+     */
+    public static final class Result {
+        private boolean error;
+        private String type;
+        private String joke;
+        private String setup;
+        private String delivery;
+        private String category;
+        private int id = -1;
+
+        /**
+         * Getter method.
+         *
+         * @return true if the API reported an error.
+         */
+        public boolean isError() {
+            return error;
+        }
+
+        /**
+         * Getter method.
+         *
+         * @return "single" or "twopart".
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Getter method.
+         *
+         * @return text of a single joke.
+         */
+        public String getJoke() {
+            return joke;
+        }
+
+        /**
+         * Getter method.
+         *
+         * @return first part of a two-part joke.
+         */
+        public String getSetup() {
+            return setup;
+        }
+
+        /**
+         * Getter method.
+         *
+         * @return second part of a two-part joke.
+         */
+        public String getDelivery() {
+            return delivery;
+        }
+
+        /**
+         * Getter method.
+         *
+         * @return category reported by the API.
+         */
+        public String getCategory() {
+            return category;
+        }
+
+        /**
+         * Getter method.
+         *
+         * @return id of the joke in the API.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Returns the full text of the joke, with the setup and delivery of a
+         * two-part joke on separate lines.
+         *
+         * @return text of the joke, or null if the response has none.
+         */
+        public String getText() {
+            if (joke != null) {
+                return joke;
+            }
+            if (setup != null && delivery != null) {
+                return setup + "\n" + delivery;
+            }
+            return null;
+        }
+    }
+
+    private JokeParser(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Parses a JokeAPI response from the given stream. The stream is read up
+     * to the end of the top-level object and is not closed.
+     *
+     * @param in stream of the UTF-8 encoded response.
+     * @return the fields of the response.
+     * @throws IOException if the stream cannot be read or is not a JSON
+     *                     object.
+     */
+    public static Result parse(InputStream in) throws IOException {
+        return new JokeParser(in).parseObject();
+    }
+
+    /*
+     * Parses the top-level object, keeping the fields of interest.
+     */
+    private Result parseObject() throws IOException {
+        Result result = new Result();
+        expect('{');
+        int c = skipWhitespace();
+        if (c == '}') {
+            return result;
+        }
+        while (true) {
+            if (c != '"') {
+                throw error("Expected a key");
+            }
+            readString();
+            String key = keyName();
+            expect(':');
+            c = skipWhitespace();
+            if (key == null) {
+                skipValue(c);
+            } else if (c == '"') {
+                readString();
+                assign(result, key, text.toString());
+            } else if (key.equals("id")) {
+                result.id = readInt(c);
+            } else if (key.equals("error")) {
+                result.error = c == 't';
+                skipValue(c);
+            } else {
+                skipValue(c);
+            }
+            c = skipWhitespace();
+            if (c == '}') {
+                return result;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+            c = skipWhitespace();
+        }
+    }
+
+    /*
+     * Returns the interned name of the key just read if it is one of the
+     * fields of interest, or null, without allocating a string for it.
+     */
+    private String keyName() {
+        for (String name : KEYS) {
+            if (text.length() == name.length()
+                    && name.contentEquals(text)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private static void assign(Result result, String key, String value) {
+        switch (key) {
+        case "type":
+            result.type = value;
+            break;
+        case "joke":
+            result.joke = value;
+            break;
+        case "setup":
+            result.setup = value;
+            break;
+        case "delivery":
+            result.delivery = value;
+            break;
+        case "category":
+            result.category = value;
+            break;
+        default:
+            break;
+        }
+    }
+
+    /*
+     * Reads the string after an opening quote into text, decoding UTF-8
+     * sequences and escapes.
+     */
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int b = next();
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                readEscape();
+            } else if (b < 0x80) {
+                text.append((char) b);
+            } else {
+                readUtf8(b);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int b = next();
+        switch (b) {
+        case '"':
+        case '\\':
+        case '/':
+            text.append((char) b);
+            break;
+        case 'b':
+            text.append('\b');
+            break;
+        case 'f':
+            text.append('\f');
+            break;
+        case 'n':
+            text.append('\n');
+            break;
+        case 'r':
+            text.append('\r');
+            break;
+        case 't':
+            text.append('\t');
+            break;
+        case 'u':
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(next(), 16);
+                if (digit < 0) {
+                    throw error("Bad unicode escape");
+                }
+                code = (code << 4) | digit;
+            }
+            // Surrogate pairs arrive as two escapes and are appended as-is.
+            text.append((char) code);
+            break;
+        default:
+            throw error("Bad escape");
+        }
+    }
+
+    /*
+     * Decodes a multi-byte UTF-8 sequence that starts with the given byte.
+     */
+    private void readUtf8(int first) throws IOException {
+        int extra;
+        int code;
+        if ((first & 0xe0) == 0xc0) {
+            extra = 1;
+            code = first & 0x1f;
+        } else if ((first & 0xf0) == 0xe0) {
+            extra = 2;
+            code = first & 0x0f;
+        } else if ((first & 0xf8) == 0xf0) {
+            extra = 3;
+            code = first & 0x07;
+        } else {
+            text.append('\ufffd');
+            return;
+        }
+        for (int i = 0; i < extra; i++) {
+            int b = next();
+            if ((b & 0xc0) != 0x80) {
+                throw error("Bad UTF-8 sequence");
+            }
+            code = (code << 6) | (b & 0x3f);
+        }
+        text.appendCodePoint(code);
+    }
+
+    private int readInt(int c) throws IOException {
+        boolean negative = c == '-';
+        if (negative) {
+            c = next();
+        }
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            c = next();
+        }
+        pos--; // give back the character after the number
+        return negative ? -value : value;
+    }
+
+    /*
+     * Skips the value that starts with the given character.
+     */
+    private void skipValue(int c) throws IOException {
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                int b = next();
+                if (b == '"') {
+                    skipString();
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+            }
+        } else {
+            // number, true, false or null
+            int b = c;
+            while (b != ',' && b != '}' && b != ']' && b > ' ') {
+                b = next();
+            }
+            pos--;
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int b = next();
+            if (b == '\\') {
+                next();
+            } else if (b == '"') {
+                return;
+            }
+        }
+    }
+
+    private void expect(int wanted) throws IOException {
+        if (skipWhitespace() != wanted) {
+            throw error("Expected '" + (char) wanted + "'");
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        int b = next();
+        while (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+            b = next();
+        }
+        return b;
+    }
+
+    /*
+     * Returns the next byte of the stream, refilling the buffer as needed.
+     */
+    private int next() throws IOException {
+        if (pos == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                throw error("Unexpected end of response");
+            }
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " in joke response.");
+    }
+}
@@ -0,0 +1,73 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class JokeParserTester {
+
+    private static JokeParser.Result parse(String json) throws IOException {
+        return JokeParser.parse(new ByteArrayInputStream(
+                json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testSingle() throws IOException {
+        JokeParser.Result result = parse("{\n    \"error\": false,\n"
+                + "    \"category\": \"Programming\",\n"
+                + "    \"type\": \"single\",\n"
+                + "    \"joke\": \"Line one\\nSaid \\\"hi\\\"\",\n"
+                + "    \"flags\": {\n        \"nsfw\": false,\n"
+                + "        \"list\": [1, \"}\", {}]\n    },\n"
+                + "    \"id\": 42,\n    \"safe\": true,\n"
+                + "    \"lang\": \"en\"\n}");
+
+        assertFalse(result.isError());
+        assertEquals("single", result.getType());
+        assertEquals("Programming", result.getCategory());
+        assertEquals("Line one\nSaid \"hi\"", result.getJoke());
+        assertEquals("Line one\nSaid \"hi\"", result.getText());
+        assertEquals(42, result.getId());
+    }
+
+    @Test
+    public void testTwoPart() throws IOException {
+        JokeParser.Result result = parse("{\"type\":\"twopart\","
+                + "\"setup\":\"Why?\",\"delivery\":\"Because.\",\"id\":7}");
+
+        assertEquals("twopart", result.getType());
+        assertEquals("Why?", result.getSetup());
+        assertEquals("Because.", result.getDelivery());
+        assertEquals("Why?\nBecause.", result.getText());
+        assertNull(result.getJoke());
+        assertEquals(7, result.getId());
+    }
+
+    @Test
+    public void testUnicode() throws IOException {
+        JokeParser.Result result = parse(
+                "{\"joke\":\"caf\\u00e9 na\u00efve \u2603 \ud83d\ude00\"}");
+
+        assertEquals("caf\u00e9 na\u00efve \u2603 \ud83d\ude00",
+                result.getJoke());
+    }
+
+    @Test
+    public void testError() throws IOException {
+        JokeParser.Result result = parse("{\"error\": true, "
+                + "\"internalError\": false, \"code\": 106}");
+
+        assertTrue(result.isError());
+        assertNull(result.getText());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        parse("{\"joke\": \"unterminated");
+    }
+}
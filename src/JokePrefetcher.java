@@ -0,0 +1,196 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * Keeps a bounded queue of already fetched jokes for each category, so that
+ * taking a joke costs a queue poll instead of a network round trip. A
+ * background thread tops a queue back up to its capacity with one concurrent
+ * batch whenever it falls below the low-water mark.
+ *
+ * @author rachelcurci
+ */
+public class JokePrefetcher {
+
+    private final Map<String, BlockingQueue<String>> queues =
+            new ConcurrentHashMap<>();
+    private final Map<String, AtomicBoolean> refilling =
+            new ConcurrentHashMap<>();
+    private final BiFunction<String, Integer, List<FetchResult>> fetcher;
+    private final ScheduledExecutorService executor;
+    private final int capacity;
+    private final int lowWater;
+
+    /**
+     * Constructor that starts prefetching jokes from the JokeAPI for the
+     * given categories.
+     *
+     * @param categories   categories to keep queues for.
+     * @param capacity     maximum number of jokes queued per category.
+     * @param lowWater     queue size below which a category is refilled.
+     * @param refillMillis how often the queues are checked, in milliseconds.
+     */
+    public JokePrefetcher(String[] categories, int capacity, int lowWater,
+            long refillMillis) {
+        this(categories, capacity, lowWater, refillMillis,
+                JokeFetcher::fetchAll);
+    }
+
+    /**
+     * Constructor that starts prefetching jokes from the given source.
+     *
+     * @param categories   categories to keep queues for.
+     * @param capacity     maximum number of jokes queued per category.
+     * @param lowWater     queue size below which a category is refilled.
+     * @param refillMillis how often the queues are checked, in milliseconds.
+     * @param fetcher      fetches a batch of jokes given a category and a
+     *                     count.
+     */
+    public JokePrefetcher(String[] categories, int capacity, int lowWater,
+            long refillMillis,
+            BiFunction<String, Integer, List<FetchResult>> fetcher) {
+        if (capacity < 1 || lowWater < 0 || lowWater > capacity) {
+            throw new IllegalArgumentException(
+                    "Need 0 <= lowWater <= capacity and capacity >= 1");
+        }
+        this.capacity = capacity;
+        this.lowWater = lowWater;
+        this.fetcher = fetcher;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "joke-prefetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (String category : categories) {
+            queues.put(category, new ArrayBlockingQueue<>(capacity));
+            refilling.put(category, new AtomicBoolean());
+        }
+        executor.scheduleWithFixedDelay(this::refillAll, 0, refillMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes a joke of the given category, waiting at most the given time for
+     * the queue. If the queue stays empty, or the category is not prefetched,
+     * the joke is fetched directly.
+     *
+     * @param category  category of the joke.
+     * @param waitMillis how long to wait for a queued joke, in milliseconds.
+     * @return the joke, or why fetching it directly failed.
+     */
+    public FetchResult take(String category, long waitMillis) {
+        BlockingQueue<String> queue = queues.get(category);
+        String joke = null;
+        if (queue != null) {
+            try {
+                joke = queue.poll(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (queue.size() < lowWater) {
+                requestRefill(category);
+            }
+        }
+        if (joke == null) {
+            return fetcher.apply(category, 1).get(0);
+        }
+        return FetchResult.success(joke, 0);
+    }
+
+    /**
+     * Takes up to count jokes of the given category, fetching directly
+     * whatever the queue cannot supply right away.
+     *
+     * @param category category of the jokes.
+     * @param count    number of jokes.
+     * @return the jokes, and why those fetched directly failed.
+     */
+    public List<FetchResult> takeBatch(String category, int count) {
+        List<String> jokes = new ArrayList<>(count);
+        BlockingQueue<String> queue = queues.get(category);
+        if (queue != null) {
+            queue.drainTo(jokes, count);
+            if (queue.size() < lowWater) {
+                requestRefill(category);
+            }
+        }
+        List<FetchResult> results = new ArrayList<>(count);
+        for (String joke : jokes) {
+            results.add(FetchResult.success(joke, 0));
+        }
+        if (results.size() < count) {
+            results.addAll(fetcher.apply(category, count - results.size()));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the number of jokes queued for the given category.
+     *
+     * @param category category of the jokes.
+     * @return number of queued jokes.
+     */
+    public int queued(String category) {
+        BlockingQueue<String> queue = queues.get(category);
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Stops the background refills.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void refillAll() {
+        for (String category : queues.keySet()) {
+            if (queues.get(category).size() < lowWater) {
+                refill(category);
+            }
+        }
+    }
+
+    private void requestRefill(String category) {
+        try {
+            executor.execute(() -> refill(category));
+        } catch (RejectedExecutionException e) {
+            // shut down, nothing left to refill
+        }
+    }
+
+    /*
+     * Tops the queue of a category up to its capacity with one batch. Failed
+     * fetches are dropped instead of being queued.
+     */
+    private void refill(String category) {
+        AtomicBoolean busy = refilling.get(category);
+        if (!busy.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            BlockingQueue<String> queue = queues.get(category);
+            int missing = capacity - queue.size();
+            if (missing <= 0) {
+                return;
+            }
+            for (FetchResult result : fetcher.apply(category, missing)) {
+                if (result.isSuccess()) {
+                    queue.offer(result.getJoke());
+                }
+            }
+        } catch (RuntimeException e) {
+            // keep refilling on the next round
+        } finally {
+            busy.set(false);
+        }
+    }
+}
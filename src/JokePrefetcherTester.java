@@ -0,0 +1,92 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class JokePrefetcherTester {
+
+    private AtomicInteger fetched = new AtomicInteger();
+
+    private List<FetchResult> fetch(String category, int count) {
+        List<FetchResult> jokes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            jokes.add(FetchResult.success(
+                    category + " joke " + fetched.incrementAndGet(), 1));
+        }
+        return jokes;
+    }
+
+    private static List<FetchResult> fail(String category, int count) {
+        List<FetchResult> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(FetchResult.failure(
+                    FetchResult.Failure.RATE_LIMITED, 429, "HTTP 429", 3));
+        }
+        return results;
+    }
+
+    private static void waitFor(JokePrefetcher prefetcher, String category,
+            int size) throws InterruptedException {
+        for (int i = 0; i < 200 && prefetcher.queued(category) < size; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testFillsQueues() throws Exception {
+        JokePrefetcher prefetcher = new JokePrefetcher(
+                new String[] { "Misc", "Programming" }, 4, 2, 10, this::fetch);
+        waitFor(prefetcher, "Misc", 4);
+        waitFor(prefetcher, "Programming", 4);
+
+        assertEquals(4, prefetcher.queued("Misc"));
+        assertEquals(4, prefetcher.queued("Programming"));
+        assertEquals(8, fetched.get());
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void testTakeAndRefill() throws Exception {
+        JokePrefetcher prefetcher = new JokePrefetcher(
+                new String[] { "Misc" }, 4, 2, 60_000, this::fetch);
+        waitFor(prefetcher, "Misc", 4);
+
+        assertEquals("Misc joke 1", prefetcher.take("Misc", 0).getJoke());
+        List<String> jokes = new ArrayList<>();
+        for (FetchResult result : prefetcher.takeBatch("Misc", 3)) {
+            jokes.add(result.getJoke());
+        }
+        assertEquals(List.of("Misc joke 2", "Misc joke 3", "Misc joke 4"),
+                jokes);
+
+        waitFor(prefetcher, "Misc", 4);
+        assertEquals(4, prefetcher.queued("Misc"));
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void testTakeUnknownCategory() {
+        JokePrefetcher prefetcher = new JokePrefetcher(
+                new String[] { "Misc" }, 4, 2, 60_000, this::fetch);
+
+        assertTrue(prefetcher.take("Pun", 0).getJoke()
+                .startsWith("Pun joke"));
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void testFailuresAreNotQueued() throws Exception {
+        JokePrefetcher prefetcher = new JokePrefetcher(
+                new String[] { "Misc" }, 4, 2, 10, JokePrefetcherTester::fail);
+        Thread.sleep(50);
+
+        assertEquals(0, prefetcher.queued("Misc"));
+        FetchResult result = prefetcher.take("Misc", 0);
+        assertEquals(FetchResult.Failure.RATE_LIMITED, result.getFailure());
+        prefetcher.shutdown();
+    }
+}
@@ -2,6 +2,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.junit.Test;
 
 public class JokeTester {
@@ -50,6 +53,33 @@ public class JokeTester {
 
     }
 
+    @Test
+    public void testHashCode() {
+        Joke joke1 = new Joke("Category", "Knock Knock");
+        Joke joke2 = new Joke("Other", "Knock Knock");
+        assertTrue(joke1.equals(joke2));
+        assertEquals(joke1.hashCode(), joke2.hashCode());
+        assertEquals(joke1.fingerprint(), joke2.fingerprint());
+
+        Set<Joke> jokes = new HashSet<>();
+        assertTrue(jokes.add(joke1));
+        assertFalse(jokes.add(joke2));
+        assertTrue(jokes.add(new Joke("Category", "Knock Knack")));
+    }
+
+    @Test
+    public void testCompareToWholeContent() {
+        Joke joke1 = new Joke("Category", "Knock Knock, who is there?");
+        Joke joke2 = new Joke("Category", "Knock Knock, who is where?");
+        assertTrue(joke1.compareTo(joke2) < 0);
+        assertTrue(joke2.compareTo(joke1) > 0);
+        assertFalse(joke1.equals(joke2));
+
+        Joke shortJoke = new Joke("Category", "Knock");
+        assertEquals(0, shortJoke.compareTo(new Joke("Pun", "Knock")));
+        assertTrue(shortJoke.toString().contains("Knock"));
+    }
+
     @Test
     public void testToString() {
 
@@ -71,6 +101,29 @@ public class JokeTester {
         assertEquals(500, bytes2.length);
     }
 
+    @Test
+    public void testFits() {
+        assertTrue(new Joke("Category", "Knock Knock").fits(26));
+        assertFalse(new Joke("Category", "Knock Knock").fits(25));
+        assertFalse(new Joke("Programming and more", "Knock").fits(500));
+    }
+
+    @Test
+    public void testToRecord() {
+        String longContent = "Knock Knock, who's there? \u00e9".repeat(40);
+        Joke joke = new Joke("Programming", longContent);
+        byte[] record = joke.toRecord();
+
+        assertTrue(record.length < 1200);
+        Joke decoded = Joke.fromBytes(record);
+        assertEquals("Programming", decoded.getCategory());
+        assertEquals(longContent, decoded.getContent());
+
+        Joke fixed = Joke.fromBytes(new Joke("Misc", "Short").getBytes(600));
+        assertEquals("Misc", fixed.getCategory());
+        assertEquals("Short", fixed.getContent());
+    }
+
     @Test
     public void testClone() {
         Joke original = new Joke("Category", "Content");
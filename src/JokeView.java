@@ -0,0 +1,310 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read-only view of a joke stored in a section, backed by the bytes of the
+ * section instead of strings. Both layouts read by Joke.fromBytes are
+ * understood. Wrapping a section only finds where the category and the
+ * content are; they are decoded the first time they are asked for.
+ * <p>
+ * contains, indexOf and compareTo work on the bytes directly. UTF-8 is
+ * searched byte for byte, and ASCII content is matched ignoring case without
+ * decoding it. A view is a flyweight: wrap points it at another section, so
+ * scanning a store needs a single view. A view must not outlive the bytes of
+ * its section, and is not safe to share between threads.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public final class JokeView implements Searchable, Comparable<JokeView> {
+
+    private static final byte RECORD_FORMAT = 1;
+    private static final int CATEGORY_BYTES = 15;
+
+    private ByteBuffer bytes = ByteBuffer.allocate(0);
+    private int categoryOffset;
+    private int categoryLength;
+    private int contentOffset;
+    private int contentLength;
+    private int ascii = -1;
+    private String category;
+    private String content;
+
+    /**
+     * Constructor of an empty view, to be pointed at sections with wrap.
+     */
+    public JokeView() {
+    }
+
+    /**
+     * Constructor of a view of the given section.
+     *
+     * @param section bytes of the section, from position to limit.
+     */
+    public JokeView(ByteBuffer section) {
+        wrap(section);
+    }
+
+    /**
+     * Points the view at another section. Bytes that do not hold a joke are
+     * seen as a joke with an empty category and content.
+     *
+     * @param section bytes of the section, from position to limit.
+     * @return this view.
+     */
+    public JokeView wrap(ByteBuffer section) {
+        bytes = section;
+        category = null;
+        content = null;
+        ascii = -1;
+        categoryLength = 0;
+        contentLength = 0;
+
+        int start = section.position();
+        int end = section.limit();
+        if (end > start && section.get(start) == RECORD_FORMAT) {
+            long field = readLength(start + 1, end);
+            int offset = (int) (field >>> 32);
+            int length = (int) field;
+            if (length < 0 || length > end - offset) {
+                return this;
+            }
+            int afterCategory = offset + length;
+            field = readLength(afterCategory, end);
+            int contentStart = (int) (field >>> 32);
+            int contentSize = (int) field;
+            if (contentSize < 0 || contentSize > end - contentStart) {
+                return this;
+            }
+            categoryOffset = offset;
+            categoryLength = length;
+            contentOffset = contentStart;
+            contentLength = contentSize;
+            return this;
+        }
+
+        categoryOffset = start;
+        int categoryEnd = Math.min(end, start + CATEGORY_BYTES);
+        while (categoryOffset + categoryLength < categoryEnd
+                && section.get(categoryOffset + categoryLength) != 0) {
+            categoryLength++;
+        }
+        contentOffset = start + CATEGORY_BYTES;
+        while (contentOffset + contentLength < end
+                && section.get(contentOffset + contentLength) != 0) {
+            contentLength++;
+        }
+        return this;
+    }
+
+    /**
+     * Getter method, decoding the category on first use.
+     *
+     * @return category of the joke.
+     */
+    public String getCategory() {
+        if (category == null) {
+            category = decode(categoryOffset, categoryLength);
+        }
+        return category;
+    }
+
+    /**
+     * Getter method, decoding the content on first use.
+     *
+     * @return content of the joke.
+     */
+    public String getContent() {
+        if (content == null) {
+            content = decode(contentOffset, contentLength);
+        }
+        return content;
+    }
+
+    /**
+     * Copies the joke out of the section.
+     *
+     * @return Joke with the category and content of the view.
+     */
+    public Joke toJoke() {
+        return new Joke(getCategory(), getContent());
+    }
+
+    /**
+     * Checks if the content contains the given key, as Content.contains does,
+     * by searching the UTF-8 bytes of the key in the bytes of the content.
+     */
+    @Override
+    public boolean contains(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int last = contentOffset + contentLength - keyBytes.length;
+        for (int i = contentOffset; i <= last; i++) {
+            if (matches(i, keyBytes, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds all occurrences of the given key in the content, ignoring case,
+     * as Content.indexOf does.
+     */
+    @Override
+    public Integer[] indexOf(String key) {
+        int[] offsets = offsetsOf(key);
+        Integer[] result = new Integer[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            result[i] = offsets[i];
+        }
+        return result;
+    }
+
+    /**
+     * Finds all occurrences of the given key in the content, ignoring case,
+     * and writes their indices into the buffer. ASCII content and keys are
+     * matched on the bytes; anything else is decoded first.
+     */
+    @Override
+    public int indexOf(String key, int[] buffer) {
+        if (!isAscii() || !isAscii(key)) {
+            return new Content(getContent()).indexOf(key, buffer);
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.US_ASCII);
+        int last = keyBytes.length == 0 ? contentLength - 1
+                : contentLength - keyBytes.length;
+        int count = 0;
+        for (int i = 0; i <= last; i++) {
+            if (matches(contentOffset + i, keyBytes, true)) {
+                if (count < buffer.length) {
+                    buffer[count] = i;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds all occurrences of the given key in the content, ignoring case.
+     *
+     * @param key text to find.
+     * @return indices of the occurrences in ascending order.
+     */
+    public int[] offsetsOf(String key) {
+        int[] buffer = new int[8];
+        int count = indexOf(key, buffer);
+        if (count > buffer.length) {
+            buffer = new int[count];
+            indexOf(key, buffer);
+        }
+        return count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * Orders jokes as Joke.compareTo describes: by the length of the content,
+     * then by the content. ASCII content is compared on the bytes.
+     */
+    @Override
+    public int compareTo(JokeView other) {
+        if (isAscii() && other.isAscii()) {
+            int order = Integer.compare(contentLength, other.contentLength);
+            if (order != 0) {
+                return order;
+            }
+            for (int i = 0; i < contentLength; i++) {
+                order = Integer.compare(bytes.get(contentOffset + i),
+                        other.bytes.get(other.contentOffset + i));
+                if (order != 0) {
+                    return Integer.signum(order);
+                }
+            }
+            return 0;
+        }
+        String mine = getContent();
+        String theirs = other.getContent();
+        int order = Integer.compare(mine.length(), theirs.length());
+        if (order != 0) {
+            return order;
+        }
+        return Integer.signum(mine.compareTo(theirs));
+    }
+
+    /**
+     * Returns a String representation of the joke, as Joke does.
+     */
+    @Override
+    public String toString() {
+        return toJoke().toString();
+    }
+
+    /*
+     * Reads a length written by Joke.toRecord at the given index. Returns the
+     * index after it in the high half and the length in the low half, or a
+     * negative length if it runs past the end.
+     */
+    private long readLength(int index, int end) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (index >= end || shift > 28) {
+                return -1L & 0xffffffffL;
+            }
+            b = bytes.get(index++);
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return ((long) index << 32) | (length & 0xffffffffL);
+    }
+
+    private boolean matches(int index, byte[] key, boolean ignoreCase) {
+        for (int j = 0; j < key.length; j++) {
+            byte b = bytes.get(index + j);
+            if (b != key[j] && !(ignoreCase && fold(b) == fold(key[j]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAscii() {
+        if (ascii < 0) {
+            ascii = 1;
+            for (int i = 0; i < contentLength; i++) {
+                if (bytes.get(contentOffset + i) < 0) {
+                    ascii = 0;
+                    break;
+                }
+            }
+        }
+        return ascii == 1;
+    }
+
+    private static boolean isAscii(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    private String decode(int offset, int length) {
+        if (length == 0) {
+            return "";
+        }
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + offset,
+                    length, StandardCharsets.UTF_8);
+        }
+        byte[] copy = new byte[length];
+        bytes.get(offset, copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,89 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class JokeViewTester {
+
+    private static final String TEXT = "Why do Java developers wear glasses? "
+            + "Because they don't C#. JAVA!";
+
+    @Test
+    public void testDecodesBothLayouts() {
+        Joke joke = new Joke("Programming", TEXT);
+        JokeView record = new JokeView(ByteBuffer.wrap(joke.toRecord()));
+        JokeView fixed = new JokeView(ByteBuffer.wrap(joke.getBytes(600)));
+
+        assertEquals("Programming", record.getCategory());
+        assertEquals(TEXT, record.getContent());
+        assertEquals("Programming", fixed.getCategory());
+        assertEquals(TEXT, fixed.getContent());
+        assertEquals(TEXT, fixed.toJoke().getContent());
+    }
+
+    @Test
+    public void testSearchMatchesJoke() {
+        Joke joke = new Joke("Programming", TEXT);
+        JokeView view = new JokeView(ByteBuffer.wrap(joke.toRecord()));
+
+        assertTrue(view.contains("C#"));
+        assertFalse(view.contains("java developers"));
+        for (String key : new String[] { "java", "A", "", "glasses?", "x" }) {
+            assertArrayEquals(joke.offsetsOf(key), view.offsetsOf(key));
+            assertArrayEquals(joke.indexOf(key), view.indexOf(key));
+        }
+    }
+
+    @Test
+    public void testSearchNonAscii() {
+        Joke joke = new Joke("Misc", "Caf\u00e9 jokes are tr\u00e8s CAF\u00c9");
+        JokeView view = new JokeView(ByteBuffer.wrap(joke.toRecord()));
+
+        assertTrue(view.contains("tr\u00e8s"));
+        assertArrayEquals(joke.offsetsOf("caf\u00e9"),
+                view.offsetsOf("caf\u00e9"));
+        assertArrayEquals(joke.offsetsOf("jokes"), view.offsetsOf("jokes"));
+    }
+
+    @Test
+    public void testWrapReusesView() {
+        JokeView view = new JokeView();
+        ByteBuffer first = ByteBuffer
+                .wrap(new Joke("Pun", "first joke").toRecord());
+        ByteBuffer second = ByteBuffer
+                .wrap(new Joke("Dark", "second joke").toRecord());
+
+        assertEquals("first joke", view.wrap(first).getContent());
+        assertEquals("Dark", view.wrap(second).getCategory());
+        assertEquals("second joke", view.getContent());
+    }
+
+    @Test
+    public void testCompareTo() {
+        JokeView shorter = new JokeView(
+                ByteBuffer.wrap(new Joke("Pun", "a short one").toRecord()));
+        JokeView longer = new JokeView(ByteBuffer
+                .wrap(new Joke("Pun", "a much longer one").toRecord()));
+        JokeView sameLength = new JokeView(
+                ByteBuffer.wrap(new Joke("Pun", "b short one").toRecord()));
+
+        assertTrue(shorter.compareTo(longer) < 0);
+        assertTrue(longer.compareTo(shorter) > 0);
+        assertTrue(shorter.compareTo(sameLength) < 0);
+        assertEquals(0, shorter.compareTo(shorter));
+    }
+
+    @Test
+    public void testBrokenRecordIsEmpty() {
+        byte[] broken = { 1, 100, 'a', 'b' };
+        JokeView view = new JokeView(ByteBuffer.wrap(broken));
+
+        assertEquals("", view.getCategory());
+        assertEquals("", view.getContent());
+        assertFalse(view.contains("a"));
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * Precompiled, case-insensitive search key using the Boyer-Moore-Horspool
+ * algorithm. Compiling the key once pays off when the same key is searched
+ * for in many texts, since each text is then scanned with skips instead of
+ * being compared at every position.
+ *
+ * @author rachelcurci
+ */
+public final class KeyPattern {
+
+    private static final int TABLE_SIZE = 256;
+
+    private final char[] folded;
+    private final int[] shift = new int[TABLE_SIZE];
+
+    private KeyPattern(String key) {
+        int m = key.length();
+        folded = new char[m];
+        for (int i = 0; i < m; i++) {
+            folded[i] = fold(key.charAt(i));
+        }
+        // Characters are bucketed by their low byte; a bucket keeps the
+        // smallest shift of its characters, which never skips a match.
+        Arrays.fill(shift, Math.max(m, 1));
+        for (int i = 0; i < m - 1; i++) {
+            shift[folded[i] & (TABLE_SIZE - 1)] = m - 1 - i;
+        }
+    }
+
+    /**
+     * Compiles the given key.
+     *
+     * @param key text to search for.
+     * @return the compiled key.
+     */
+    public static KeyPattern compile(String key) {
+        return new KeyPattern(key);
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return length of the key.
+     */
+    public int length() {
+        return folded.length;
+    }
+
+    /**
+     * Finds the first occurrence of the key at or after the given position,
+     * ignoring case.
+     *
+     * @param text text to search in.
+     * @param from first position to consider.
+     * @return position of the occurrence, or -1 if there is none.
+     */
+    public int find(CharSequence text, int from) {
+        int m = folded.length;
+        int n = text.length();
+        if (m == 0) {
+            return from < n ? from : -1;
+        }
+        int last = m - 1;
+        int i = Math.max(from, 0);
+        while (i <= n - m) {
+            char c = fold(text.charAt(i + last));
+            if (c == folded[last]) {
+                int j = last - 1;
+                while (j >= 0 && fold(text.charAt(i + j)) == folded[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shift[c & (TABLE_SIZE - 1)];
+        }
+        return -1;
+    }
+
+    /**
+     * Finds all occurrences of the key, ignoring case, including overlapping
+     * ones. The positions are written to the buffer in ascending order; if
+     * there are more than fit, the rest are counted but not written.
+     *
+     * @param text   text to search in.
+     * @param buffer array receiving the positions.
+     * @return total number of occurrences.
+     */
+    public int findAll(CharSequence text, int[] buffer) {
+        int count = 0;
+        int i = find(text, 0);
+        while (i >= 0) {
+            if (count < buffer.length) {
+                buffer[count] = i;
+            }
+            count++;
+            i = find(text, i + 1);
+        }
+        return count;
+    }
+
+    /*
+     * Folds a character the way String.regionMatches does when ignoring
+     * case.
+     */
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Storage that memory-maps the whole file with FileChannel.map. Reads and
+ * writes are plain memory copies and slice returns views of the mapping
+ * without copying.
+ * <p>
+ * The mapping is grown ahead of the data by doubling, which also grows the
+ * file, so the logical length is tracked separately and the file is cut back
+ * to it on close. A single mapping is limited to 2 GB.
+ * </p>
+ * <p>
+ * While the file is open, the logical length and the size the file was
+ * grown to are kept in path + ".len", itself memory-mapped so that keeping
+ * it current costs a memory write. A clean close deletes it. If it is found
+ * on opening, the program did not close the file, and the file is cut back
+ * to the recorded length, unless its size shows that it was written since
+ * without this class.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class MappedStorage implements Storage {
+
+    private static final int MIN_CAPACITY = 1 << 20;
+
+    private final File lengthFile;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private RandomAccessFile lengthRaf;
+    private MappedByteBuffer lengthMap;
+    private long length;
+
+    /**
+     * Constructor that opens and maps the file at the given path.
+     *
+     * @param path path of the file.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public MappedStorage(String path) throws IOException {
+        this.lengthFile = new File(path + ".len");
+        this.raf = new RandomAccessFile(path, "rw");
+        this.channel = raf.getChannel();
+        this.length = recoverLength();
+        remap(length);
+    }
+
+    @Override
+    public synchronized long length() {
+        return length;
+    }
+
+    @Override
+    public synchronized int read(long position, byte[] dst, int offset,
+            int count) {
+        int n = available(position, count);
+        if (n > 0) {
+            map.get((int) position, dst, offset, n);
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized void write(long position, byte[] src, int offset,
+            int count) throws IOException {
+        long end = position + count;
+        if (end > map.capacity()) {
+            remap(Math.max(end, Math.max(MIN_CAPACITY, 2L * map.capacity())));
+        }
+        map.put((int) position, src, offset, count);
+        if (end > length) {
+            length = end;
+            lengthMap.putLong(0, length);
+        }
+    }
+
+    @Override
+    public synchronized ByteBuffer slice(long position, int count) {
+        int n = available(position, count);
+        return map.slice((int) position, n).asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void force() {
+        map.force();
+        lengthMap.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        map = null;
+        channel.truncate(length);
+        raf.close();
+        lengthMap = null;
+        lengthRaf.close();
+        lengthFile.delete();
+    }
+
+    /*
+     * Opens the length sidecar and returns the logical length of the file:
+     * the recorded one if the file was left open by this class, and its
+     * size otherwise.
+     */
+    private long recoverLength() throws IOException {
+        long size = channel.size();
+        long recovered = size;
+        boolean left = lengthFile.length() == 16;
+        lengthRaf = new RandomAccessFile(lengthFile, "rw");
+        lengthMap = lengthRaf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                0, 16);
+        if (left) {
+            long recorded = lengthMap.getLong(0);
+            if (recorded >= 0 && recorded <= size
+                    && lengthMap.getLong(8) == size) {
+                recovered = recorded;
+                channel.truncate(recovered);
+            }
+        }
+        lengthMap.putLong(0, recovered);
+        return recovered;
+    }
+
+    /*
+     * Number of bytes that can be read at the position, at most count.
+     */
+    private int available(long position, int count) {
+        if (position >= length) {
+            return 0;
+        }
+        return (int) Math.min(count, length - position);
+    }
+
+    /*
+     * Replaces the mapping with one of the given capacity. The old mapping
+     * is forced and dropped; it cannot be unmapped at once, since buffers
+     * returned by slice may still be views of it, and is released by the
+     * garbage collector when the last of them is.
+     */
+    private void remap(long capacity) throws IOException {
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("Mapped storage is limited to 2 GB.");
+        }
+        if (map != null) {
+            map.force();
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        lengthMap.putLong(8, Math.max(capacity, length));
+    }
+}
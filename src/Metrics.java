@@ -0,0 +1,215 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Built-in instrumentation of the joke store: the latency of fetching a
+ * joke, of the duplicate check in FileManager.indexOf and of section reads
+ * and writes, and counters of failed fetches, duplicate retries and section
+ * cache hits, misses and evictions.
+ * <p>
+ * Metrics are off unless the jokes.metrics system property is true or they
+ * are turned on with setEnabled, and then cost a single volatile read per
+ * operation. register exposes them as MBeans under the "jokes" domain, where
+ * they can also be turned on and off.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public final class Metrics implements MetricsMBean {
+
+    /** Fetching one joke from the JokeAPI. */
+    public static final OperationStats FETCH = new OperationStats("fetch");
+    /** Looking a section up in FileManager.indexOf. */
+    public static final OperationStats DEDUP = new OperationStats("dedup");
+    /** Reading a section. */
+    public static final OperationStats READ = new OperationStats("read");
+    /** Writing a section or a batch of sections. */
+    public static final OperationStats WRITE = new OperationStats("write");
+
+    private static final OperationStats[] OPERATIONS = { FETCH, DEDUP, READ,
+            WRITE };
+    private static final Metrics INSTANCE = new Metrics();
+    private static final LongAdder FETCH_FAILURES = new LongAdder();
+    private static final LongAdder FETCH_RETRIES = new LongAdder();
+    private static final LongAdder DEDUP_RETRIES = new LongAdder();
+    private static final LongAdder DEDUP_CANDIDATES = new LongAdder();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+    private static final LongAdder CACHE_EVICTIONS = new LongAdder();
+
+    private static volatile boolean enabled = Boolean
+            .getBoolean("jokes.metrics");
+
+    private Metrics() {
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, as
+     * jokes:type=Metrics and jokes:type=Operation,name=... for each
+     * operation. Registering again does nothing.
+     */
+    public static synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("jokes:type=Metrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+            for (OperationStats operation : OPERATIONS) {
+                name = new ObjectName("jokes:type=Operation,name="
+                        + operation.getName());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(operation, name);
+                }
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics", e);
+        }
+    }
+
+    /**
+     * Returns the instance behind the jokes:type=Metrics MBean.
+     *
+     * @return the metrics.
+     */
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Checks if metrics are on, without going through the instance.
+     *
+     * @return true if operations are being timed and counted.
+     */
+    public static boolean on() {
+        return enabled;
+    }
+
+    /**
+     * Counts a fetch that failed after its last attempt.
+     */
+    public static void fetchFailed() {
+        if (enabled) {
+            FETCH_FAILURES.increment();
+        }
+    }
+
+    /**
+     * Counts a request made again after a transient failure.
+     */
+    public static void fetchRetried() {
+        if (enabled) {
+            FETCH_RETRIES.increment();
+        }
+    }
+
+    /**
+     * Counts a joke fetched again because it was a duplicate.
+     */
+    public static void dedupRetried() {
+        if (enabled) {
+            DEDUP_RETRIES.increment();
+        }
+    }
+
+    /**
+     * Counts sections compared by a duplicate check.
+     *
+     * @param sections number of sections compared.
+     */
+    public static void dedupCompared(int sections) {
+        if (enabled) {
+            DEDUP_CANDIDATES.add(sections);
+        }
+    }
+
+    /**
+     * Counts a section read from a SectionCache.
+     */
+    public static void cacheHit() {
+        if (enabled) {
+            CACHE_HITS.increment();
+        }
+    }
+
+    /**
+     * Counts a section looked up in a SectionCache and read from the file.
+     */
+    public static void cacheMissed() {
+        if (enabled) {
+            CACHE_MISSES.increment();
+        }
+    }
+
+    /**
+     * Counts a section evicted from a SectionCache.
+     */
+    public static void cacheEvicted() {
+        if (enabled) {
+            CACHE_EVICTIONS.increment();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    @Override
+    public long getFetchFailures() {
+        return FETCH_FAILURES.sum();
+    }
+
+    @Override
+    public long getFetchRetries() {
+        return FETCH_RETRIES.sum();
+    }
+
+    @Override
+    public long getDedupRetries() {
+        return DEDUP_RETRIES.sum();
+    }
+
+    @Override
+    public long getDedupCandidates() {
+        return DEDUP_CANDIDATES.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return CACHE_EVICTIONS.sum();
+    }
+
+    @Override
+    public void reset() {
+        FETCH_FAILURES.reset();
+        FETCH_RETRIES.reset();
+        DEDUP_RETRIES.reset();
+        DEDUP_CANDIDATES.reset();
+        CACHE_HITS.reset();
+        CACHE_MISSES.reset();
+        CACHE_EVICTIONS.reset();
+        for (OperationStats operation : OPERATIONS) {
+            operation.reset();
+        }
+    }
+}
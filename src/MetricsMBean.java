@@ -0,0 +1,76 @@
+/**
+ * JMX view of the switch and the counters of the metrics.
+ *
+ * @author rachelcurci
+ */
+public interface MetricsMBean {
+
+    /**
+     * Getter method.
+     *
+     * @return true if operations are being timed and counted.
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns timing and counting on or off.
+     *
+     * @param enabled true to turn them on.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Getter method.
+     *
+     * @return number of fetches that failed after their last attempt.
+     */
+    long getFetchFailures();
+
+    /**
+     * Getter method.
+     *
+     * @return number of requests made again after a transient failure.
+     */
+    long getFetchRetries();
+
+    /**
+     * Getter method.
+     *
+     * @return number of jokes fetched again because they were duplicates.
+     */
+    long getDedupRetries();
+
+    /**
+     * Getter method.
+     *
+     * @return number of sections compared byte for byte by indexOf.
+     */
+    long getDedupCandidates();
+
+    /**
+     * Getter method.
+     *
+     * @return number of sections read from a section cache.
+     */
+    long getCacheHits();
+
+    /**
+     * Getter method.
+     *
+     * @return number of sections looked up in a section cache and read from
+     *         the file.
+     */
+    long getCacheMisses();
+
+    /**
+     * Getter method.
+     *
+     * @return number of sections evicted from a section cache.
+     */
+    long getCacheEvictions();
+
+    /**
+     * Clears the counters and the statistics of every operation.
+     */
+    void reset();
+}
@@ -0,0 +1,106 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsTester {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jokes", ".dat");
+        Metrics.get().reset();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.get().setEnabled(false);
+        Metrics.get().reset();
+        new File(file.getPath() + ".fp").delete();
+        file.delete();
+    }
+
+    @Test
+    public void testDisabledRecordsNothing() throws Exception {
+        FileManager fm = new FileManager(file.getPath(), 32);
+        fm.write(0, new byte[32]);
+        fm.read(0);
+        fm.close();
+
+        assertEquals(0, Metrics.READ.getCount());
+        assertEquals(0, Metrics.WRITE.getCount());
+    }
+
+    @Test
+    public void testStorageOperations() throws Exception {
+        Metrics.get().setEnabled(true);
+        FileManager fm = new FileManager(file.getPath(), 32);
+        fm.write(0, new byte[32]);
+        fm.writeBatch(new int[] { 1, 2 }, new byte[][] { new byte[32],
+                new byte[32] });
+        fm.read(1);
+        fm.readBuffer(2);
+        assertEquals(0, fm.indexOf(new byte[32]));
+        fm.close();
+
+        assertEquals(2, Metrics.WRITE.getCount());
+        assertEquals(2, Metrics.READ.getCount());
+        assertEquals(1, Metrics.DEDUP.getCount());
+        assertEquals(1, Metrics.get().getDedupCandidates());
+        assertTrue(Metrics.READ.getMaxMicros() > 0);
+        assertTrue(Metrics.READ.getP50Micros() <= Metrics.READ
+                .getMaxMicros());
+    }
+
+    @Test
+    public void testPercentiles() {
+        OperationStats stats = new OperationStats("test");
+        for (int i = 1; i <= 1000; i++) {
+            stats.record(i * 1000L);
+        }
+
+        assertEquals(1000, stats.getCount());
+        assertEquals(500.5, stats.getMeanMicros(), 0.001);
+        assertEquals(1000, stats.getMaxMicros(), 0.001);
+        assertEquals(500, stats.getP50Micros(), 125);
+        assertEquals(990, stats.getP99Micros(), 10 + 990 / 4);
+        stats.reset();
+        assertEquals(0, stats.getP99Micros(), 0);
+    }
+
+    @Test
+    public void testBuckets() {
+        for (long nanos : new long[] { 0, 3, 4, 7, 8, 9, 100, 1L << 40 }) {
+            int bucket = OperationStats.bucket(nanos);
+            assertTrue(OperationStats.upperBound(bucket) >= nanos);
+            assertTrue(bucket == 0
+                    || OperationStats.upperBound(bucket - 1) < nanos);
+        }
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        Metrics.register();
+        Metrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName metrics = new ObjectName("jokes:type=Metrics");
+        server.setAttribute(metrics,
+                new Attribute("Enabled", true));
+        assertTrue(Metrics.on());
+
+        Metrics.FETCH.record(2000);
+        assertEquals(1L, server.getAttribute(
+                new ObjectName("jokes:type=Operation,name=fetch"), "Count"));
+        assertEquals(0L, server.getAttribute(metrics, "FetchFailures"));
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index from the SimHash signature of the joke in each section to the
+ * section, which finds stored jokes that are nearly the same as a new one:
+ * the same words with different spacing, punctuation, case or category.
+ * <p>
+ * Two jokes are near-duplicates when their signatures differ in at most
+ * maxDistance bits. Signatures are cut into maxDistance + 1 bands, and each
+ * band value maps to the sections having it. Two signatures that close
+ * always share at least one band, so a lookup only compares the signatures
+ * of the sections in the buckets of its own bands instead of every stored
+ * joke.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class NearDuplicateIndex extends SectionIndex {
+
+    private static final int MAGIC = 0x4a4b5348; // "JKSH"
+    private static final int[] NONE = new int[0];
+
+    /** Largest maxDistance, which leaves bands of 4 bits. */
+    public static final int MAX_DISTANCE = 15;
+
+    private final int maxDistance;
+    private final int[] bandShifts;
+    private final long[] bandMasks;
+    private final Map<Long, int[]> buckets = new HashMap<>();
+    private long[] signatures = new long[16];
+    private final BitSet signed = new BitSet();
+    private int sections;
+
+    /**
+     * Constructor.
+     *
+     * @param sidecarPath path of the sidecar file.
+     * @param maxDistance most bits in which the signatures of two
+     *                    near-duplicate jokes differ, from 0 to
+     *                    MAX_DISTANCE.
+     */
+    public NearDuplicateIndex(String sidecarPath, int maxDistance) {
+        super(sidecarPath);
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Need 0 <= maxDistance <= "
+                    + MAX_DISTANCE);
+        }
+        this.maxDistance = maxDistance;
+        int bands = maxDistance + 1;
+        this.bandShifts = new int[bands];
+        this.bandMasks = new long[bands];
+        int shift = 0;
+        for (int band = 0; band < bands; band++) {
+            int width = (64 - shift) / (bands - band);
+            bandShifts[band] = shift;
+            bandMasks[band] = width == 64 ? -1L : (1L << width) - 1;
+            shift += width;
+        }
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return most bits in which near-duplicate signatures differ.
+     */
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Finds the lowest section holding a near-duplicate of the given joke.
+     *
+     * @param joke Joke to look for.
+     * @return section, or -1 if no stored joke is near it.
+     */
+    public int nearest(Joke joke) {
+        if (joke.getContent().isEmpty()) {
+            return -1;
+        }
+        return nearest(SimHash.of(joke.getContent()));
+    }
+
+    /**
+     * Finds the lowest section whose signature is within maxDistance bits
+     * of the given one.
+     *
+     * @param signature SimHash signature of a joke's content.
+     * @return section, or -1 if there is none.
+     */
+    public synchronized int nearest(long signature) {
+        int found = -1;
+        for (int band = 0; band < bandShifts.length; band++) {
+            for (int section : bucket(band, signature)) {
+                if (found >= 0 && section >= found) {
+                    break;
+                }
+                if (SimHash.distance(signature,
+                        signatures[section]) <= maxDistance) {
+                    found = section;
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    protected int magic() {
+        return MAGIC;
+    }
+
+    @Override
+    protected synchronized void clear() {
+        sections = 0;
+        signed.clear();
+        buckets.clear();
+    }
+
+    @Override
+    protected synchronized void sectionWritten(int index, byte[] data) {
+        if (index < sections) {
+            if (signed.get(index)) {
+                unlink(signatures[index], index);
+                signed.clear(index);
+            }
+        } else {
+            // FileManager reports new sections in order, so the section
+            // written here is always the one right after the last.
+            ensureCapacity(index + 1);
+            sections = index + 1;
+        }
+        String content = Joke.fromBytes(data).getContent();
+        if (!content.isEmpty()) {
+            signatures[index] = SimHash.of(content);
+            signed.set(index);
+            link(signatures[index], index);
+        }
+    }
+
+    @Override
+    protected void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(maxDistance);
+        for (int i = 0; i < sections; i++) {
+            out.writeBoolean(signed.get(i));
+            out.writeLong(signatures[i]);
+        }
+    }
+
+    @Override
+    protected void readFrom(DataInputStream in, int count) throws IOException {
+        if (in.readInt() != maxDistance) {
+            throw new IOException("Index built for another distance");
+        }
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            boolean isSigned = in.readBoolean();
+            signatures[i] = in.readLong();
+            if (isSigned) {
+                signed.set(i);
+                link(signatures[i], i);
+            }
+        }
+        sections = count;
+    }
+
+    /*
+     * Sections whose signature has the same value in the band, ascending.
+     */
+    private int[] bucket(int band, long signature) {
+        int[] list = buckets.get(key(band, signature));
+        return list == null ? NONE : list;
+    }
+
+    private long key(int band, long signature) {
+        return (long) band << 56
+                | (signature >>> bandShifts[band] & bandMasks[band]);
+    }
+
+    /*
+     * Adds a section to the sorted bucket of each band of its signature.
+     */
+    private void link(long signature, int index) {
+        for (int band = 0; band < bandShifts.length; band++) {
+            long key = key(band, signature);
+            int[] list = buckets.get(key);
+            if (list == null) {
+                buckets.put(key, new int[] { index });
+                continue;
+            }
+            int pos = Arrays.binarySearch(list, index);
+            if (pos >= 0) {
+                continue;
+            }
+            pos = -pos - 1;
+            int[] grown = new int[list.length + 1];
+            System.arraycopy(list, 0, grown, 0, pos);
+            grown[pos] = index;
+            System.arraycopy(list, pos, grown, pos + 1, list.length - pos);
+            buckets.put(key, grown);
+        }
+    }
+
+    /*
+     * Removes a section from the buckets of its signature.
+     */
+    private void unlink(long signature, int index) {
+        for (int band = 0; band < bandShifts.length; band++) {
+            long key = key(band, signature);
+            int[] list = buckets.get(key);
+            if (list == null) {
+                continue;
+            }
+            int pos = Arrays.binarySearch(list, index);
+            if (pos < 0) {
+                continue;
+            }
+            if (list.length == 1) {
+                buckets.remove(key);
+                continue;
+            }
+            int[] shrunk = new int[list.length - 1];
+            System.arraycopy(list, 0, shrunk, 0, pos);
+            System.arraycopy(list, pos + 1, shrunk, pos,
+                    list.length - pos - 1);
+            buckets.put(key, shrunk);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > signatures.length) {
+            signatures = Arrays.copyOf(signatures,
+                    Math.max(count, signatures.length * 2));
+        }
+    }
+}
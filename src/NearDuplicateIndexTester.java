@@ -0,0 +1,167 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NearDuplicateIndexTester {
+
+    private static final String CHICKEN = "Why did the chicken cross the "
+            + "road? To get to the other side.";
+    private static final String SQL = "A SQL query walks into a bar, walks "
+            + "up to two tables and asks: can I join you?";
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jokes", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        for (String suffix : new String[] { ".fp", ".tri", ".cat", ".sim" }) {
+            new File(file.getPath() + suffix).delete();
+        }
+        file.delete();
+    }
+
+    private AppService store() throws Exception {
+        return new AppService(file.getPath(), new StoreConfig()
+                .setSecSize(200).setNearDuplicates(3));
+    }
+
+    @Test
+    public void testSignatures() {
+        long chicken = SimHash.of(CHICKEN);
+
+        assertEquals(0, SimHash.distance(chicken, SimHash.of(
+                "why did the CHICKEN cross the road ... to get to the "
+                        + "other side!!")));
+        assertTrue(SimHash.distance(chicken, SimHash.of(SQL)) > 3);
+        assertEquals(0, SimHash.of(" ?! "));
+    }
+
+    @Test
+    public void testRejectsNearDuplicates() throws Exception {
+        AppService service = store();
+
+        assertTrue(service.saveJoke(new Joke("Misc", CHICKEN)));
+        assertFalse(service.saveJoke(new Joke("Pun", "Why  did the chicken "
+                + "cross the road?\nTo get to the other side")));
+        assertTrue(service.saveJoke(new Joke("Programming", SQL)));
+        assertEquals(1, service.getNearDuplicateIndex()
+                .nearest(new Joke("Misc", SQL.toUpperCase())));
+        assertFalse(service.isNearDuplicate(new Joke("Misc",
+                "Debugging: removing the needles from the haystack.")));
+        service.close();
+    }
+
+    @Test
+    public void testAppendLeavesOutNearDuplicates() throws Exception {
+        AppService service = store();
+        service.saveJoke(new Joke("Misc", CHICKEN));
+        int stored = service.appendJokes(List.of(
+                service.encode(new Joke("Misc", CHICKEN + " ")),
+                service.encode(new Joke("Programming", SQL)),
+                service.encode(new Joke("Misc", "a sql query walks into a "
+                        + "bar walks up to two tables and asks can i join "
+                        + "you"))));
+
+        assertEquals(1, stored);
+        assertEquals(2, service.size());
+        service.close();
+    }
+
+    @Test
+    public void testSaveJokesGivesUpOnDuplicates() throws Exception {
+        AppService service = store();
+        AtomicInteger fetches = new AtomicInteger();
+        service.enablePrefetch(new JokePrefetcher(new String[0], 1, 0,
+                60_000, (category, count) -> {
+                    if (count > 1) {
+                        return List.of(FetchResult.success(CHICKEN, 1),
+                                FetchResult.success(CHICKEN + "!", 1),
+                                FetchResult.success(SQL, 1));
+                    }
+                    // a category with no new jokes, with the API failing
+                    // once in between
+                    if (fetches.incrementAndGet() == 5) {
+                        return List.of(FetchResult.failure(
+                                FetchResult.Failure.SERVER_ERROR, 503,
+                                "HTTP 503", 1));
+                    }
+                    return List.of(FetchResult.success(CHICKEN, 1));
+                }));
+
+        service.saveJokes("Misc", 3);
+        assertEquals(2, service.size());
+        assertEquals(5, fetches.get());
+        assertFalse(service.saveJoke("Misc"));
+        assertEquals(2, service.size());
+        assertEquals(16, fetches.get());
+        service.close();
+    }
+
+    @Test
+    public void testSaveJokesFetchesOutsideTheLock() throws Exception {
+        AppService service = store();
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch saved = new CountDownLatch(1);
+        service.enablePrefetch(new JokePrefetcher(new String[0], 1, 0,
+                60_000, (category, count) -> {
+                    fetching.countDown();
+                    try {
+                        saved.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return List.of(FetchResult.success(CHICKEN, 1),
+                            FetchResult.success(SQL, 1));
+                }));
+        Thread batch = new Thread(() -> {
+            try {
+                service.saveJokes("Misc", 2);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        batch.start();
+
+        assertTrue(fetching.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        assertTrue(service.saveJoke(new Joke("Programming", SQL)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        saved.countDown();
+        batch.join();
+
+        assertEquals(2, service.size());
+        assertEquals("Programming", service.getCategoryIndex().categoryOf(0));
+        service.close();
+    }
+
+    @Test
+    public void testOverwriteAndPersistence() throws Exception {
+        AppService service = store();
+        service.saveJoke(new Joke("Misc", CHICKEN));
+        service.saveJoke(new Joke("Programming", SQL));
+        service.write(0, service.encode(new Joke("Misc", "No chickens")));
+        assertFalse(service.isNearDuplicate(new Joke("Misc", CHICKEN)));
+        service.close();
+        assertTrue(new File(file.getPath() + ".sim").isFile());
+
+        service = store();
+        assertEquals(0, service.getNearDuplicateIndex()
+                .nearest(new Joke("Misc", "no chickens!")));
+        assertTrue(service.isNearDuplicate(new Joke("Misc", SQL)));
+        service.close();
+    }
+}
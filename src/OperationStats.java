@@ -0,0 +1,172 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count and latency histogram of one kind of operation. Latencies go into
+ * buckets of a quarter of a power of two, so percentiles are accurate to
+ * within 25%, and recording one is a few uncontended atomic adds.
+ * <p>
+ * Operations are timed with start and stop, which do nothing while metrics
+ * are disabled:
+ * </p>
+ * 
+ * <pre>
+ * long start = Metrics.READ.start();
+ * ...
+ * Metrics.READ.stop(start);
+ * </pre>
+ *
+ * @author rachelcurci
+ */
+public class OperationStats implements OperationStatsMBean {
+
+    private static final int BUCKETS = 64 * 4;
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max,
+            0);
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Constructor.
+     *
+     * @param name name of the operation.
+     */
+    public OperationStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return name of the operation.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @return start time to pass to stop, or 0 if metrics are disabled.
+     */
+    public long start() {
+        return Metrics.on() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stops timing an operation started with start.
+     *
+     * @param start value returned by start.
+     */
+    public void stop(long start) {
+        if (start != 0) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records an operation that took the given time.
+     *
+     * @param nanos latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        buckets.incrementAndGet(bucket(nanos));
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public double getP99Micros() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public double getP999Micros() {
+        return percentile(0.999);
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    /**
+     * Returns the latency below which the given fraction of the operations
+     * fall, as the upper bound of its bucket.
+     *
+     * @param fraction fraction of the operations, between 0 and 1.
+     * @return latency in microseconds, 0 if nothing was recorded.
+     */
+    public double percentile(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long wanted = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, wanted)) {
+                return Math.min(upperBound(i), maxNanos.get()) / 1000.0;
+            }
+        }
+        return maxNanos.get() / 1000.0;
+    }
+
+    /*
+     * Bucket of a latency: the power of two below it and the next two bits,
+     * with 0 to 3 nanoseconds in buckets of their own.
+     */
+    static int bucket(long nanos) {
+        if (nanos < 4) {
+            return (int) nanos;
+        }
+        int log = 63 - Long.numberOfLeadingZeros(nanos);
+        return log * 4 + (int) ((nanos >>> (log - 2)) & 3);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int log = bucket / 4;
+        return ((5L + bucket % 4) << (log - 2)) - 1;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * JMX view of the count and latency of an operation.
+ *
+ * @author rachelcurci
+ */
+public interface OperationStatsMBean {
+
+    /**
+     * Getter method.
+     *
+     * @return number of operations timed.
+     */
+    long getCount();
+
+    /**
+     * Getter method.
+     *
+     * @return mean latency in microseconds.
+     */
+    double getMeanMicros();
+
+    /**
+     * Getter method.
+     *
+     * @return highest latency in microseconds.
+     */
+    double getMaxMicros();
+
+    /**
+     * Getter method.
+     *
+     * @return median latency in microseconds.
+     */
+    double getP50Micros();
+
+    /**
+     * Getter method.
+     *
+     * @return 99th percentile of the latency in microseconds.
+     */
+    double getP99Micros();
+
+    /**
+     * Getter method.
+     *
+     * @return 99.9th percentile of the latency in microseconds.
+     */
+    double getP999Micros();
+
+    /**
+     * Clears the count and the latencies.
+     */
+    void reset();
+}
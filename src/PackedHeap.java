@@ -0,0 +1,627 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Packed layout of a FileManager file: records of any length stored one after
+ * the other, found through a slot directory of offsets and lengths.
+ * <p>
+ * The file starts with a header, followed by frames. Each frame is the slot
+ * number, the capacity and the length of the record, followed by the record
+ * and any unused capacity. A record is rewritten in place when it fits its
+ * frame and is otherwise appended in a new frame, and the old frame is marked
+ * dead. The directory is therefore derivable from the file: it is saved to
+ * path + ".dir" on close and rebuilt by scanning the frames when that is
+ * missing, with the last frame of a slot winning.
+ * </p>
+ * <p>
+ * Dead frames are reclaimed by compact, which writes the live records in slot
+ * order to a new file and renames it over the old one.
+ * </p>
+ * <p>
+ * Records can be stored compressed by a RecordCodec. The header then holds
+ * the codec and its dictionary, and frames hold the compressed bytes;
+ * read and slice return the records as they were written. Compacting with
+ * another codec converts every record.
+ * </p>
+ * <p>
+ * The heap is safe to share between threads: reads hold a shared lock, and
+ * writes, which can move a record and change the directory, an exclusive one.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class PackedHeap {
+
+    static final int MAGIC = 0x4a4b4850; // "JKHP"
+    static final int VERSION = 1;
+    static final int COMPRESSED_VERSION = 2;
+    static final int FRAME_HEADER = 12;
+
+    private static final int DIR_MAGIC = 0x4a4b4452; // "JKDR"
+    private static final int DEAD = -1;
+
+    private final String path;
+    private final FileManager.Mode mode;
+    private Storage storage;
+    private int headerLength;
+    private RecordCodec codec = RecordCodec.IDENTITY;
+
+    private long[] offsets = new long[16];
+    private int[] lengths = new int[16];
+    private int[] capacities = new int[16];
+    private volatile int slots;
+    private long liveBytes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructor that opens or creates the packed file at the given path.
+     *
+     * @param path path of the file.
+     * @param mode how the file is accessed.
+     * @throws IOException if the file cannot be opened or is not a packed
+     *                     file.
+     */
+    public PackedHeap(String path, FileManager.Mode mode) throws IOException {
+        this(path, mode, RecordCodec.IDENTITY);
+    }
+
+    /**
+     * Constructor that opens the packed file at the given path, or creates it
+     * with records stored by the given codec. An existing file keeps the
+     * codec in its header.
+     *
+     * @param path  path of the file.
+     * @param mode  how the file is accessed.
+     * @param codec how records of a new file are stored.
+     * @throws IOException if the file cannot be opened or is not a packed
+     *                     file.
+     */
+    public PackedHeap(String path, FileManager.Mode mode, RecordCodec codec)
+            throws IOException {
+        this.path = path;
+        this.mode = mode;
+        this.storage = FileManager.openStorage(path, mode);
+        if (storage.length() == 0) {
+            this.codec = codec;
+            writeHeader();
+        } else {
+            readHeader();
+        }
+        if (!loadDirectory()) {
+            scan();
+        }
+    }
+
+    /**
+     * Returns the number of slots, which is one more than the highest slot
+     * written.
+     *
+     * @return number of slots.
+     */
+    public int size() {
+        return slots;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return length of the file in bytes.
+     * @throws IOException if the length cannot be determined.
+     */
+    public long length() throws IOException {
+        return storage.length();
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return how records are stored.
+     */
+    public RecordCodec getCodec() {
+        lock.readLock().lock();
+        try {
+            return codec;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes taken by dead frames.
+     *
+     * @return reclaimable bytes.
+     * @throws IOException if the length cannot be determined.
+     */
+    public long garbage() throws IOException {
+        lock.readLock().lock();
+        try {
+            return storage.length() - headerLength - liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the record of a slot.
+     *
+     * @param slot slot to read.
+     * @return the record, empty if the slot has never been written.
+     * @throws IOException if the record cannot be read.
+     */
+    public byte[] read(int slot) throws IOException {
+        lock.readLock().lock();
+        try {
+            return readRecord(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a read-only buffer over the record of a slot, without copying
+     * it when the storage is memory-mapped and records are not compressed.
+     *
+     * @param slot slot to read.
+     * @return the record, empty if the slot has never been written.
+     * @throws IOException if the record cannot be read.
+     */
+    public ByteBuffer slice(int slot) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (slot >= slots || offsets[slot] < 0) {
+                return ByteBuffer.allocate(0);
+            }
+            if (codec.isCompressed()) {
+                return ByteBuffer.wrap(readRecord(slot)).asReadOnlyBuffer();
+            }
+            return storage.slice(offsets[slot] + FRAME_HEADER, lengths[slot]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the record of a slot, in place if it fits the slot's frame and
+     * appended in a new frame otherwise.
+     *
+     * @param slot slot to write.
+     * @param data the record.
+     * @throws IOException if the record cannot be written.
+     */
+    public void write(int slot, byte[] data) throws IOException {
+        lock.writeLock().lock();
+        try {
+            writeRecord(slot, data);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the records of several slots. Records that fit their frames are
+     * rewritten in place; the others are appended together with a single
+     * gathering write, after which their old frames are marked dead. When a
+     * slot repeats, the last record given for it wins.
+     *
+     * @param batch   slots to write.
+     * @param records the record of each slot.
+     * @throws IOException if the records cannot be written.
+     */
+    public void writeBatch(int[] batch, byte[][] records)
+            throws IOException {
+        byte[][] data = new byte[records.length][];
+        for (int k = 0; k < records.length; k++) {
+            data[k] = codec.encode(records[k]);
+        }
+        lock.writeLock().lock();
+        try {
+            long start = storage.length();
+            long end = start;
+            List<ByteBuffer> frames = new ArrayList<>();
+            List<Long> dead = new ArrayList<>();
+            Set<Integer> appended = new HashSet<>();
+            for (int k = 0; k < batch.length; k++) {
+                int slot = batch[k];
+                if (appended.contains(slot)) {
+                    appendFrames(start, frames, dead);
+                    start = end;
+                    appended.clear();
+                }
+                grow(slot);
+                long old = offsets[slot];
+                if (old >= 0 && capacities[slot] >= data[k].length) {
+                    writeStored(slot, data[k]);
+                    continue;
+                }
+                int capacity = capacity(data[k]);
+                frames.add(ByteBuffer.wrap(frame(slot, capacity, data[k])));
+                if (old >= 0) {
+                    dead.add(old);
+                    liveBytes -= FRAME_HEADER + capacities[slot];
+                }
+                offsets[slot] = end;
+                lengths[slot] = data[k].length;
+                capacities[slot] = capacity;
+                liveBytes += FRAME_HEADER + capacity;
+                end += FRAME_HEADER + capacity;
+                appended.add(slot);
+            }
+            appendFrames(start, frames, dead);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the live records densely, in slot order, to a new file and
+     * replaces the old file with it.
+     *
+     * @throws IOException if the file cannot be rewritten.
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            rewrite(codec);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the live records densely, in slot order, stored by the given
+     * codec, to a new file and replaces the old file with it.
+     *
+     * @param newCodec how records are stored from now on.
+     * @throws IOException if the file cannot be rewritten.
+     */
+    public void compact(RecordCodec newCodec) throws IOException {
+        lock.writeLock().lock();
+        try {
+            rewrite(newCodec);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces every record written so far to the device.
+     *
+     * @throws IOException if the records cannot be forced.
+     */
+    public void force() throws IOException {
+        lock.readLock().lock();
+        try {
+            storage.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the slot directory next to the file and closes it.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            saveDirectory();
+            storage.close();
+            codec.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private byte[] readRecord(int slot) throws IOException {
+        if (slot >= slots || offsets[slot] < 0) {
+            return new byte[0];
+        }
+        byte[] data = new byte[lengths[slot]];
+        storage.read(offsets[slot] + FRAME_HEADER, data, 0, data.length);
+        return codec.decode(data);
+    }
+
+    private void writeRecord(int slot, byte[] record) throws IOException {
+        writeStored(slot, codec.encode(record));
+    }
+
+    /*
+     * Writes bytes already encoded by the codec.
+     */
+    private void writeStored(int slot, byte[] data) throws IOException {
+        grow(slot);
+
+        long old = offsets[slot];
+        if (old >= 0 && capacities[slot] >= data.length) {
+            storage.write(old, frame(slot, capacities[slot], data), 0,
+                    FRAME_HEADER + data.length);
+            lengths[slot] = data.length;
+            return;
+        }
+
+        long offset = storage.length();
+        int capacity = capacity(data);
+        storage.write(offset, frame(slot, capacity, data), 0,
+                FRAME_HEADER + capacity);
+        if (old >= 0) {
+            storage.write(old, intBytes(DEAD), 0, 4);
+            liveBytes -= FRAME_HEADER + capacities[slot];
+        }
+        offsets[slot] = offset;
+        lengths[slot] = data.length;
+        capacities[slot] = capacity;
+        liveBytes += FRAME_HEADER + capacity;
+    }
+
+    /*
+     * Writes the frames appended by a batch, then marks the frames they
+     * replace dead, so a crash in between leaves both rather than neither.
+     */
+    private void appendFrames(long start, List<ByteBuffer> frames,
+            List<Long> dead) throws IOException {
+        if (!frames.isEmpty()) {
+            storage.write(start, frames.toArray(new ByteBuffer[0]));
+        }
+        for (long old : dead) {
+            storage.write(old, intBytes(DEAD), 0, 4);
+        }
+        frames.clear();
+        dead.clear();
+    }
+
+    /*
+     * Makes room for the given slot, leaving new slots unwritten.
+     */
+    private void grow(int slot) {
+        ensureCapacity(slot + 1);
+        for (int i = slots; i <= slot; i++) {
+            offsets[i] = -1;
+        }
+        slots = Math.max(slots, slot + 1);
+    }
+
+    private void rewrite(RecordCodec newCodec) throws IOException {
+        File target = new File(path);
+        File temp = new File(path + ".compact");
+        long[] newOffsets = new long[offsets.length];
+        int[] newLengths = new int[offsets.length];
+        int[] newCapacities = new int[offsets.length];
+        int newHeaderLength = headerLength(newCodec);
+        long position = newHeaderLength;
+        try (FileOutputStream file = new FileOutputStream(temp);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(file))) {
+            writeHeader(out, newCodec);
+            for (int i = 0; i < slots; i++) {
+                newOffsets[i] = -1;
+                if (offsets[i] < 0) {
+                    continue;
+                }
+                byte[] data = newCodec == codec ? readStored(i)
+                        : newCodec.encode(readRecord(i));
+                int capacity = capacity(data);
+                out.write(frame(i, capacity, data));
+                newOffsets[i] = position;
+                newLengths[i] = data.length;
+                newCapacities[i] = capacity;
+                position += FRAME_HEADER + capacity;
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+
+        storage.close();
+        Files.move(temp.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        storage = FileManager.openStorage(path, mode);
+
+        offsets = newOffsets;
+        lengths = newLengths;
+        capacities = newCapacities;
+        headerLength = newHeaderLength;
+        liveBytes = position - headerLength;
+        if (newCodec != codec) {
+            codec.close();
+            codec = newCodec;
+        }
+    }
+
+    private byte[] readStored(int slot) throws IOException {
+        byte[] data = new byte[lengths[slot]];
+        storage.read(offsets[slot] + FRAME_HEADER, data, 0, data.length);
+        return data;
+    }
+
+    private void saveDirectory() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(path + ".dir")))) {
+            out.writeInt(DIR_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(storage.length());
+            out.writeInt(slots);
+            for (int i = 0; i < slots; i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+                out.writeInt(capacities[i]);
+            }
+        }
+    }
+
+    /*
+     * Loads the directory saved by close if it belongs to the current file.
+     * The sidecar is deleted once read so it is never trusted after a crash.
+     */
+    private boolean loadDirectory() throws IOException {
+        File sidecar = new File(path + ".dir");
+        if (!sidecar.isFile()) {
+            return false;
+        }
+        boolean loaded = false;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(sidecar)))) {
+            if (in.readInt() == DIR_MAGIC && in.readInt() == VERSION
+                    && in.readLong() == storage.length()) {
+                int count = in.readInt();
+                ensureCapacity(count);
+                for (int i = 0; i < count; i++) {
+                    offsets[i] = in.readLong();
+                    lengths[i] = in.readInt();
+                    capacities[i] = in.readInt();
+                    if (offsets[i] >= 0) {
+                        liveBytes += FRAME_HEADER + capacities[i];
+                    }
+                }
+                slots = count;
+                loaded = true;
+            }
+        } catch (IOException e) {
+            loaded = false;
+        }
+        sidecar.delete();
+        if (!loaded) {
+            slots = 0;
+            liveBytes = 0;
+        }
+        return loaded;
+    }
+
+    /*
+     * Rebuilds the directory by reading every frame header, up to the
+     * logical end of the storage. A frame cut off by that end, or a header
+     * of zeros, which no frame has since every frame has room for at least
+     * one byte, ends the scan.
+     */
+    private void scan() throws IOException {
+        long position = headerLength;
+        long end = storage.length();
+        byte[] header = new byte[FRAME_HEADER];
+        while (position + FRAME_HEADER <= end) {
+            storage.read(position, header, 0, FRAME_HEADER);
+            ByteBuffer fields = ByteBuffer.wrap(header);
+            int slot = fields.getInt();
+            int capacity = fields.getInt();
+            int length = fields.getInt();
+            if (capacity < 1 || length < 0 || length > capacity
+                    || position + FRAME_HEADER + capacity > end) {
+                break;
+            }
+            if (slot >= 0) {
+                ensureCapacity(slot + 1);
+                for (int i = slots; i <= slot; i++) {
+                    offsets[i] = -1;
+                }
+                slots = Math.max(slots, slot + 1);
+                if (offsets[slot] >= 0) {
+                    liveBytes -= FRAME_HEADER + capacities[slot];
+                }
+                offsets[slot] = position;
+                lengths[slot] = length;
+                capacities[slot] = capacity;
+                liveBytes += FRAME_HEADER + capacity;
+            }
+            position += FRAME_HEADER + capacity;
+        }
+    }
+
+    /*
+     * Writes the header: the magic number, the version, the codec and the
+     * length of its dictionary, followed by the dictionary. Files without
+     * compression keep version 1, which has zeros in place of the codec.
+     */
+    private void writeHeader() throws IOException {
+        byte[] dictionary = codec.dictionary();
+        byte[] header = ByteBuffer.allocate(16 + dictionary.length)
+                .putInt(MAGIC).putInt(version(codec)).putInt(codec.id())
+                .putInt(dictionary.length).put(dictionary).array();
+        storage.write(0, header, 0, header.length);
+        headerLength = header.length;
+    }
+
+    private static void writeHeader(DataOutputStream out, RecordCodec codec)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(version(codec));
+        out.writeInt(codec.id());
+        out.writeInt(codec.dictionary().length);
+        out.write(codec.dictionary());
+    }
+
+    private void readHeader() throws IOException {
+        byte[] header = new byte[16];
+        if (storage.read(0, header, 0, header.length) < header.length) {
+            throw new IOException(path + " is not a packed joke file.");
+        }
+        ByteBuffer fields = ByteBuffer.wrap(header);
+        int version = fields.getInt(4);
+        if (fields.getInt(0) != MAGIC
+                || (version != VERSION && version != COMPRESSED_VERSION)) {
+            throw new IOException(path + " is not a packed joke file.");
+        }
+        int id = fields.getInt(8);
+        int length = fields.getInt(12);
+        if (length < 0 || length > RecordCodec.MAX_DICTIONARY
+                || 16L + length > storage.length()) {
+            throw new IOException(path + " has a corrupt header.");
+        }
+        byte[] dictionary = new byte[length];
+        storage.read(16, dictionary, 0, length);
+        codec = RecordCodec.of(id, dictionary);
+        headerLength = header.length + length;
+    }
+
+    private static int version(RecordCodec codec) {
+        return codec.isCompressed() ? COMPRESSED_VERSION : VERSION;
+    }
+
+    private static int headerLength(RecordCodec codec) {
+        return 16 + codec.dictionary().length;
+    }
+
+    /*
+     * Capacity of a new frame for the data. Empty records get a byte of room
+     * so that a frame is never all zeros.
+     */
+    private static int capacity(byte[] data) {
+        return Math.max(data.length, 1);
+    }
+
+    /*
+     * Frame header and data, with room for at least one byte of data.
+     */
+    private static byte[] frame(int slot, int capacity, byte[] data) {
+        return ByteBuffer.allocate(FRAME_HEADER + capacity(data)).putInt(slot)
+                .putInt(capacity).putInt(data.length).put(data).array();
+    }
+
+    private static byte[] intBytes(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > offsets.length) {
+            int size = Math.max(count, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, size);
+            lengths = Arrays.copyOf(lengths, size);
+            capacities = Arrays.copyOf(capacities, size);
+        }
+    }
+}
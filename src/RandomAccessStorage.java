@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Storage that reads and writes a RandomAccessFile with seek followed by
+ * read/write. Every access is a system call and a copy into the heap.
+ *
+ * @author rachelcurci
+ */
+public class RandomAccessStorage implements Storage {
+
+    private RandomAccessFile raf;
+
+    /**
+     * Constructor that opens the file at the given path for reading and
+     * writing.
+     *
+     * @param path path of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public RandomAccessStorage(String path) throws IOException {
+        this.raf = new RandomAccessFile(path, "rw");
+    }
+
+    @Override
+    public synchronized long length() throws IOException {
+        return raf.length();
+    }
+
+    @Override
+    public synchronized int read(long position, byte[] dst, int offset,
+            int length) throws IOException {
+        raf.seek(position);
+        int total = 0;
+        while (total < length) {
+            int n = raf.read(dst, offset + total, length - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized void write(long position, byte[] src, int offset,
+            int length) throws IOException {
+        raf.seek(position);
+        raf.write(src, offset, length);
+    }
+
+    @Override
+    public synchronized void write(long position, ByteBuffer[] srcs)
+            throws IOException {
+        FileChannel channel = raf.getChannel();
+        channel.position(position);
+        long remaining = remaining(srcs);
+        while (remaining > 0) {
+            remaining -= channel.write(srcs);
+        }
+    }
+
+    @Override
+    public ByteBuffer slice(long position, int length) throws IOException {
+        byte[] data = new byte[length];
+        int n = read(position, data, 0, length);
+        return ByteBuffer.wrap(data, 0, n).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void force() throws IOException {
+        raf.getChannel().force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        raf.close();
+    }
+
+    static long remaining(ByteBuffer[] buffers) {
+        long total = 0;
+        for (ByteBuffer buffer : buffers) {
+            total += buffer.remaining();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * How the records of a packed file are stored: as they are, or compressed
+ * with Deflate and a preset dictionary.
+ * <p>
+ * A joke is too short for Deflate to find much to reuse within it. A
+ * dictionary of byte strings that are common across the store, trained from
+ * its records, gives every record matches from the first byte. The codec
+ * and the dictionary are kept in the header of the file.
+ * </p>
+ * <p>
+ * A compressed record starts with a byte telling whether it is deflated.
+ * Deflated records are followed by their length and the deflated bytes.
+ * Records that do not get smaller are stored as they are after that byte.
+ * Deflaters and inflaters are pooled, so a codec is safe to share between
+ * threads.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public final class RecordCodec {
+
+    static final int NONE = 0;
+    static final int DEFLATE = 1;
+
+    /** Stores records as they are. */
+    public static final RecordCodec IDENTITY = new RecordCodec(NONE,
+            new byte[0]);
+
+    /** Largest dictionary Deflate can use, the size of its window. */
+    public static final int MAX_DICTIONARY = 32 * 1024;
+
+    private static final byte STORED = 0;
+    private static final byte DEFLATED = 1;
+
+    private final int id;
+    private final byte[] dictionary;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+    private RecordCodec(int id, byte[] dictionary) {
+        this.id = id;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Creates a codec that deflates records with the given dictionary.
+     *
+     * @param dictionary preset dictionary, possibly empty, of at most
+     *                   MAX_DICTIONARY bytes.
+     * @return the codec.
+     */
+    public static RecordCodec deflate(byte[] dictionary) {
+        if (dictionary.length > MAX_DICTIONARY) {
+            throw new IllegalArgumentException("Need a dictionary of at most "
+                    + MAX_DICTIONARY + " bytes");
+        }
+        return new RecordCodec(DEFLATE, dictionary.clone());
+    }
+
+    /*
+     * Codec with the given id and dictionary, as read from a file header.
+     */
+    static RecordCodec of(int id, byte[] dictionary) throws IOException {
+        if (id == NONE && dictionary.length == 0) {
+            return IDENTITY;
+        }
+        if (id == DEFLATE && dictionary.length <= MAX_DICTIONARY) {
+            return new RecordCodec(DEFLATE, dictionary);
+        }
+        throw new IOException("Unknown record codec " + id);
+    }
+
+    /*
+     * Number written to the file header for this codec.
+     */
+    int id() {
+        return id;
+    }
+
+    /**
+     * Checks if records are compressed.
+     *
+     * @return true unless records are stored as they are.
+     */
+    public boolean isCompressed() {
+        return id != NONE;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return copy of the preset dictionary, empty if there is none.
+     */
+    public byte[] getDictionary() {
+        return dictionary.clone();
+    }
+
+    /*
+     * Dictionary without copying it, for writing it to the file header.
+     */
+    byte[] dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Converts a record into the bytes stored for it.
+     *
+     * @param record the record.
+     * @return the stored bytes.
+     */
+    public byte[] encode(byte[] record) {
+        if (id == NONE) {
+            return record;
+        }
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        }
+        try {
+            if (dictionary.length > 0) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(record);
+            deflater.finish();
+            byte[] out = new byte[record.length + 1];
+            int at = 1 + varintLength(record.length);
+            while (!deflater.finished() && at < out.length) {
+                at += deflater.deflate(out, at, out.length - at);
+            }
+            if (!deflater.finished()) {
+                byte[] stored = new byte[record.length + 1];
+                stored[0] = STORED;
+                System.arraycopy(record, 0, stored, 1, record.length);
+                return stored;
+            }
+            out[0] = DEFLATED;
+            writeVarint(out, 1, record.length);
+            byte[] deflated = new byte[at];
+            System.arraycopy(out, 0, deflated, 0, at);
+            return deflated;
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+        }
+    }
+
+    /**
+     * Converts stored bytes back into the record.
+     *
+     * @param stored bytes written by encode.
+     * @return the record.
+     * @throws IOException if the bytes are not a record of this codec.
+     */
+    public byte[] decode(byte[] stored) throws IOException {
+        if (id == NONE || stored.length == 0) {
+            return stored;
+        }
+        if (stored[0] == STORED) {
+            byte[] record = new byte[stored.length - 1];
+            System.arraycopy(stored, 1, record, 0, record.length);
+            return record;
+        }
+        if (stored[0] != DEFLATED) {
+            throw new IOException("Corrupt compressed record");
+        }
+        int length = 0;
+        int at = 1;
+        for (int shift = 0;; shift += 7) {
+            if (at >= stored.length || shift > 28) {
+                throw new IOException("Corrupt compressed record");
+            }
+            byte b = stored[at++];
+            length |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        try {
+            inflater.setInput(stored, at, stored.length - at);
+            byte[] record = new byte[length];
+            int done = inflater.inflate(record);
+            if (inflater.needsDictionary()) {
+                inflater.setDictionary(dictionary);
+                done += inflater.inflate(record, done, length - done);
+            }
+            while (done < length && !inflater.finished()
+                    && !inflater.needsInput()) {
+                done += inflater.inflate(record, done, length - done);
+            }
+            if (done != length) {
+                throw new IOException("Corrupt compressed record");
+            }
+            return record;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed record", e);
+        } finally {
+            inflater.reset();
+            inflaters.offer(inflater);
+        }
+    }
+
+    /**
+     * Builds a dictionary from sample records. Words and pairs of words,
+     * split at spaces, are scored by the bytes they would save, and the best
+     * ones are kept. The best are put last, where Deflate reaches them with
+     * the shortest distances.
+     *
+     * @param samples records to learn from.
+     * @param size    largest dictionary size in bytes, at most
+     *                MAX_DICTIONARY.
+     * @return the dictionary, empty if nothing repeats.
+     */
+    public static byte[] train(List<byte[]> samples, int size) {
+        if (size < 0 || size > MAX_DICTIONARY) {
+            throw new IllegalArgumentException("Need 0 <= size <= "
+                    + MAX_DICTIONARY);
+        }
+        // Latin-1 maps every byte to one char, so strings stand for bytes.
+        Map<String, Integer> counts = new HashMap<>();
+        for (byte[] sample : samples) {
+            String text = new String(sample, StandardCharsets.ISO_8859_1);
+            int previous = -1;
+            int start = 0;
+            for (int i = 1; i <= text.length(); i++) {
+                if (i < text.length() && text.charAt(i) != ' ') {
+                    continue;
+                }
+                counts.merge(text.substring(start, i), 1, Integer::sum);
+                if (previous >= 0) {
+                    counts.merge(text.substring(previous, i), 1,
+                            Integer::sum);
+                }
+                previous = start;
+                start = i;
+            }
+        }
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1 && entry.getKey().length() > 2) {
+                ranked.add(entry);
+            }
+        }
+        ranked.sort((a, b) -> Long.compare(score(b), score(a)));
+        List<String> chosen = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, Integer> entry : ranked) {
+            if (total + entry.getKey().length() <= size) {
+                chosen.add(entry.getKey());
+                total += entry.getKey().length();
+            }
+        }
+        StringBuilder dictionary = new StringBuilder(total);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            dictionary.append(chosen.get(i));
+        }
+        return dictionary.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Frees the deflaters and inflaters pooled by the codec. It can still be
+     * used afterwards.
+     */
+    public void close() {
+        for (Deflater deflater; (deflater = deflaters.poll()) != null;) {
+            deflater.end();
+        }
+        for (Inflater inflater; (inflater = inflaters.poll()) != null;) {
+            inflater.end();
+        }
+    }
+
+    private static long score(Map.Entry<String, Integer> entry) {
+        return (long) (entry.getValue() - 1) * entry.getKey().length();
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static void writeVarint(byte[] out, int at, int value) {
+        while ((value & ~0x7f) != 0) {
+            out[at++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out[at] = (byte) value;
+    }
+}
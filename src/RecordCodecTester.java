@@ -0,0 +1,60 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RecordCodecTester {
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testIdentity() throws Exception {
+        byte[] record = bytes("as it is");
+        assertArrayEquals(record, RecordCodec.IDENTITY.encode(record));
+        assertArrayEquals(record, RecordCodec.IDENTITY.decode(record));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        RecordCodec codec = RecordCodec.deflate(bytes(" the joke"));
+        String[] records = { "", "a", "the joke the joke the joke",
+                "caf\u00e9 \u2603 the joke" };
+        for (String text : records) {
+            byte[] record = bytes(text);
+            assertArrayEquals(record, codec.decode(codec.encode(record)));
+        }
+    }
+
+    @Test
+    public void testDictionaryShrinksShortRecords() throws Exception {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            samples.add(bytes("Why do programmers prefer dark mode? "
+                    + "Because light attracts bugs. " + i));
+        }
+        byte[] dictionary = RecordCodec.train(samples, 1024);
+        assertTrue(dictionary.length > 0 && dictionary.length <= 1024);
+
+        byte[] record = bytes("Why do programmers prefer dark mode? "
+                + "Because light attracts bugs. 99");
+        int plain = RecordCodec.deflate(new byte[0]).encode(record).length;
+        int trained = RecordCodec.deflate(dictionary).encode(record).length;
+        assertTrue(trained * 2 < plain);
+        assertArrayEquals(record, RecordCodec.deflate(dictionary)
+                .decode(RecordCodec.deflate(dictionary).encode(record)));
+    }
+
+    @Test
+    public void testIncompressibleRecordIsStored() throws Exception {
+        byte[] record = { 17, -3, 99, 4 };
+        byte[] stored = RecordCodec.deflate(new byte[0]).encode(record);
+        assertEquals(record.length + 1, stored.length);
+    }
+}
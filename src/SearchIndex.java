@@ -0,0 +1,309 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Store-wide inverted index over the content of the jokes in a FileManager.
+ * Every section is broken into case-insensitive trigrams and each trigram
+ * maps to the sorted list of sections containing it. A query intersects the
+ * lists of its trigrams and only decodes the few candidate sections to find
+ * the match offsets, instead of decoding and scanning every section.
+ * <p>
+ * Keys shorter than three characters have no trigrams and fall back to
+ * checking every section.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class SearchIndex extends SectionIndex implements Searchable {
+
+    private static final int MAGIC = 0x4a4b5452; // "JKTR"
+    private static final int[] NONE = new int[0];
+
+    private final FileManager store;
+    private final Map<Integer, Postings> postings = new HashMap<>();
+    private int[][] trigrams = new int[16][];
+    private int sections;
+
+    /**
+     * A match of a query: the section and the offsets of the key in the
+     * content of the joke stored there.
+     */
+    public static final class Match {
+        private final int section;
+        private final int[] offsets;
+
+        Match(int section, int[] offsets) {
+            this.section = section;
+            this.offsets = offsets;
+        }
+
+        /**
+         * Getter method.
+         *
+         * @return section holding the matching joke.
+         */
+        public int getSection() {
+            return section;
+        }
+
+        /**
+         * Getter method.
+         *
+         * @return offsets of the key in the content of the joke.
+         */
+        public int[] getOffsets() {
+            return offsets;
+        }
+    }
+
+    /*
+     * Sorted, growable list of section numbers.
+     */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+                size--;
+            }
+        }
+
+        boolean has(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sidecarPath path of the sidecar file.
+     * @param store       FileManager whose sections are indexed, used to read
+     *                    the candidate sections of a query.
+     */
+    public SearchIndex(String sidecarPath, FileManager store) {
+        super(sidecarPath);
+        this.store = store;
+    }
+
+    /**
+     * Checks if any joke in the store contains the given key, ignoring case.
+     */
+    @Override
+    public boolean contains(String key) {
+        return !search(key).isEmpty();
+    }
+
+    /**
+     * Finds all sections whose joke contains the given key, ignoring case.
+     */
+    @Override
+    public Integer[] indexOf(String key) {
+        List<Match> matches = search(key);
+        Integer[] result = new Integer[matches.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = matches.get(i).getSection();
+        }
+        return result;
+    }
+
+    /**
+     * Finds all sections whose joke contains the given key, ignoring case,
+     * and writes them into the buffer without boxing.
+     */
+    @Override
+    public int indexOf(String key, int[] buffer) {
+        List<Match> matches = search(key);
+        for (int i = 0; i < matches.size() && i < buffer.length; i++) {
+            buffer[i] = matches.get(i).getSection();
+        }
+        return matches.size();
+    }
+
+    /**
+     * Finds every occurrence of the given key, ignoring case, in the jokes of
+     * the store.
+     *
+     * @param key text to find.
+     * @return matches in ascending section order.
+     */
+    public List<Match> search(String key) {
+        List<Match> matches = new ArrayList<>();
+        JokeView joke = new JokeView();
+        for (int section : candidates(key)) {
+            try {
+                joke.wrap(ByteBuffer.wrap(store.read(section)));
+                int[] offsets = joke.offsetsOf(key);
+                if (offsets.length > 0) {
+                    matches.add(new Match(section, offsets));
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(
+                        "Cannot read section " + section, e);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the sections that contain every trigram of the given key. They
+     * are a superset of the sections that contain the key.
+     *
+     * @param key text to find.
+     * @return candidate sections in ascending order.
+     */
+    public synchronized int[] candidates(String key) {
+        int[] keyTrigrams = trigramsOf(key);
+        if (keyTrigrams.length == 0) {
+            int[] all = new int[sections];
+            for (int i = 0; i < sections; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        Postings[] lists = new Postings[keyTrigrams.length];
+        for (int i = 0; i < keyTrigrams.length; i++) {
+            lists[i] = postings.get(keyTrigrams[i]);
+            if (lists[i] == null) {
+                return NONE;
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        int[] result = new int[lists[0].size];
+        int count = 0;
+        for (int i = 0; i < lists[0].size; i++) {
+            int id = lists[0].ids[i];
+            boolean inAll = true;
+            for (int j = 1; j < lists.length && inAll; j++) {
+                inAll = lists[j].has(id);
+            }
+            if (inAll) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    @Override
+    protected int magic() {
+        return MAGIC;
+    }
+
+    @Override
+    protected synchronized void clear() {
+        postings.clear();
+        sections = 0;
+    }
+
+    @Override
+    protected synchronized void sectionWritten(int index, byte[] data) {
+        String content = Joke.fromBytes(data).getContent();
+        ensureCapacity(index + 1);
+        if (index < sections) {
+            for (int trigram : trigrams[index]) {
+                Postings list = postings.get(trigram);
+                list.remove(index);
+                if (list.size == 0) {
+                    postings.remove(trigram);
+                }
+            }
+        } else {
+            sections = index + 1;
+        }
+        link(index, trigramsOf(content));
+    }
+
+    @Override
+    protected void writeTo(DataOutputStream out) throws IOException {
+        for (int i = 0; i < sections; i++) {
+            out.writeInt(trigrams[i].length);
+            for (int trigram : trigrams[i]) {
+                out.writeInt(trigram);
+            }
+        }
+    }
+
+    @Override
+    protected void readFrom(DataInputStream in, int count) throws IOException {
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            int[] sectionTrigrams = new int[in.readInt()];
+            for (int j = 0; j < sectionTrigrams.length; j++) {
+                sectionTrigrams[j] = in.readInt();
+            }
+            link(i, sectionTrigrams);
+        }
+        sections = count;
+    }
+
+    private void link(int index, int[] sectionTrigrams) {
+        trigrams[index] = sectionTrigrams;
+        for (int trigram : sectionTrigrams) {
+            postings.computeIfAbsent(trigram, t -> new Postings()).add(index);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > trigrams.length) {
+            trigrams = Arrays.copyOf(trigrams,
+                    Math.max(count, trigrams.length * 2));
+        }
+    }
+
+    /*
+     * Returns the distinct lower-case trigrams of the text, each packed into
+     * an int. ASCII trigrams are packed exactly; others are hashed, which can
+     * merge different trigrams and only adds candidates that are then
+     * rejected when they are checked.
+     */
+    private static int[] trigramsOf(String text) {
+        int n = text.length() - 2;
+        if (n <= 0) {
+            return NONE;
+        }
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            int a = Character.toLowerCase(text.charAt(i));
+            int b = Character.toLowerCase(text.charAt(i + 1));
+            int c = Character.toLowerCase(text.charAt(i + 2));
+            if ((a | b | c) < 0x80) {
+                result[i] = (a << 14) | (b << 7) | c;
+            } else {
+                result[i] = ((a * 31 + b) * 31 + c) | 0x80000000;
+            }
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || result[distinct - 1] != result[i]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+}
@@ -0,0 +1,78 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SearchIndexTester {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jokes", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        new File(file.getPath() + ".fp").delete();
+        new File(file.getPath() + ".tri").delete();
+        new File(file.getPath() + ".cat").delete();
+        file.delete();
+    }
+
+    private AppService store() throws Exception {
+        AppService service = new AppService(file.getPath(), 100);
+        service.write(0, new Joke("Misc", "Why did the chicken cross "
+                + "the road?").getBytes(100));
+        service.write(1, new Joke("Programming", "A SQL query walks into "
+                + "a bar").getBytes(100));
+        service.write(2, new Joke("Programming", "Debugging: removing the "
+                + "needles from the haystack. The Haystack wins.")
+                .getBytes(100));
+        return service;
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        AppService service = store();
+        List<SearchIndex.Match> matches = service.search("haystack");
+
+        assertEquals(1, matches.size());
+        assertEquals(2, matches.get(0).getSection());
+        assertArrayEquals(new int[] { 41, 55 }, matches.get(0).getOffsets());
+        assertTrue(service.getSearchIndex().contains("ROAD"));
+        assertFalse(service.getSearchIndex().contains("banana"));
+        assertArrayEquals(new Integer[] { 0, 2 },
+                service.getSearchIndex().indexOf("the "));
+        service.close();
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+        AppService service = store();
+        service.write(1, new Joke("Misc", "No bars here").getBytes(100));
+
+        assertFalse(service.getSearchIndex().contains("walks into"));
+        assertArrayEquals(new Integer[] { 1 },
+                service.getSearchIndex().indexOf("bars"));
+        service.close();
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        store().close();
+        assertTrue(new File(file.getPath() + ".tri").isFile());
+
+        AppService service = new AppService(file.getPath(), 100);
+        assertEquals(1, service.search("sql").size());
+        assertEquals(3, service.search("a").size());
+        service.close();
+    }
+}
@@ -6,4 +6,21 @@ public interface Searchable {
     
     Integer[] indexOf(String key);
 
+    /**
+     * Finds all occurrences of the given key without boxing them. The
+     * positions are written to the buffer in ascending order; if there are
+     * more than fit, the rest are counted but not written.
+     * 
+     * @param key    text to find.
+     * @param buffer array receiving the positions.
+     * @return total number of occurrences.
+     */
+    default int indexOf(String key, int[] buffer) {
+        Integer[] found = indexOf(key);
+        for (int i = 0; i < found.length && i < buffer.length; i++) {
+            buffer[i] = found[i];
+        }
+        return found.length;
+    }
+
 }
@@ -0,0 +1,189 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of recently read sections of a FileManager, kept on the heap within
+ * a budget of bytes. Reading a cached section costs a copy instead of a
+ * read from the file and, for compressed records, the inflating.
+ * <p>
+ * When the sections held would go over the budget, the least recently used
+ * ones are evicted. FileManager drops a section from the cache whenever it
+ * is written, while it holds the section's write lock, so the cache never
+ * returns stale bytes. Cached arrays are never handed out, only copies or
+ * read-only views of them.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class SectionCache {
+
+    // bytes counted for a cached section besides its data: the map entry,
+    // the key and the array header
+    private static final int OVERHEAD = 64;
+
+    private final long budget;
+    private final LinkedHashMap<Integer, byte[]> sections =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor.
+     *
+     * @param budget most bytes the cached sections take, at least 1.
+     */
+    public SectionCache(long budget) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("Need a budget of at least 1");
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * Returns a cached section and marks it as the most recently used.
+     *
+     * @param index section to look up.
+     * @return the cached bytes, which must not be changed, or null if the
+     *         section is not cached.
+     */
+    public synchronized byte[] get(int index) {
+        byte[] data = sections.get(index);
+        if (data == null) {
+            misses++;
+            Metrics.cacheMissed();
+        } else {
+            hits++;
+            Metrics.cacheHit();
+        }
+        return data;
+    }
+
+    /**
+     * Caches a section, evicting the least recently used ones to stay within
+     * the budget. Sections larger than the budget are not cached.
+     *
+     * @param index section that was read.
+     * @param data  bytes of the section, which must not be changed
+     *              afterwards.
+     */
+    public synchronized void put(int index, byte[] data) {
+        long cost = cost(data);
+        if (cost > budget) {
+            return;
+        }
+        byte[] old = sections.put(index, data);
+        if (old != null) {
+            bytes -= cost(old);
+        }
+        bytes += cost;
+        Iterator<Map.Entry<Integer, byte[]>> eldest =
+                sections.entrySet().iterator();
+        while (bytes > budget) {
+            byte[] evicted = eldest.next().getValue();
+            eldest.remove();
+            bytes -= cost(evicted);
+            evictions++;
+            Metrics.cacheEvicted();
+        }
+    }
+
+    /**
+     * Drops a section from the cache.
+     *
+     * @param index section that was written.
+     */
+    public synchronized void invalidate(int index) {
+        byte[] old = sections.remove(index);
+        if (old != null) {
+            bytes -= cost(old);
+        }
+    }
+
+    /**
+     * Drops every section from the cache. The statistics are kept.
+     */
+    public synchronized void clear() {
+        sections.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return most bytes the cached sections take.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return bytes the cached sections take now.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of sections cached now.
+     */
+    public synchronized int getSections() {
+        return sections.size();
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of reads answered from the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of reads that went to the file.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of sections evicted to stay within the budget.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the share of reads answered from the cache.
+     *
+     * @return hits divided by all lookups, 0 before the first.
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Sets the hit, miss and eviction counts back to zero.
+     */
+    public synchronized void resetStats() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    private static long cost(byte[] data) {
+        return data.length + OVERHEAD;
+    }
+}
@@ -0,0 +1,42 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class SectionCacheTester {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        // room for two sections of 36 bytes with their overhead
+        SectionCache cache = new SectionCache(200);
+        cache.put(0, new byte[36]);
+        cache.put(1, new byte[36]);
+        cache.get(0);
+        cache.put(2, new byte[36]);
+
+        assertNull(cache.get(1));
+        assertEquals(2, cache.getSections());
+        assertEquals(200, cache.getBytes());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testInvalidateAndReplace() {
+        SectionCache cache = new SectionCache(1000);
+        cache.put(3, "old".getBytes());
+        cache.put(3, "newer".getBytes());
+        assertArrayEquals("newer".getBytes(), cache.get(3));
+        assertEquals(69, cache.getBytes());
+
+        cache.invalidate(3);
+        assertNull(cache.get(3));
+        assertEquals(0, cache.getBytes());
+
+        cache.put(4, new byte[2000]);
+        assertNull(cache.get(4));
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Base class for the secondary indexes a FileManager keeps over its sections.
+ * An index is told about every section that is written and is persisted in a
+ * sidecar file next to the data file when the store is closed.
+ * <p>
+ * The sidecar is deleted as soon as it has been loaded, so a store that is not
+ * closed cleanly has no sidecar the next time it is opened and the index is
+ * rebuilt from the data file instead of being trusted while stale.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public abstract class SectionIndex {
+
+    private static final int VERSION = 1;
+
+    private final File sidecar;
+
+    /**
+     * Constructor that sets the sidecar file the index is persisted in.
+     *
+     * @param sidecarPath path of the sidecar file.
+     */
+    protected SectionIndex(String sidecarPath) {
+        this.sidecar = new File(sidecarPath);
+    }
+
+    /**
+     * Magic number written at the start of the sidecar so that one index type
+     * never loads the file of another.
+     *
+     * @return magic number of this index type.
+     */
+    protected abstract int magic();
+
+    /**
+     * Removes every entry from the index.
+     */
+    protected abstract void clear();
+
+    /**
+     * Updates the index after a section has been written.
+     *
+     * @param index section that was written.
+     * @param data  current bytes of the section as returned by read(index).
+     */
+    protected abstract void sectionWritten(int index, byte[] data);
+
+    /**
+     * Writes the contents of the index to the sidecar.
+     *
+     * @param out stream positioned after the sidecar header.
+     * @throws IOException if the sidecar cannot be written.
+     */
+    protected abstract void writeTo(DataOutputStream out) throws IOException;
+
+    /**
+     * Reads the contents of the index from the sidecar.
+     *
+     * @param in       stream positioned after the sidecar header.
+     * @param sections number of sections in the store.
+     * @throws IOException if the sidecar is truncated or corrupt.
+     */
+    protected abstract void readFrom(DataInputStream in, int sections)
+            throws IOException;
+
+    /**
+     * Loads the index from its sidecar if it matches the current data file.
+     *
+     * @param sections   number of sections in the store.
+     * @param dataLength length of the data file in bytes.
+     * @return true if the index was loaded, false if it has to be rebuilt.
+     */
+    boolean load(int sections, long dataLength) {
+        if (!sidecar.isFile()) {
+            return false;
+        }
+        boolean loaded = false;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(sidecar)))) {
+            if (in.readInt() == magic() && in.readInt() == VERSION
+                    && in.readInt() == sections
+                    && in.readLong() == dataLength) {
+                clear();
+                readFrom(in, sections);
+                loaded = true;
+            }
+        } catch (IOException e) {
+            loaded = false;
+        }
+        if (!loaded) {
+            clear();
+        }
+        sidecar.delete();
+        return loaded;
+    }
+
+    /**
+     * Saves the index to its sidecar.
+     *
+     * @param sections   number of sections in the store.
+     * @param dataLength length of the data file in bytes.
+     * @throws IOException if the sidecar cannot be written.
+     */
+    void save(int sections, long dataLength) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(sidecar)))) {
+            out.writeInt(magic());
+            out.writeInt(VERSION);
+            out.writeInt(sections);
+            out.writeLong(dataLength);
+            writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Store that spreads its sections over several AppService files, the
+ * shards, kept at path + "." + shard, so that scans and writes use every
+ * core and every disk the shards are spread over.
+ * <p>
+ * Sections have global indices: global index g is section g / n of shard
+ * g % n, for n shards. append picks the shard from a hash of the section,
+ * by default its fingerprint, so equal sections appended always land in the
+ * same shard, and returns the global index it was stored at. read and write
+ * take global indices, and the index alone picks the shard: a section
+ * written over another one stays in that shard even if its hash would pick
+ * another, so only appended sections are placed by their hash.
+ * </p>
+ * <p>
+ * Shards grow at different rates, so global indices are sparse: below the
+ * highest one in use there are indices of sections no shard holds yet.
+ * size returns one more than the highest index in use, and these gaps read
+ * as empty sections, like the unwritten slots of a packed file.
+ * </p>
+ * <p>
+ * indexOf, contains and search ask every shard in parallel, so they also
+ * find written sections, and merge the answers in global order. The shards
+ * are asked on a pool with a thread for each shard, which close shuts down,
+ * or on a pool the caller passes and shuts down itself. Each shard keeps
+ * its own fingerprint and search indexes.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public class ShardedStore {
+
+    /** Routes a section by the fingerprint of its bytes. */
+    public static final ToLongFunction<byte[]> BY_FINGERPRINT =
+            Fingerprint::of;
+
+    /** Routes a section by the category of the joke stored in it. */
+    public static final ToLongFunction<byte[]> BY_CATEGORY =
+            data -> Fingerprint.of(Joke.fromBytes(data).getCategory()
+                    .getBytes(StandardCharsets.UTF_8));
+
+    /*
+     * Work done on one shard.
+     */
+    private interface ShardTask<T> {
+        T run(int shard) throws Exception;
+    }
+
+    private final AppService[] shards;
+    private final ReentrantLock[] appendLocks;
+    private final ToLongFunction<byte[]> router;
+    private final ExecutorService pool;
+    private final boolean ownsPool;
+
+    /**
+     * Constructor that opens or creates the shards at path + "." + shard,
+     * routes sections by fingerprint and asks the shards on a pool of its
+     * own, with a thread for each shard.
+     *
+     * @param path       path the shard files are named after.
+     * @param shardCount number of shards, at least 1.
+     * @param config     settings of every shard.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public ShardedStore(String path, int shardCount, StoreConfig config)
+            throws Exception {
+        this(path, shardCount, config, BY_FINGERPRINT, null);
+    }
+
+    /**
+     * Constructor that opens or creates the shards at path + "." + shard.
+     * A store must always be opened with the same number of shards, since
+     * global indices depend on it.
+     *
+     * @param path       path the shard files are named after.
+     * @param shardCount number of shards, at least 1.
+     * @param config     settings of every shard.
+     * @param router     hash of a section that picks its shard, such as
+     *                   BY_FINGERPRINT or BY_CATEGORY.
+     * @param pool       pool the shards are asked on, which close leaves
+     *                   running, or null for a pool of the store's own.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public ShardedStore(String path, int shardCount, StoreConfig config,
+            ToLongFunction<byte[]> router, ExecutorService pool)
+            throws Exception {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Need at least one shard");
+        }
+        this.shards = new AppService[shardCount];
+        this.appendLocks = new ReentrantLock[shardCount];
+        this.router = router;
+        this.ownsPool = pool == null;
+        this.pool = ownsPool ? Executors.newFixedThreadPool(shardCount)
+                : pool;
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new AppService(path + "." + i, config);
+                appendLocks[i] = new ReentrantLock();
+            }
+        } catch (Exception e) {
+            for (AppService shard : shards) {
+                if (shard != null) {
+                    shard.close();
+                }
+            }
+            if (ownsPool) {
+                this.pool.shutdown();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @param shard number of the shard.
+     * @return the shard.
+     */
+    public AppService getShard(int shard) {
+        return shards[shard];
+    }
+
+    /**
+     * Returns the shard holding a global index.
+     *
+     * @param index global index.
+     * @return number of the shard.
+     */
+    public int shardOf(int index) {
+        return index % shards.length;
+    }
+
+    /**
+     * Returns the global index of a section of a shard.
+     *
+     * @param shard number of the shard.
+     * @param local index of the section in the shard.
+     * @return global index.
+     */
+    public int globalOf(int shard, int local) {
+        return Math.addExact(Math.multiplyExact(local, shards.length), shard);
+    }
+
+    /**
+     * Converts a joke into the bytes stored for it, as every shard does.
+     *
+     * @param joke Joke to convert.
+     * @return bytes to store.
+     */
+    public byte[] encode(Joke joke) {
+        return shards[0].encode(joke);
+    }
+
+    /**
+     * Stores a section after the last one of the shard its hash picks.
+     *
+     * @param data bytes of the section.
+     * @return global index the section was stored at.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public int append(byte[] data) throws Exception {
+        int shard = (int) Math.floorMod(router.applyAsLong(data),
+                (long) shards.length);
+        appendLocks[shard].lock();
+        try {
+            int local = shards[shard].size();
+            shards[shard].write(local, data);
+            return globalOf(shard, local);
+        } finally {
+            appendLocks[shard].unlock();
+        }
+    }
+
+    /**
+     * Writes a section at a global index, in the shard holding that index
+     * whatever the hash of the section.
+     *
+     * @param index global index.
+     * @param data  bytes of the section.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public void write(int index, byte[] data) throws Exception {
+        int shard = shardOf(index);
+        appendLocks[shard].lock();
+        try {
+            shards[shard].write(index / shards.length, data);
+        } finally {
+            appendLocks[shard].unlock();
+        }
+    }
+
+    /**
+     * Reads the section at a global index.
+     *
+     * @param index global index.
+     * @return bytes of the section, empty if its shard does not hold it yet.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public byte[] read(int index) throws Exception {
+        AppService shard = shards[shardOf(index)];
+        int local = index / shards.length;
+        if (local >= shard.size()) {
+            return new byte[0];
+        }
+        return shard.read(local);
+    }
+
+    /**
+     * Returns one more than the highest global index in use, so that every
+     * index below it can be read.
+     *
+     * @return number of global indices.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public int size() throws Exception {
+        int size = 0;
+        for (int shard = 0; shard < shards.length; shard++) {
+            int local = shards[shard].size();
+            if (local > 0) {
+                size = Math.max(size, globalOf(shard, local - 1) + 1);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of sections held by all shards, which is below size
+     * when the shards differ in size.
+     *
+     * @return number of sections.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public int count() throws Exception {
+        int count = 0;
+        for (AppService shard : shards) {
+            count += shard.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the length of all shard files.
+     *
+     * @return length in bytes.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public long length() throws Exception {
+        long length = 0;
+        for (AppService shard : shards) {
+            length += shard.length();
+        }
+        return length;
+    }
+
+    /**
+     * Finds the lowest global index of a section holding the given bytes,
+     * asking every shard in parallel.
+     *
+     * @param data bytes to find.
+     * @return global index, or -1 if no section holds them.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public int indexOf(byte[] data) throws Exception {
+        int found = -1;
+        List<Integer> locals = fanOut(shard -> shards[shard].indexOf(data));
+        for (int shard = 0; shard < shards.length; shard++) {
+            int local = locals.get(shard);
+            if (local >= 0) {
+                int index = globalOf(shard, local);
+                found = found < 0 ? index : Math.min(found, index);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Checks if any section holds the given bytes, asking every shard in
+     * parallel.
+     *
+     * @param data bytes to find.
+     * @return true if a section holds them.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public boolean contains(byte[] data) throws Exception {
+        return fanOut(shard -> shards[shard].contains(data)).contains(true);
+    }
+
+    /**
+     * Finds every occurrence of the given key, ignoring case, searching
+     * every shard in parallel.
+     *
+     * @param key text to find.
+     * @return matches with global indices, in ascending order.
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public List<SearchIndex.Match> search(String key) throws Exception {
+        List<List<SearchIndex.Match>> found = fanOut(
+                shard -> shards[shard].search(key));
+        List<SearchIndex.Match> matches = new ArrayList<>();
+        for (int shard = 0; shard < shards.length; shard++) {
+            for (SearchIndex.Match match : found.get(shard)) {
+                matches.add(new SearchIndex.Match(
+                        globalOf(shard, match.getSection()),
+                        match.getOffsets()));
+            }
+        }
+        matches.sort((a, b) -> Integer.compare(a.getSection(),
+                b.getSection()));
+        return matches;
+    }
+
+    /**
+     * Forces every shard to the device.
+     *
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public void sync() throws Exception {
+        fanOut(shard -> {
+            shards[shard].sync();
+            return null;
+        });
+    }
+
+    /**
+     * Closes every shard, and shuts down the pool if the store made it.
+     *
+     * @throws Exception for IOException and FileNotFoundException.
+     */
+    public void close() throws Exception {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+        Exception failure = null;
+        for (AppService shard : shards) {
+            try {
+                shard.close();
+            } catch (Exception e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /*
+     * Runs the task on every shard in parallel and returns the results in
+     * shard order.
+     */
+    private <T> List<T> fanOut(ShardTask<T> task) throws Exception {
+        List<Future<T>> futures = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            int shard = i;
+            futures.add(pool.submit(() -> task.run(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,154 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedStoreTester {
+
+    private static final int SHARDS = 4;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jokes", ".dat");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        for (int i = 0; i < SHARDS; i++) {
+            for (String suffix : new String[] { "", ".fp", ".dir", ".tri",
+                    ".cat" }) {
+                new File(file.getPath() + "." + i + suffix).delete();
+            }
+        }
+    }
+
+    private ShardedStore open() throws Exception {
+        return new ShardedStore(file.getPath(), SHARDS,
+                new StoreConfig().setPacked(true));
+    }
+
+    @Test
+    public void testAppendAndRead() throws Exception {
+        ShardedStore store = open();
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            indices.add(store.append(new Joke("Misc", "Sharded joke " + i)
+                    .toRecord()));
+        }
+
+        assertEquals(100, store.count());
+        assertEquals(100, new HashSet<>(indices).size());
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            int index = indices.get(i);
+            used.add(store.shardOf(index));
+            assertArrayEquals(new Joke("Misc", "Sharded joke " + i)
+                    .toRecord(), store.read(index));
+        }
+        assertEquals(SHARDS, used.size());
+        store.close();
+
+        store = open();
+        assertEquals(100, store.count());
+        assertArrayEquals(new Joke("Misc", "Sharded joke 42").toRecord(),
+                store.read(indices.get(42)));
+        store.close();
+    }
+
+    @Test
+    public void testFanOut() throws Exception {
+        ShardedStore store = open();
+        int[] indices = new int[50];
+        for (int i = 0; i < 50; i++) {
+            indices[i] = store.append(new Joke("Pun", "Pun number " + i
+                    + (i % 5 == 0 ? " about cats" : "")).toRecord());
+        }
+
+        byte[] wanted = new Joke("Pun", "Pun number 17").toRecord();
+        assertEquals(indices[17], store.indexOf(wanted));
+        assertTrue(store.contains(wanted));
+        assertFalse(store.contains(new Joke("Pun", "Missing").toRecord()));
+        assertEquals(-1, store.indexOf(new Joke("Pun", "Missing")
+                .toRecord()));
+
+        List<SearchIndex.Match> matches = store.search("CATS");
+        assertEquals(10, matches.size());
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 50; i += 5) {
+            expected.add(indices[i]);
+        }
+        int previous = -1;
+        for (SearchIndex.Match match : matches) {
+            assertTrue(expected.contains(match.getSection()));
+            assertTrue(match.getSection() > previous);
+            previous = match.getSection();
+        }
+        store.close();
+    }
+
+    @Test
+    public void testRouteByCategory() throws Exception {
+        ShardedStore store = new ShardedStore(file.getPath(), SHARDS,
+                new StoreConfig().setPacked(true), ShardedStore.BY_CATEGORY,
+                ForkJoinPool.commonPool());
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            shards.add(store.shardOf(store.append(
+                    new Joke("Programming", "Bug " + i).toRecord())));
+        }
+        assertEquals(1, shards.size());
+        int shard = shards.iterator().next();
+        assertEquals(20, store.count());
+        assertEquals(store.globalOf(shard, 19) + 1, store.size());
+        int stored = 0;
+        for (int i = 0; i < store.size(); i++) {
+            byte[] data = store.read(i);
+            if (store.shardOf(i) == shard) {
+                assertEquals("Bug " + i / SHARDS,
+                        Joke.fromBytes(data).getContent());
+                stored++;
+            } else {
+                assertEquals(0, data.length);
+            }
+        }
+        assertEquals(20, stored);
+
+        int index = store.globalOf(2, 7);
+        store.write(index, new Joke("Misc", "Placed").toRecord());
+        assertEquals(2, store.shardOf(index));
+        assertArrayEquals(new Joke("Misc", "Placed").toRecord(),
+                store.read(index));
+        store.close();
+    }
+
+    @Test
+    public void testCallerPool() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        ShardedStore store = new ShardedStore(file.getPath(), SHARDS,
+                new StoreConfig().setPacked(true),
+                ShardedStore.BY_FINGERPRINT, pool);
+        int index = store.append(new Joke("Misc", "Pooled").toRecord());
+        assertEquals(index, store.indexOf(new Joke("Misc", "Pooled")
+                .toRecord()));
+        store.close();
+
+        assertFalse(pool.isShutdown());
+        pool.shutdown();
+    }
+}
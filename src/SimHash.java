@@ -0,0 +1,81 @@
+/**
+ * Utility class that computes 64-bit SimHash signatures of joke texts.
+ * Texts that differ only a little get signatures that differ in only a few
+ * bits, so near-duplicates can be found by the Hamming distance between
+ * signatures instead of by comparing the texts.
+ * <p>
+ * A text is split into words, runs of letters and digits compared ignoring
+ * case, so whitespace and punctuation do not count. Every word and every
+ * pair of neighbouring words is hashed, and bit i of the signature is set if
+ * most of those hashes have bit i set.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public final class SimHash {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {
+    }
+
+    /**
+     * Computes the signature of a text.
+     *
+     * @param text text to sign.
+     * @return 64-bit signature, 0 if the text has no words.
+     */
+    public static long of(CharSequence text) {
+        int[] votes = new int[64];
+        long word = FNV_OFFSET;
+        long previous = 0;
+        boolean inWord = false;
+        boolean hasPrevious = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word ^= Character.toLowerCase(c);
+                word *= FNV_PRIME;
+                inWord = true;
+                continue;
+            }
+            if (!inWord) {
+                continue;
+            }
+            long hash = Fingerprint.mix(word);
+            vote(votes, hash);
+            if (hasPrevious) {
+                vote(votes, Fingerprint.mix(previous * FNV_PRIME ^ hash));
+            }
+            previous = hash;
+            hasPrevious = true;
+            word = FNV_OFFSET;
+            inWord = false;
+        }
+        long signature = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                signature |= 1L << bit;
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Returns the number of bits two signatures differ in.
+     *
+     * @param a first signature.
+     * @param b second signature.
+     * @return Hamming distance, from 0 to 64.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static void vote(int[] votes, long hash) {
+        for (int bit = 0; bit < 64; bit++) {
+            votes[bit] += (int) (hash >>> bit & 1) * 2 - 1;
+        }
+    }
+}
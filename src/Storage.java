@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Raw byte storage underneath a FileManager. Implementations decide how bytes
+ * reach the file; FileManager decides where the sections are.
+ *
+ * @author rachelcurci
+ */
+public interface Storage {
+
+    /**
+     * Returns the number of bytes stored.
+     *
+     * @return length of the storage in bytes.
+     * @throws IOException if the length cannot be determined.
+     */
+    long length() throws IOException;
+
+    /**
+     * Reads up to length bytes starting at the given position.
+     *
+     * @param position first byte to read.
+     * @param dst      array to read into.
+     * @param offset   first index of dst to fill.
+     * @param length   maximum number of bytes to read.
+     * @return number of bytes read, smaller than length at the end of the
+     *         storage.
+     * @throws IOException if the bytes cannot be read.
+     */
+    int read(long position, byte[] dst, int offset, int length)
+            throws IOException;
+
+    /**
+     * Writes bytes starting at the given position, growing the storage if
+     * needed.
+     *
+     * @param position first byte to write.
+     * @param src      array to write from.
+     * @param offset   first index of src to write.
+     * @param length   number of bytes to write.
+     * @throws IOException if the bytes cannot be written.
+     */
+    void write(long position, byte[] src, int offset, int length)
+            throws IOException;
+
+    /**
+     * Writes the remaining bytes of the buffers one after the other starting
+     * at the given position, growing the storage if needed. Implementations
+     * backed by a channel do this with a single gathering write.
+     *
+     * @param position first byte to write.
+     * @param srcs     buffers to write, in order.
+     * @throws IOException if the bytes cannot be written.
+     */
+    default void write(long position, ByteBuffer[] srcs) throws IOException {
+        for (ByteBuffer src : srcs) {
+            byte[] bytes = new byte[src.remaining()];
+            src.get(bytes);
+            write(position, bytes, 0, bytes.length);
+            position += bytes.length;
+        }
+    }
+
+    /**
+     * Returns a read-only buffer over up to length bytes starting at the given
+     * position. Implementations that can do so return a view of the storage
+     * itself instead of a copy.
+     *
+     * @param position first byte of the buffer.
+     * @param length   maximum number of bytes in the buffer.
+     * @return read-only buffer positioned at zero.
+     * @throws IOException if the bytes cannot be read.
+     */
+    ByteBuffer slice(long position, int length) throws IOException;
+
+    /**
+     * Forces every byte written so far to the device, so that it survives a
+     * crash.
+     *
+     * @throws IOException if the bytes cannot be forced.
+     */
+    void force() throws IOException;
+
+    /**
+     * Flushes and closes the storage.
+     *
+     * @throws IOException if the storage cannot be closed.
+     */
+    void close() throws IOException;
+}
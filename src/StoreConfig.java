@@ -0,0 +1,306 @@
+/**
+ * Settings of a FileManager: the section size, how the file is accessed, how
+ * records are laid out and compressed in it and whether writes go through a
+ * write-ahead log. The setters return the config so settings can be chained.
+ *
+ * @author rachelcurci
+ */
+public class StoreConfig {
+
+    private int secSize = 600;
+    private FileManager.Mode mode = FileManager.Mode.RANDOM_ACCESS;
+    private boolean packed;
+    private RecordCodec codec = RecordCodec.IDENTITY;
+    private boolean wal;
+    private double bloomFalsePositiveRate;
+    private int nearDuplicateDistance = -1;
+    private long cacheBytes;
+    private int asyncThreads = 4;
+    private int maxInFlight = 64;
+    private int groupCommitRecords = 64;
+    private long groupCommitMillis = 10;
+
+    /**
+     * Getter method.
+     *
+     * @return size of a section of a fixed-layout file.
+     */
+    public int getSecSize() {
+        return secSize;
+    }
+
+    /**
+     * Sets the size of a section of a fixed-layout file, which is also the
+     * size jokes stored in it are cut to. Packed files ignore it: each record
+     * is as long as the joke it holds.
+     *
+     * @param size size of a section in bytes.
+     * @return this config.
+     */
+    public StoreConfig setSecSize(int size) {
+        this.secSize = size;
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return how the file is accessed.
+     */
+    public FileManager.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets how the file is accessed.
+     *
+     * @param mode access mode.
+     * @return this config.
+     */
+    public StoreConfig setMode(FileManager.Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return true if records are packed with variable lengths.
+     */
+    public boolean isPacked() {
+        return packed;
+    }
+
+    /**
+     * Sets whether records are packed one after the other with their exact
+     * lengths, found through a slot directory, instead of being stored in
+     * fixed-size sections.
+     *
+     * @param packed true for the packed layout.
+     * @return this config.
+     */
+    public StoreConfig setPacked(boolean packed) {
+        this.packed = packed;
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return how records of a new packed file are stored.
+     */
+    public RecordCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets whether records of a new packed file are compressed with Deflate,
+     * starting without a dictionary. FileManager.close trains one from the
+     * records once there are at least 100, and FileManager.compress trains
+     * one at any time. An existing file keeps the codec it was created with,
+     * and fixed-size sections are never compressed.
+     *
+     * @param compressed true to compress records.
+     * @return this config.
+     */
+    public StoreConfig setCompressed(boolean compressed) {
+        this.codec = compressed ? RecordCodec.deflate(new byte[0])
+                : RecordCodec.IDENTITY;
+        return this;
+    }
+
+    /**
+     * Sets how records of a new packed file are stored, for example
+     * compressed with the dictionary of another file.
+     *
+     * @param codec how records are stored.
+     * @return this config.
+     */
+    public StoreConfig setCodec(RecordCodec codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return true if writes go through a write-ahead log.
+     */
+    public boolean isWal() {
+        return wal;
+    }
+
+    /**
+     * Sets whether writes go through a write-ahead log kept in path + ".wal".
+     * Logged writes are committed in groups, each with a single fsync, and
+     * every write, swap and batch is applied completely or not at all after
+     * a crash.
+     *
+     * @param wal true to log writes.
+     * @return this config.
+     */
+    public StoreConfig setWal(boolean wal) {
+        this.wal = wal;
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return false positive rate of the Bloom filter, 0 if there is none.
+     */
+    public double getBloomFalsePositiveRate() {
+        return bloomFalsePositiveRate;
+    }
+
+    /**
+     * Sets whether indexOf and contains are guarded by a Bloom filter kept in
+     * path + ".bf", so that looking up bytes that are not stored costs a few
+     * bit probes. The rate is the chance that such a lookup still goes on to
+     * the exact check.
+     *
+     * @param rate false positive rate between 0 and 1, or 0 for no filter.
+     * @return this config.
+     */
+    public StoreConfig setBloomFilter(double rate) {
+        if (!(rate >= 0) || !(rate < 1)) {
+            throw new IllegalArgumentException("Need 0 <= rate < 1");
+        }
+        this.bloomFalsePositiveRate = rate;
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return threads that run the async operations of a FileManager.
+     */
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return most async operations of a FileManager running at once.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets how the async operations of a FileManager, such as readAsync,
+     * run. At most maxInFlight of them run at once; later ones wait in a
+     * queue, without blocking their caller, until one completes. Operations
+     * that cannot be done with asynchronous I/O run on a pool of threads.
+     *
+     * @param threads     threads of the pool, at least 1.
+     * @param maxInFlight most operations running at once, at least 1.
+     * @return this config.
+     */
+    public StoreConfig setAsync(int threads, int maxInFlight) {
+        if (threads < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException(
+                    "Need at least one thread and one operation");
+        }
+        this.asyncThreads = threads;
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return byte budget of the section cache, 0 if there is none.
+     */
+    public long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    /**
+     * Sets whether recently read sections are kept in a SectionCache, so
+     * that reading them again does not go to the file. The least recently
+     * used sections are evicted to stay within the budget.
+     *
+     * @param budget most bytes the cached sections take, or 0 for no cache.
+     * @return this config.
+     */
+    public StoreConfig setCache(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Need a budget of 0 or more");
+        }
+        this.cacheBytes = budget;
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return most bits in which the signatures of near-duplicate jokes
+     *         differ, -1 if near-duplicates are not looked for.
+     */
+    public int getNearDuplicateDistance() {
+        return nearDuplicateDistance;
+    }
+
+    /**
+     * Sets whether an AppService rejects jokes that are nearly the same as a
+     * stored one, using a SimHash index kept in path + ".sim". Signatures of
+     * 64 bits are compared, so a distance d accepts jokes whose similarity
+     * is at least 1 - d / 64. Small distances such as 3 catch the same joke
+     * with other spacing, punctuation or case.
+     *
+     * @param maxDistance most differing bits, from 0 to
+     *                    NearDuplicateIndex.MAX_DISTANCE, or -1 to only
+     *                    reject exact duplicates.
+     * @return this config.
+     */
+    public StoreConfig setNearDuplicates(int maxDistance) {
+        if (maxDistance < -1
+                || maxDistance > NearDuplicateIndex.MAX_DISTANCE) {
+            throw new IllegalArgumentException("Need -1 <= maxDistance <= "
+                    + NearDuplicateIndex.MAX_DISTANCE);
+        }
+        this.nearDuplicateDistance = maxDistance;
+        return this;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return number of logged sections that triggers a commit.
+     */
+    public int getGroupCommitRecords() {
+        return groupCommitRecords;
+    }
+
+    /**
+     * Getter method.
+     *
+     * @return longest time a logged write waits for a commit, in
+     *         milliseconds.
+     */
+    public long getGroupCommitMillis() {
+        return groupCommitMillis;
+    }
+
+    /**
+     * Sets when the write-ahead log is committed: as soon as the given number
+     * of sections has been logged, or when the oldest uncommitted write is the
+     * given number of milliseconds old. A crash loses at most that many
+     * sections or milliseconds of writes.
+     *
+     * @param records sections per commit, at least 1.
+     * @param millis  longest wait for a commit in milliseconds, at least 1.
+     * @return this config.
+     */
+    public StoreConfig setGroupCommit(int records, long millis) {
+        if (records < 1 || millis < 1) {
+            throw new IllegalArgumentException(
+                    "Need at least 1 record and 1 millisecond per commit");
+        }
+        this.groupCommitRecords = records;
+        this.groupCommitMillis = millis;
+        return this;
+    }
+}
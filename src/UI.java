@@ -1,5 +1,9 @@
 import java.awt.BorderLayout;
-import java.util.Arrays;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JDialog;
@@ -24,9 +28,13 @@ import javax.swing.UIManager;
  * Copyright 2023 Meisam Amjad @author amjadm@miamioh.edu
  * </p>
  */
-public class UI extends JFrame {
+public final class UI extends JFrame {
 
     private static final long serialVersionUID = 1L;
+    // every category of JokeAPI
+    private static final String[] CATEGORIES = { "Misc", "Programming",
+            "Dark", "Pun", "Spooky", "Christmas" };
+    private static final int JOKES_PER_REFRESH = 5;
 
     private JComboBox<String> categoriesComboBox;
     private JLabel selectedCategoryLabel;
@@ -35,8 +43,10 @@ public class UI extends JFrame {
     private JButton refreshJokesButton;
     private AppService appService;
 
-    private int index1 = 0;
-    private int index2 = 5;
+    private final transient Map<String, CategoryIndex.Cursor> cursors =
+            new HashMap<>();
+    // number of jokes asked for, so only the last one asked for is shown
+    private int displayRequests;
 
     public UI() {
         createUI();
@@ -55,6 +65,28 @@ public class UI extends JFrame {
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         // to be able to put component anywhere on the frame
         this.setLayout(null);
+        // saving the file indexes so they are not rebuilt on the next start
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                closeAppService();
+            }
+        });
+    }
+
+    /*
+     * Closes the AppService, which saves its indexes next to the joke file.
+     * Catches and prints exceptions if any occur while closing.
+     */
+    private void closeAppService() {
+        if (appService == null) {
+            return;
+        }
+        try {
+            appService.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
     /*
@@ -64,8 +96,7 @@ public class UI extends JFrame {
      */
     private void setupComboBox() {
         // Drop down for joke categories
-        String[] categories = { "Misc", "Programming" };
-        categoriesComboBox = new JComboBox<>(categories);
+        categoriesComboBox = new JComboBox<>(CATEGORIES);
         categoriesComboBox.setBounds(10, 60, 300, 20);
         categoriesComboBox.addActionListener(e -> onCategorySelected());
     }
@@ -130,12 +161,18 @@ public class UI extends JFrame {
 
     /*
      * Initializes the AppService responsible for handling jokes. It sets up the
-     * service with the required file and size. Catches and prints exceptions if
-     * any occur during initialization.
+     * service with the required file and size, and keeps jokes of every
+     * category prefetched so refreshing does not wait on the network.
+     * Catches and prints exceptions if any occur during initialization.
      */
     private void setupAppService() {
         try {
-            appService = new AppService("temp.dat", 600);
+            Metrics.register();
+            appService = new AppService("jokes.dat", new StoreConfig()
+                    .setMode(FileManager.Mode.MAPPED).setPacked(true)
+                    .setCompressed(true).setBloomFilter(0.01)
+                    .setNearDuplicates(3).setCache(1 << 20));
+            appService.enablePrefetch(CATEGORIES, 10, 5, 2000);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -174,9 +211,14 @@ public class UI extends JFrame {
     /*
      * Handles the refreshing of jokes. Displays a progress dialog with a
      * progress bar while jokes are being fetched and updated. Manages the
-     * process in a separate thread to keep the UI responsive.
+     * process in a separate thread to keep the UI responsive. Afterwards each
+     * category shows its new jokes first. Does nothing if the AppService
+     * could not be set up.
      */
     private void refreshJokes() {
+        if (appService == null) {
+            return;
+        }
         JDialog progressDialog = new JDialog(this, "Loading...", true);
         progressDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
         progressDialog.setSize(200, 60);
@@ -184,46 +226,52 @@ public class UI extends JFrame {
         JProgressBar progressBar = new JProgressBar(0, 100);
         progressDialog.add(BorderLayout.CENTER, progressBar);
 
-        AppService.index = 0;
+        int[] before = new int[CATEGORIES.length];
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            before[i] = appService.countJokes(CATEGORIES[i]);
+        }
 
         new Thread(() -> {
             try {
                 updateBarAndJokes(progressBar);
-                progressDialog.dispose(); // Close the dialog
             } catch (Exception e) {
                 e.printStackTrace();
+            } finally {
+                progressDialog.dispose(); // Close the dialog
             }
         }).start();
 
         progressDialog.setVisible(true);
 
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            if (appService.countJokes(CATEGORIES[i]) > before[i]) {
+                cursor(CATEGORIES[i]).seek(before[i]);
+            }
+        }
         displayJoke(); // shows a new joke after refreshing jokes
     }
 
     /*
-     * Updates the progress bar and fetches jokes and updates the file.
+     * Updates the progress bar and fetches jokes and adds them to the file.
+     * Each category is fetched as one concurrent batch.
      * 
      * @param progressBar for displaying the progress
      */
     private void updateBarAndJokes(JProgressBar progressBar) {
-        for (int i = 0; i < 100; i += 10) {
-            progressBar.setValue(i + 10); // updating progress bar
-            fetchJokes(AppService.index); // Updating joke at index
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            fetchJokes(CATEGORIES[i], JOKES_PER_REFRESH);
+            progressBar.setValue((i + 1) * 100 / CATEGORIES.length);
         }
     }
 
     /*
-     * Fetches a joke and save them from the AppService based on the order
-     * parameter. Differentiates between 'Misc' and 'Programming' jokes. Handles
-     * exceptions that might occur during the fetching process.
+     * Fetches a batch of jokes of the given category and saves them from the
+     * AppService. Handles exceptions that might occur during the fetching
+     * process.
      */
-    private void fetchJokes(int order) {
+    private void fetchJokes(String category, int count) {
         try {
-            if (order < 5) {
-                appService.saveJoke("Misc");
-            } else {
-                appService.saveJoke("Programming");
-            }
+            appService.saveJokes(category, count);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -232,8 +280,10 @@ public class UI extends JFrame {
 
     /*
      * Displays a joke in the text area based on the currently selected
-     * category. Manages indices to ensure a sequential and cyclic display of
-     * jokes for each category. Handles exceptions in reading joke data.
+     * category. Keeps a cursor per category to ensure a sequential and cyclic
+     * display of jokes for each category. The joke is read asynchronously and
+     * shown once it is in. Handles exceptions in reading joke data. Shows no
+     * joke if the AppService could not be set up.
      */
     private void displayJoke() {
         // Emptying the text and label outputs
@@ -244,32 +294,39 @@ public class UI extends JFrame {
         String selectedCategory = (String) categoriesComboBox.getSelectedItem();
         selectedCategoryLabel.setText("Selected Category: " + selectedCategory);
 
-        int fileIdx = 0;
-        if (selectedCategory.equals("Misc")) {
-            fileIdx = index1; // moving index1 in the range of [0-4]
-            index1 = ((index1 + 1) % 5);
-        } else {
-            fileIdx = index2; // moving index2 in the range of [5-9]
-            index2 = 5 + ((index2 + 1) % 5);
+        if (appService == null) {
+            return;
         }
-        try {
-            showResult(Arrays.copyOfRange(appService.read(fileIdx), 15,
-                    584));
-        } catch (Exception e) {
-            e.printStackTrace();
+        int fileIdx = cursor(selectedCategory).next();
+        if (fileIdx < 0) {
+            return; // no jokes of this category stored yet
         }
+        // reading on the event thread would freeze the UI while the disk works
+        int request = ++displayRequests;
+        appService.readAsync(fileIdx).whenComplete(
+                (joke, error) -> SwingUtilities.invokeLater(() -> {
+                    if (error != null) {
+                        error.printStackTrace();
+                    } else if (request == displayRequests) {
+                        showResult(ByteBuffer.wrap(joke));
+                    }
+                }));
+    }
 
+    /*
+     * Returns the cursor of a category, creating it on first use.
+     */
+    private CategoryIndex.Cursor cursor(String category) {
+        return cursors.computeIfAbsent(category, appService::cursor);
     }
 
     /*
-     * Gets a new joke and fixes its format and displays it on the text area.
+     * Gets a new joke and displays it on the text area.
      * 
-     * @param joke a bytes of a joke string
+     * @param joke bytes of the section holding the joke
      */
-    private void showResult(byte[] joke) {
-        String j = new String(joke).replace("\\n", "\n").replace("\\\"",
-                "\"");
-        jokeText.setText(j);
+    private void showResult(ByteBuffer joke) {
+        jokeText.setText(new JokeView(joke).getContent());
     }
 
     /*
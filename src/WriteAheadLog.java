@@ -0,0 +1,324 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of a FileManager. Every write is appended to the log as a
+ * transaction of whole sections, and only reaches the file once the log has
+ * been forced to the device, so a crash can never leave half of a
+ * transaction in the file.
+ * <p>
+ * Transactions are committed in groups: the log is forced once the given
+ * number of sections is waiting, or by a background thread after the given
+ * number of milliseconds, so a single fsync covers many writes. Committed
+ * sections are then handed to the sink. When the log grows past a few
+ * megabytes the sink is forced and the log emptied.
+ * </p>
+ * <p>
+ * Each transaction is framed by a magic number, its length and a CRC32 of its
+ * contents. On open, complete transactions left by a crash are applied again
+ * and a torn one at the end is dropped. Applying a section twice is harmless,
+ * since a transaction holds the whole new content of its sections.
+ * </p>
+ *
+ * @author rachelcurci
+ */
+public final class WriteAheadLog {
+
+    private static final int MAGIC = 0x4a4b574c; // "JKWL"
+    private static final int FRAME_HEADER = 8;
+    private static final long CHECKPOINT_BYTES = 4L << 20;
+
+    /**
+     * Where committed sections end up.
+     */
+    public interface Sink {
+
+        /**
+         * Writes the content of a committed section.
+         *
+         * @param index section to write.
+         * @param data  whole content of the section.
+         * @throws Exception if the section cannot be written.
+         */
+        void apply(int index, byte[] data) throws Exception;
+
+        /**
+         * Forces every section applied so far to the device.
+         *
+         * @throws Exception if the sections cannot be forced.
+         */
+        void force() throws Exception;
+    }
+
+    /*
+     * Sections written together.
+     */
+    private static final class Transaction {
+        private final int[] indices;
+        private final byte[][] data;
+
+        Transaction(int[] indices, byte[][] data) {
+            this.indices = indices;
+            this.data = data;
+        }
+    }
+
+    private final String path;
+    private final int groupRecords;
+    private final Sink sink;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final ScheduledExecutorService timer;
+    private final Object commitLock = new Object();
+
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private List<Transaction> pending = new ArrayList<>();
+    private int pendingRecords;
+    private volatile IOException failure;
+
+    /**
+     * Constructor that opens the log at the given path, applies the
+     * transactions a crash left in it and starts the commit timer.
+     *
+     * @param path         path of the log file.
+     * @param groupRecords number of logged sections that triggers a commit.
+     * @param groupMillis  longest time a logged write waits for a commit, in
+     *                     milliseconds.
+     * @param sink         where committed sections are written.
+     * @throws IOException if the log cannot be opened or replayed.
+     */
+    public WriteAheadLog(String path, int groupRecords, long groupMillis,
+            Sink sink) throws IOException {
+        this.path = path;
+        this.groupRecords = groupRecords;
+        this.sink = sink;
+        this.raf = new RandomAccessFile(path, "rw");
+        this.channel = raf.getChannel();
+        replay();
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "wal-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::commitQuietly, groupMillis,
+                groupMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends a transaction to the log. It is durable after the next commit.
+     *
+     * @param indices sections written by the transaction, in order.
+     * @param data    whole new content of each section.
+     * @return true if enough sections are waiting for the caller to commit.
+     * @throws IOException if an earlier commit failed.
+     */
+    public synchronized boolean append(int[] indices, byte[][] data)
+            throws IOException {
+        if (failure != null) {
+            throw new IOException("Write-ahead log " + path + " failed.",
+                    failure);
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeInt(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            out.writeInt(indices[i]);
+            out.writeInt(data[i].length);
+            out.write(data[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+
+        DataOutputStream frame = new DataOutputStream(buffer);
+        frame.writeInt(MAGIC);
+        frame.writeInt(payload.size());
+        payload.writeTo(frame);
+        frame.writeInt((int) crc.getValue());
+
+        pending.add(new Transaction(indices, data));
+        pendingRecords += indices.length;
+        return pendingRecords >= groupRecords;
+    }
+
+    /**
+     * Forces the waiting transactions to the log with a single fsync and
+     * applies them to the sink. Threads that commit at the same time wait
+     * for each other.
+     *
+     * @throws IOException if the log cannot be written or applied.
+     */
+    public void commit() throws IOException {
+        synchronized (commitLock) {
+            byte[] bytes;
+            List<Transaction> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                bytes = buffer.toByteArray();
+                batch = pending;
+                buffer = new ByteArrayOutputStream();
+                pending = new ArrayList<>();
+                pendingRecords = 0;
+            }
+            try {
+                ByteBuffer src = ByteBuffer.wrap(bytes);
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+                channel.force(false);
+                for (Transaction transaction : batch) {
+                    apply(transaction.indices, transaction.data);
+                }
+                if (channel.size() >= CHECKPOINT_BYTES) {
+                    checkpoint();
+                }
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Runs a task while no commit can start or be under way, so that the
+     * task can take locks of the sink that commits take too. Commits are
+     * allowed inside the task.
+     *
+     * @param <T>  type of the result.
+     * @param task work to run.
+     * @return result of the task.
+     * @throws Exception if the task fails.
+     */
+    public <T> T exclusive(Callable<T> task) throws Exception {
+        synchronized (commitLock) {
+            return task.call();
+        }
+    }
+
+    /**
+     * Commits the waiting transactions, forces the sink and empties the log,
+     * so that nothing in it is applied again after a crash.
+     *
+     * @throws IOException if the log cannot be committed or emptied.
+     */
+    public void drain() throws IOException {
+        synchronized (commitLock) {
+            commit();
+            checkpoint();
+        }
+    }
+
+    /**
+     * Commits the waiting transactions, forces the sink, stops the commit
+     * timer and deletes the log.
+     *
+     * @throws IOException if the log cannot be committed or closed.
+     */
+    public void close() throws IOException {
+        timer.shutdown();
+        try {
+            timer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commit();
+        synchronized (commitLock) {
+            checkpoint();
+        }
+        raf.close();
+        new File(path).delete();
+    }
+
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException e) {
+            // kept in failure and reported by the next append
+        }
+    }
+
+    /*
+     * Forces the applied sections to the device, after which the log is no
+     * longer needed.
+     */
+    private void checkpoint() throws IOException {
+        try {
+            sink.force();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Cannot force " + path, e);
+        }
+        channel.truncate(0);
+        channel.position(0);
+    }
+
+    private void apply(int[] indices, byte[][] data) throws IOException {
+        for (int i = 0; i < indices.length; i++) {
+            try {
+                sink.apply(indices[i], data[i]);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Cannot apply section " + indices[i]
+                        + " from " + path, e);
+            }
+        }
+    }
+
+    /*
+     * Applies every complete transaction in the log, in order, stopping at
+     * the first one that is cut off or fails its checksum.
+     */
+    private void replay() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return;
+        }
+        ByteBuffer log = ByteBuffer.allocate((int) Math.min(size,
+                Integer.MAX_VALUE));
+        while (log.hasRemaining() && channel.read(log) > 0) {
+            // keep reading
+        }
+        log.flip();
+        while (log.remaining() >= FRAME_HEADER) {
+            int magic = log.getInt();
+            int length = log.getInt();
+            if (magic != MAGIC || length < 4
+                    || length > log.remaining() - 4) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            log.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (log.getInt() != (int) crc.getValue()) {
+                break;
+            }
+            ByteBuffer fields = ByteBuffer.wrap(payload);
+            int count = fields.getInt();
+            int[] indices = new int[count];
+            byte[][] data = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                indices[i] = fields.getInt();
+                data[i] = new byte[fields.getInt()];
+                fields.get(data[i]);
+            }
+            apply(indices, data);
+        }
+        checkpoint();
+    }
+}
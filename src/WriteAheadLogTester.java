@@ -0,0 +1,134 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteAheadLogTester {
+
+    private File file;
+    private List<WriteAheadLog> logs = new ArrayList<>();
+
+    /*
+     * Sink that records the sections applied to it.
+     */
+    private static class RecordingSink implements WriteAheadLog.Sink {
+        private final List<Integer> indices = new ArrayList<>();
+        private final List<byte[]> data = new ArrayList<>();
+        private int forces;
+
+        @Override
+        public synchronized void apply(int index, byte[] bytes) {
+            indices.add(index);
+            data.add(bytes);
+        }
+
+        @Override
+        public synchronized void force() {
+            forces++;
+        }
+
+        synchronized int applied() {
+            return indices.size();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jokes", ".wal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (WriteAheadLog log : logs) {
+            log.close();
+        }
+        file.delete();
+    }
+
+    private WriteAheadLog open(int groupRecords, long groupMillis,
+            RecordingSink sink) throws Exception {
+        WriteAheadLog log = new WriteAheadLog(file.getPath(), groupRecords,
+                groupMillis, sink);
+        logs.add(log);
+        return log;
+    }
+
+    @Test
+    public void testCommitAppliesInOrder() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        WriteAheadLog log = open(100, 60000, sink);
+        log.append(new int[] { 3, 1 }, new byte[][] { "a".getBytes(),
+                "b".getBytes() });
+        log.append(new int[] { 2 }, new byte[][] { "c".getBytes() });
+        assertEquals(0, sink.applied());
+
+        log.commit();
+        assertEquals(List.of(3, 1, 2), sink.indices);
+        assertArrayEquals("c".getBytes(), sink.data.get(2));
+    }
+
+    @Test
+    public void testGroupCommitDue() throws Exception {
+        WriteAheadLog log = open(3, 60000, new RecordingSink());
+        assertFalse(log.append(new int[] { 0 }, new byte[][] { {} }));
+        assertFalse(log.append(new int[] { 1 }, new byte[][] { {} }));
+        assertTrue(log.append(new int[] { 2 }, new byte[][] { {} }));
+        log.commit();
+        assertFalse(log.append(new int[] { 3 }, new byte[][] { {} }));
+    }
+
+    @Test
+    public void testTimerCommits() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        WriteAheadLog log = open(100, 5, sink);
+        log.append(new int[] { 0 }, new byte[][] { "a".getBytes() });
+        for (int i = 0; i < 200 && sink.applied() == 0; i++) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, sink.applied());
+    }
+
+    @Test
+    public void testReplayAfterCrash() throws Exception {
+        WriteAheadLog log = open(100, 60000, new RecordingSink());
+        log.append(new int[] { 0, 1 }, new byte[][] { "a".getBytes(),
+                "b".getBytes() });
+        log.commit();
+
+        // reopen without closing, as after a crash
+        RecordingSink replayed = new RecordingSink();
+        open(100, 60000, replayed);
+        assertEquals(List.of(0, 1), replayed.indices);
+        assertArrayEquals("b".getBytes(), replayed.data.get(1));
+        assertEquals(1, replayed.forces);
+        assertEquals(0, file.length());
+    }
+
+    @Test
+    public void testTornTransactionDropped() throws Exception {
+        WriteAheadLog log = open(100, 60000, new RecordingSink());
+        log.append(new int[] { 0 }, new byte[][] { "first".getBytes() });
+        log.commit();
+        long complete = file.length();
+        log.append(new int[] { 1, 2 }, new byte[][] { "second".getBytes(),
+                "third".getBytes() });
+        log.commit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 3);
+        }
+        assertTrue(file.length() > complete);
+
+        RecordingSink replayed = new RecordingSink();
+        open(100, 60000, replayed);
+        assertEquals(List.of(0), replayed.indices);
+    }
+}